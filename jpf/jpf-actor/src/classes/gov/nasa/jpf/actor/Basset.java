@@ -156,7 +156,11 @@ public class Basset {
         .println("Usage: bin/jpf [<jpf-or-basset-option>..] gov.nasa.jpf.actor.Basset <subject> [<subject-arg>..] ");
     System.out.println("");
     System.out.println("available basset options:");
-    System.out.println("  +basset.time_limit         (default=2147483647)");
+    System.out.println("  +basset.time_limit         (default=0)  seconds, 0=no limit");
+    System.out.println("  +basset.trace_limit        (default=0)  traces, 0=no limit");
+    System.out.println("  +basset.delivery_limit     (default=0)  delivered messages, 0=no limit");
+    System.out.println("  +basset.heap_limit         (default=0)  MB used by the host JVM, 0=no limit");
+    System.out.println("  +basset.limit_check_interval (default=100) states between time/heap checks");
     System.out.println("  +basset.tracestats         (default=false)");
     System.out.println("  +basset.explorationstats   (default=true)");
     System.out.println("  +basset.randomseed         (default=0)");
@@ -175,6 +179,12 @@ public class Basset {
         .println("                                          10=Persistent+Sleep");
     System.out
         .println("                                          11=Transistent+Sleep");
+    System.out
+        .println("                                          12=Optimal (Source sets+Wakeup trees)");
+    System.out
+        .println("                                          20=PCT sampling (no reduction)");
+    System.out
+        .println("                                          21=Delay bounded sampling (no reduction)");
     System.out.println("");
     System.out
         .println("  +basset.dpor_heuristic     (default=0)  0=none (none is equivalent to queue (FIFO)");
@@ -190,6 +200,50 @@ public class Basset {
         .println("                                          8=high_receiver_message_send_average (HMS)");
     System.out
         .println("                                          9=send_graph_reachability (SGR)");
+    System.out
+        .println("  +basset.dpor_ordering      (default=none) class name of a MessageOrderingStrategy,");
+    System.out
+        .println("                                          replaces the dpor_heuristic");
+    System.out
+        .println("  +basset.heuristic_global_state (default=false) heuristics 8 and 9 learn from all");
+    System.out
+        .println("                                          explored paths, not only the current one");
+    System.out
+        .println("                                          (required unless search.class is DFSearch)");
+    System.out
+        .println("  +basset.macrostep          (default=false) handle each delivered message in the");
+    System.out
+        .println("                                          same transition as its delivery");
+    System.out.println("");
+    System.out.println("  +basset.samples            (default=100) traces sampled by dpor 20 and 21,");
+    System.out.println("                                          sample i uses the seed randomseed+i");
+    System.out.println("  +basset.sample_steps       (default=100) estimated deliveries per trace");
+    System.out.println("  +basset.pct_depth          (default=3)  PCT bug depth d (d-1 priority changes)");
+    System.out.println("  +basset.delay_bound        (default=2)  delays per delay bounded trace");
+    System.out.println("");
+    System.out
+        .println("  +report.publisher+=,basset_json   write metrics to report.json (basset_csv: report.csv)");
+    System.out
+        .println("  +listener+=,.actor.MetricsListener  collect set size histograms, phase times and snapshots");
+    System.out.println("  +basset.metrics.interval     (default=0) seconds between metrics snapshots");
+    System.out.println("");
+    System.out
+        .println("  +listener+=,.actor.ScheduleListener  write the schedule of a violation to a file");
+    System.out.println("  +basset.schedule.file        (default=basset.schedule)");
+    System.out.println("  +basset.schedule.replay      (default=none) replay this schedule, no search");
+    System.out.println("");
+    System.out
+        .println("  +listener+=,.actor.CheckpointListener  checkpoint the exploration (dpor 0, 3 and 4)");
+    System.out.println("  +basset.checkpoint.file      (default=basset.checkpoint)");
+    System.out.println("  +basset.checkpoint.interval  (default=600) seconds between checkpoints");
+    System.out.println("  +basset.checkpoint.resume    (default=false) resume from the checkpoint file");
+    System.out.println("");
+    System.out
+        .println("  +shell=.actor.ParallelShell   explore with several worker JVMs (dpor 0, 3 and 4)");
+    System.out
+        .println("  +basset.parallel.workers     (default=number of processors)");
+    System.out.println("  +basset.parallel.split_depth (default=1)");
+    System.out.println("  +basset.parallel.verbose     (default=false)");
     System.out.println("");
 
   }
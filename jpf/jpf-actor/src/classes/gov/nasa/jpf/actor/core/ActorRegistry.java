@@ -22,6 +22,7 @@ import gov.nasa.jpf.actor.icore.IActor;
 import gov.nasa.jpf.actor.icore.IActorName;
 import gov.nasa.jpf.actor.icore.IActorThread;
 import gov.nasa.jpf.actor.util.Logger;
+import gov.nasa.jpf.annotation.FilterField;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -32,6 +33,9 @@ import java.util.List;
  * threads, and to allow the Basset platform to query the information in the
  * lists in various ways.
  * 
+ * Actor threads are also indexed by the ID of their actor name, which is
+ * what the platform uses to look them up for every message it considers.
+ * 
  * @author Steven Lauterburg (steven.lauterburg@gmail.com)
  * @author Mirco Dotta (mirco.dotta@gmail.com)
  * 
@@ -42,13 +46,25 @@ public class ActorRegistry {
 
   private final List<IActorThread> terminated;
 
+  // active and terminated actor threads by actor ID, derived from the lists
+  @FilterField
+  private IActorThread[] byId;
+
   public ActorRegistry() {
     this.active = new ArrayList<IActorThread>();
     this.terminated = new ArrayList<IActorThread>();
+    this.byId = new IActorThread[16];
   }
 
   void register(IActorThread athread) {
-    assert !active.contains(athread);
+    int id = athread.getActorName().getID();
+    if (id >= byId.length) {
+      IActorThread[] a = new IActorThread[Math.max(id + 1, byId.length * 2)];
+      System.arraycopy(byId, 0, a, 0, byId.length);
+      byId = a;
+    }
+    assert byId[id] == null;
+    byId[id] = athread;
     active.add(athread);
     Logger.verbose(this, "registered " + athread);
   }
@@ -65,30 +81,17 @@ public class ActorRegistry {
   }
 
   IActorThread get(IActorName name) {
-    IActorThread athread = findActorThread(active, name);
-    if (athread == null) {
+    int id = name.getID();
+    IActorThread athread = (id >= 0 && id < byId.length) ? byId[id] : null;
+    if (athread == null || !athread.getActorName().equals(name)) {
       Logger.debug(this, "Couldn't find " + name
-          + " in the list of alive actors");
-      athread = findActorThread(terminated, name);
-      if (athread == null)
-        Logger.debug(this, "Couldn't find " + name
-            + " in the list of terminated actors");
+          + " in the list of alive or terminated actors");
+      return null;
     }
 
     return athread;
   }
 
-  private IActorThread findActorThread(List<IActorThread> list, IActorName name) {
-    IActorThread athread = null;
-    for (int i = list.size() - 1; i >= 0; i--) {
-      athread = list.get(i);
-      if (athread != null && athread.getActorName().equals(name)) {
-        return athread;
-      }
-    }
-    return null;
-  }
-
   List<IActorThread> getReadyActorThreads() {
     List<IActorThread> ready = new ArrayList<IActorThread>();
     for (IActorThread athread : active) {
@@ -0,0 +1,177 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.core;
+
+import gov.nasa.jpf.annotation.FilterField;
+
+/**
+ * Immutable snapshot of the basset.* options.
+ * 
+ * The options cannot change while the program is explored, so they are read
+ * from the JPF configuration only once, when the platform is set up (or on
+ * first use, for code that runs before that). Everything else asks the
+ * snapshot instead of going through a native property lookup on every send
+ * and delivery.
+ */
+public final class BassetSettings {
+
+  @FilterField
+  private static BassetSettings settings;
+
+  private final String language;
+  private final DporMode dporMode;
+  private final int heuristic;
+  private final MessageOrderingStrategy ordering;
+  private final int randomSeed;
+  private final int samples;
+  private final int sampleSteps;
+  private final int pctDepth;
+  private final int delayBound;
+  private final String replaySchedule;
+  private final boolean recordingSchedule;
+  private final boolean bigstep;
+  private final boolean threadyield;
+  private final boolean tracestats;
+  private final boolean debug;
+  private final boolean verbose;
+  private final boolean info;
+  private final boolean error;
+
+  /***********************************************************/
+  private BassetSettings() {
+    language = Util.getProperty("basset.language");
+    replaySchedule = Util.getProperty("basset.schedule.replay");
+    if (replaySchedule != null && replaySchedule.length() > 0)
+      dporMode = DporMode.REPLAY;
+    else
+      dporMode = DporMode.forId(Util.getIntegerProperty("basset.dpor"));
+    recordingSchedule = Util.isRecordingSchedule();
+    heuristic = Util.getIntegerProperty("basset.dpor_heuristic");
+    String orderingClass = Util.getProperty("basset.dpor_ordering");
+    if (orderingClass != null && orderingClass.length() > 0)
+      ordering = MessageOrderer.forClassName(orderingClass);
+    else
+      ordering = MessageOrderer.forHeuristic(heuristic);
+    randomSeed = Util.getIntegerProperty("basset.randomseed");
+    samples = getPositive("basset.samples", 100);
+    sampleSteps = getPositive("basset.sample_steps", 100);
+    pctDepth = getPositive("basset.pct_depth", 3);
+    delayBound = getPositive("basset.delay_bound", 2);
+    bigstep = Util.getBooleanProperty("basset.bigstep");
+    threadyield = Util.getBooleanProperty("basset.threadyield");
+    tracestats = Util.getBooleanProperty("basset.tracestats");
+    debug = Util.getBooleanProperty("basset.debug");
+    verbose = Util.getBooleanProperty("basset.verbose");
+    info = Util.getBooleanProperty("basset.info");
+    error = Util.getBooleanProperty("basset.error");
+  }
+
+  // unset options are read as 0
+  private static int getPositive(String key, int defaultValue) {
+    int value = Util.getIntegerProperty(key);
+    return (value > 0) ? value : defaultValue;
+  }
+
+  /***********************************************************/
+  public static BassetSettings get() {
+    if (settings == null)
+      settings = new BassetSettings();
+    return settings;
+  }
+
+  /***********************************************************/
+  public String getLanguage() {
+    return language;
+  }
+
+  public DporMode getDporMode() {
+    return dporMode;
+  }
+
+  public int getHeuristic() {
+    return heuristic;
+  }
+
+  public MessageOrderingStrategy getOrdering() {
+    return ordering;
+  }
+
+  public int getRandomSeed() {
+    return randomSeed;
+  }
+
+  public int getSamples() {
+    return samples;
+  }
+
+  public int getSampleSteps() {
+    return sampleSteps;
+  }
+
+  public int getPctDepth() {
+    return pctDepth;
+  }
+
+  public int getDelayBound() {
+    return delayBound;
+  }
+
+  public String getReplaySchedule() {
+    return replaySchedule;
+  }
+
+  public boolean isRecordingSchedule() {
+    return recordingSchedule;
+  }
+
+  public boolean isBigstep() {
+    return bigstep;
+  }
+
+  public boolean isThreadyield() {
+    return threadyield;
+  }
+
+  public boolean isTracestats() {
+    return tracestats;
+  }
+
+  public boolean isDebug() {
+    return debug;
+  }
+
+  public boolean isVerbose() {
+    return verbose;
+  }
+
+  public boolean isInfo() {
+    return info;
+  }
+
+  public boolean isError() {
+    return error;
+  }
+
+  /***********************************************************/
+  public String toString() {
+    return "BassetSettings<dpor=" + dporMode + ",heuristic=" + heuristic
+        + ",bigstep=" + bigstep + ",threadyield=" + threadyield + ">";
+  }
+
+}
@@ -19,22 +19,25 @@
 package gov.nasa.jpf.actor.core;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
 
 import gov.nasa.jpf.actor.core.Platform.ReceiveEvent;
 import gov.nasa.jpf.actor.icore.IActor;
 import gov.nasa.jpf.actor.icore.IActorName;
-import gov.nasa.jpf.actor.icore.IActorThread;
 import gov.nasa.jpf.actor.icore.IMessage;
 import gov.nasa.jpf.actor.util.Logger;
 import gov.nasa.jpf.jvm.Verify;
 import gov.nasa.jpf.annotation.FilterField;
 
-import static gov.nasa.jpf.actor.util.Constants.*;
-
 /**
+ * The cloud holds all messages that have been sent but not yet delivered.
+ * 
+ * Pending messages are indexed per receiver (see {@link Mailbox}). The cloud
+ * incrementally maintains the set of "ready" mailboxes, i.e. mailboxes that
+ * are not empty and whose owner is in a state in which it can receive, so
+ * that computing the enabled messages only visits receivers that can actually
+ * make progress instead of scanning every message in transit.
  * 
  * @author Steven Lauterburg (steven.lauterburg@gmail.com)
  * @author Mirco Dotta (mirco.dotta@gmail.com)
@@ -43,7 +46,24 @@ import static gov.nasa.jpf.actor.util.Constants.*;
  */
 public class Cloud {
 
-  private List<IMessage> pendingMessages;
+  // pending messages indexed by receiver id
+  private Mailbox[] mailboxes;
+  private int pendingCount = 0;
+
+  // the mailboxes that are non-empty and whose owner is receptive. This is
+  // derived from the mailboxes, hence it is not part of the state
+  @FilterField
+  private Mailbox[] ready;
+  @FilterField
+  private int readyCount = 0;
+
+  // global send order of the pending messages
+  @FilterField
+  private int seqGen = 0;
+
+  @FilterField
+  private final BassetSettings settings = BassetSettings.get();
+
   // For ST2
   private ArrayList<ReceiveEvent> receiveEventList;
 
@@ -57,28 +77,144 @@ public class Cloud {
 
   @FilterField
   private int currentActorSendCount = 0;
+
+  // chooses the messages in the sampling modes, once the trace has started
+  private Sampler sampler;
+
+  // the deliveries of basset.schedule.replay, and how many were replayed
+  private String[] schedule;
+  private int scheduled = 0;
   @FilterField
   private int currentActorId = 0;
 
   /***********************************************************/
   public Cloud() {
-    this.pendingMessages = new ArrayList<IMessage>();
+    this.mailboxes = new Mailbox[16];
+    this.ready = new Mailbox[16];
     this.buf = new StringBuffer();
   }
 
   /***********************************************************/
   public int countPendingMessages(IActor actor) {
-    int result = 0;
-    for (IMessage msg : pendingMessages) {
-      if (msg.getReceiver().equals(actor))
-        result++;
+    Mailbox mb = getMailbox(actor.getActorName().getID(), false);
+    return (mb != null) ? mb.size() : 0;
+  }
+
+  /***********************************************************/
+  private Mailbox getMailbox(int receiverId, boolean create) {
+    if (receiverId >= mailboxes.length) {
+      if (!create)
+        return null;
+      int len = mailboxes.length;
+      while (len <= receiverId)
+        len *= 2;
+      Mailbox[] a = new Mailbox[len];
+      System.arraycopy(mailboxes, 0, a, 0, mailboxes.length);
+      mailboxes = a;
     }
-    return result;
+
+    Mailbox mb = mailboxes[receiverId];
+    if (mb == null && create) {
+      mb = new Mailbox(receiverId);
+      mailboxes[receiverId] = mb;
+    }
+    return mb;
+  }
+
+  /***********************************************************/
+  // keeps the ready list in sync after the size or the receptiveness
+  // of a mailbox changed
+  private void updateReady(Mailbox mb) {
+    boolean isReady = mb.isReady();
+
+    if (isReady && mb.readyIndex < 0) {
+      if (readyCount == ready.length) {
+        Mailbox[] a = new Mailbox[readyCount * 2];
+        System.arraycopy(ready, 0, a, 0, readyCount);
+        ready = a;
+      }
+      mb.readyIndex = readyCount;
+      ready[readyCount++] = mb;
+
+    } else if (!isReady && mb.readyIndex >= 0) {
+      Mailbox last = ready[--readyCount];
+      ready[mb.readyIndex] = last;
+      last.readyIndex = mb.readyIndex;
+      ready[readyCount] = null;
+      mb.readyIndex = -1;
+    }
+  }
+
+  /***********************************************************/
+  // called by the platform once an actor exists, before any of its
+  // state changes are reported
+  void register(IActor actor) {
+    Mailbox mb = getMailbox(actor.getActorName().getID(), true);
+    mb.owner = actor;
+    mb.receptive = actor.isWaiting() || actor.isWaitingOnReply();
+    updateReady(mb);
+  }
+
+  /***********************************************************/
+  // called by the platform whenever an actor changes into a state
+  // in which it can (or can no longer) receive messages
+  void setReceptive(IActor actor, boolean receptive) {
+    Mailbox mb = getMailbox(actor.getActorName().getID(), false);
+    if (mb != null && mb.owner != null && mb.receptive != receptive) {
+      mb.receptive = receptive;
+      updateReady(mb);
+    }
+  }
+
+  /***********************************************************/
+  private void removePending(IMessage msg) {
+    Mailbox mb = getMailbox(msg.getReceiver().getID(), false);
+    boolean found = (mb != null) && mb.remove(msg);
+    assert (found);
+
+    pendingCount--;
+    updateReady(mb);
+  }
+
+  /***********************************************************/
+  // Returns the messages that can be delivered right now, in the order in
+  // which they were sent. Only mailboxes on the ready list are visited.
+  private List<IMessage> getEnabledMessages() {
+    int n = 0;
+    for (int r = 0; r < readyCount; r++)
+      n += ready[r].size();
+
+    IMessage[] candidates = new IMessage[n];
+    long[] keys = new long[n];
+    int k = 0;
+    for (int r = 0; r < readyCount; r++) {
+      Mailbox mb = ready[r];
+      for (int i = 0; i < mb.size(); i++) {
+        IMessage msg = mb.get(i);
+        if (mb.owner.canBeDelivered(msg)) {
+          // sort key is the send sequence number, the low word is the
+          // position in the candidates array
+          keys[k] = ((long) mb.getSeq(i) << 32) | k;
+          candidates[k] = msg;
+          k++;
+        }
+      }
+    }
+
+    Arrays.sort(keys, 0, k);
+
+    List<IMessage> enabledMessages = new ArrayList<IMessage>(k);
+    for (int i = 0; i < k; i++)
+      enabledMessages.add(candidates[(int) keys[i]]);
+    return enabledMessages;
   }
 
   /***********************************************************/
   public void push(IMessage msg) {
-    pendingMessages.add(msg);
+    Mailbox mb = getMailbox(msg.getReceiver().getID(), true);
+    mb.add(msg, seqGen++);
+    pendingCount++;
+    updateReady(mb);
 
     // for high send average heuristic
     currentActorSendCount++;
@@ -100,21 +236,7 @@ public class Cloud {
     // for high send average heuristic
     Util.addSendCount(currentActorId, currentActorSendCount);
 
-    IMessage result = null;
-    int dporType = Util.getIntegerProperty("basset.dpor");
-    if (dporType == DPOR_NONE) {
-      result = getNormal();
-    } else if (dporType == DPOR_DCUTE || dporType == DPOR_DCUTE_FAST) {
-      result = getDPOR_dcute();
-    } else if (dporType == DPOR_PERSISTENT || dporType == DPOR_PERSISTENT_FAST
-        || dporType == DPOR_TRANSISTENT || dporType == DPOR_TRANSISTENT_FAST) {
-      result = getDPOR_persistent(dporType);
-    } else if (dporType == DPOR_PERSISTENT_SLEEP
-        || dporType == DPOR_TRANSISTENT_SLEEP) {
-      result = getDPOR_persistent_sleep(dporType);
-    } else {
-      throw new RuntimeException("Unknown DPOR type " + dporType);
-    }
+    IMessage result = settings.getDporMode().select(this);
 
     // for high send average heuristic
     if (result != null) {
@@ -126,65 +248,117 @@ public class Cloud {
   };
 
   /***********************************************************/
-  static Comparator<IMessage> compNormal = new Comparator<IMessage>() {
-    @Override
-    public int compare(IMessage m1, IMessage m2) {
-      String n1 = m1.getReceiver().getName();
-      String n2 = m2.getReceiver().getName();
-      int c = n1.compareTo(n2);
-      return c;
+  // Returns the earliest sent enabled message, without any choice
+  // generator. This is used during set up.
+  public IMessage getSimple() {
+    IMessage first = null;
+    int firstSeq = Integer.MAX_VALUE;
+
+    // within a mailbox messages are in send order, so the first
+    // deliverable message of each ready mailbox is a candidate
+    for (int r = 0; r < readyCount; r++) {
+      Mailbox mb = ready[r];
+      for (int i = 0; i < mb.size(); i++) {
+        if (mb.getSeq(i) > firstSeq)
+          break;
+        IMessage msg = mb.get(i);
+        if (mb.owner.canBeDelivered(msg)) {
+          first = msg;
+          firstSeq = mb.getSeq(i);
+          break;
+        }
+      }
     }
-  };
+
+    // return null if there are no enabled/deliverable messages
+    if (first == null)
+      return null;
+
+    removePending(first);
+    return first;
+  }
 
   /***********************************************************/
-  public IMessage getSimple() {
-    List<Integer> enabledMessages = new ArrayList<Integer>();
+  public IMessage getSampled() {
+    List<IMessage> enabledMessages = getEnabledMessages();
+    if (enabledMessages.isEmpty())
+      return null;
 
-//    // sort the messages so that state comparison can
-//    // potentially identify more equivalent states
-//    if (Util.isUsingActorStateSerializer())
-//      Collections.sort(pendingMessages, compNormal);
+    if (sampler == null)
+      sampler = Sampler.start(settings);
 
-    // create list of enabled/deliverable messages
-    for (int i = 0; i < pendingMessages.size(); i++) {
-      IMessage msg = pendingMessages.get(i);
-      IActorThread athread = Platform.getInstance().getActorThread(
-          msg.getReceiver());
-      if (athread != null && athread.getAttached().canBeDelivered(msg)) {
-        enabledMessages.add(i);
+    IMessage chosenMessage = sampler.choose(enabledMessages);
+    removePending(chosenMessage);
+
+    return chosenMessage;
+  }
+
+  public boolean isSampled() {
+    return sampler != null;
+  }
+
+  // the basset.randomseed that replays the current sampled trace
+  public int getTraceSeed() {
+    return sampler.getSeed();
+  }
+
+  /***********************************************************/
+  // Follows the schedule (see ScheduleListener). While the next entry does
+  // not match an enabled message, and after the last entry, messages are
+  // delivered in send order.
+  public IMessage getReplayed() {
+    List<IMessage> enabledMessages = getEnabledMessages();
+    if (enabledMessages.isEmpty())
+      return null;
+
+    if (schedule == null)
+      schedule = Util.loadSchedule(settings.getReplaySchedule());
+
+    IMessage chosenMessage = null;
+    if (scheduled < schedule.length) {
+      chosenMessage = findScheduled(enabledMessages, schedule[scheduled]);
+      if (chosenMessage != null) {
+        scheduled++;
+      } else {
+        chosenMessage = enabledMessages.get(0);
+        Logger.warning("schedule entry " + (scheduled + 1)
+            + " is not enabled, delivering message " + chosenMessage.getID()
+            + " to " + chosenMessage.getReceiver().getName() + " first");
       }
+    } else {
+      chosenMessage = enabledMessages.get(0);
     }
 
-    // return null if there are no enabled/deliverable messages
-    int choiceSize = enabledMessages.size();
-    if (choiceSize == 0)
+    removePending(chosenMessage);
+    return chosenMessage;
+  }
+
+  // entry is "id receiver sender label", the id only breaks ties
+  private static IMessage findScheduled(List<IMessage> enabledMessages,
+                                        String entry) {
+    String[] fields = entry.split("\t");
+    if (fields.length != 4)
       return null;
 
-    // choose next message to deliver using appropriate choice generator
-    int choice= 0;
-    
-    // return chosen message from the pending message list
-    return pendingMessages.remove(enabledMessages.get(choice).intValue());
+    IMessage match = null;
+    for (IMessage msg : enabledMessages) {
+      IActorName sender = msg.getSender();
+      if (fields[1].equals(msg.getReceiver().getName())
+          && fields[2].equals((sender == null) ? "-" : sender.getName())
+          && fields[3].equals(msg.getLabel())) {
+        if (fields[0].equals(String.valueOf(msg.getID())))
+          return msg;
+        if (match == null)
+          match = msg;
+      }
+    }
+    return match;
   }
 
   /***********************************************************/
   public IMessage getNormal() {
-    List<Integer> enabledMessages = new ArrayList<Integer>();
-
-    // sort the messages so that state comparison can
-    // potentially identify more equivalent states
-    if (Util.isUsingActorStateSerializer())
-      Collections.sort(pendingMessages, compNormal);
-
     // create list of enabled/deliverable messages
-    for (int i = 0; i < pendingMessages.size(); i++) {
-      IMessage msg = pendingMessages.get(i);
-      IActorThread athread = Platform.getInstance().getActorThread(
-          msg.getReceiver());
-      if (athread != null && athread.getAttached().canBeDelivered(msg)) {
-        enabledMessages.add(i);
-      }
-    }
+    List<IMessage> enabledMessages = getEnabledMessages();
 
     // return null if there are no enabled/deliverable messages
     int choiceSize = enabledMessages.size();
@@ -193,51 +367,31 @@ public class Cloud {
 
     // choose next message to deliver using appropriate choice generator
     int choice;
-    if (Util.getBooleanProperty("basset.bigstep")
-        && Util.getBooleanProperty("basset.threadyield")) {
+    boolean bigstep = settings.isBigstep();
+    boolean threadyield = settings.isThreadyield();
+    if (bigstep && threadyield) {
       throw new RuntimeException("bigstep and threadyield cannot both be true");
-    } else if (Util.getBooleanProperty("basset.bigstep")
-        && !Util.getBooleanProperty("basset.threadyield")) {
+    } else if (bigstep || threadyield) {
       choice = Verify.getInt(0, choiceSize - 1);
-    } else if (!Util.getBooleanProperty("basset.bigstep")
-        && Util.getBooleanProperty("basset.threadyield")) {
-      choice = Verify.getInt(0, choiceSize - 1);
-    } else { // if (!Util.getBooleanProperty("basset.bigstep") &&
-      // !Util.getBooleanProperty("basset.threadyield")) {
+    } else {
       choice = Util.getIntAndForceChoiceGenerator(0, choiceSize - 1);
     }
 
-    int[] enabledReceivers = new int[enabledMessages.size()];
-    for (int i = 0; i < enabledMessages.size(); i++)
-      enabledReceivers[i] = pendingMessages.get(enabledMessages.get(i))
-          .getReceiver().getID();
-    // System.out.println(count + ":: choices: " +
-    // java.util.Arrays.toString(enabledReceivers)
-    // + " choice: " + choice + " receiver: "
-    // +
-    // pendingMessages.get(enabledMessages.get(choice)).getReceiver().getID());
+    // return chosen message and remove it from the pending messages
+    IMessage chosenMessage = enabledMessages.get(choice);
+    removePending(chosenMessage);
 
-    // return chosen message from the pending message list
-    return pendingMessages.remove(enabledMessages.get(choice).intValue());
+    return chosenMessage;
   }
 
   /***********************************************************/
   // this is the original dpor method used for the ase paper
-  private IMessage getDPOR_dcute() {
-    List<IMessage> enabledMessages = new ArrayList<IMessage>();
-
+  IMessage getDPOR_dcute() {
     // create a list of enabled/deliverable messages
-    for (int i = 0; i < pendingMessages.size(); i++) {
-      IMessage msg = pendingMessages.get(i);
-      IActorName receiver = msg.getReceiver();
-      IActorThread athread = Platform.getInstance().getActorThread(receiver);
-      if (athread != null && athread.getAttached().canBeDelivered(msg)) {
-        enabledMessages.add(msg);
-      }
-    }
+    List<IMessage> enabledMessages = getEnabledMessages();
 
     // sort enabled messages based on specified heuristic
-    enabledMessages = MessageOrderer.orderByHeuristic(enabledMessages);
+    MessageOrderer.orderByHeuristic(enabledMessages);
 
     // return null if there are no enabled/deliverable messages
     int numEnabledMessages = enabledMessages.size();
@@ -255,7 +409,7 @@ public class Cloud {
     // currently we still need a cg even if these is only one choice
     // the dpor saves the corresponding cg that chose each received message
     int choice;
-    if (Util.getBooleanProperty("basset.bigstep") && numEnabledMessages == 1)
+    if (settings.isBigstep() && numEnabledMessages == 1)
       choice = 0;
     else
       choice = Util.getIntDPORDcute(0, numEnabledMessages - 1, receiverIdArray);
@@ -268,8 +422,7 @@ public class Cloud {
     // return chosen message from the enabled message list
     // also remove chosen message from pending message list
     IMessage chosenMessage = enabledMessages.get(choice);
-    boolean found = pendingMessages.remove(chosenMessage);
-    assert (found);
+    removePending(chosenMessage);
 
     return chosenMessage;
 
@@ -280,21 +433,12 @@ public class Cloud {
   /***********************************************************/
   // this dpor get method extends the original dcute version by
   // adding support for persistent sets
-  public IMessage getDPOR_persistent(int dporType) {
-    List<IMessage> enabledMessages = new ArrayList<IMessage>();
-
+  IMessage getDPOR_persistent(boolean expandOnlyOnce) {
     // create a list of enabled/deliverable messages
-    for (int i = 0; i < pendingMessages.size(); i++) {
-      IMessage msg = pendingMessages.get(i);
-      IActorName receiver = msg.getReceiver();
-      IActorThread athread = Platform.getInstance().getActorThread(receiver);
-      if (athread != null && athread.getAttached().canBeDelivered(msg)) {
-        enabledMessages.add(msg);
-      }
-    }
+    List<IMessage> enabledMessages = getEnabledMessages();
 
     // sort the list of enabled messages using the specified heuristic
-    enabledMessages = MessageOrderer.orderByHeuristic(enabledMessages);
+    MessageOrderer.orderByHeuristic(enabledMessages);
 
     // return null if there are no enabled/deliverable messages
     int numEnabledMessages = enabledMessages.size();
@@ -313,15 +457,11 @@ public class Cloud {
     // currently we still need a cg even if these is only one choice
     // the dpor saves the corresponding cg that chose each received message
     int choice;
-    if (Util.getBooleanProperty("basset.bigstep") && numEnabledMessages == 1)
+    if (settings.isBigstep() && numEnabledMessages == 1)
       choice = 0;
-    else if (dporType == DPOR_TRANSISTENT || dporType == DPOR_TRANSISTENT_FAST) {
-      choice = Util.getIntDPORPersistent(0, numEnabledMessages - 1,
-          enabledMsgIdArray, receiverIdArray, true);
-    } else {
+    else
       choice = Util.getIntDPORPersistent(0, numEnabledMessages - 1,
-          enabledMsgIdArray, receiverIdArray, false);
-    }
+          enabledMsgIdArray, receiverIdArray, expandOnlyOnce);
 
     // System.out.println(count + ":: choices: " +
     // java.util.Arrays.toString(receiverIdArray)
@@ -331,8 +471,7 @@ public class Cloud {
     // return chosen message from the enabled message list
     // also remove chosen message from pending message list
     IMessage chosenMessage = enabledMessages.get(choice);
-    boolean found = pendingMessages.remove(chosenMessage);
-    assert (found);
+    removePending(chosenMessage);
 
     return chosenMessage;
 
@@ -343,21 +482,12 @@ public class Cloud {
   /***********************************************************/
   // this dpor get method extends the original dcute version by
   // adding support for persistent sets
-  public IMessage getDPOR_persistent_sleep(int dporType) {
-    List<IMessage> enabledMessages = new ArrayList<IMessage>();
-
+  IMessage getDPOR_persistent_sleep(boolean expandOnlyOnce) {
     // create a list of enabled/deliverable messages
-    for (int i = 0; i < pendingMessages.size(); i++) {
-      IMessage msg = pendingMessages.get(i);
-      IActorName receiver = msg.getReceiver();
-      IActorThread athread = Platform.getInstance().getActorThread(receiver);
-      if (athread != null && athread.getAttached().canBeDelivered(msg)) {
-        enabledMessages.add(msg);
-      }
-    }
+    List<IMessage> enabledMessages = getEnabledMessages();
 
     // sort the list of enabled messages using the specified heuristic
-    enabledMessages = MessageOrderer.orderByHeuristic(enabledMessages);
+    MessageOrderer.orderByHeuristic(enabledMessages);
 
     // return null if there are no enabled/deliverable messages
     int numEnabledMessages = enabledMessages.size();
@@ -376,16 +506,12 @@ public class Cloud {
     // choose next message to deliver using appropriate choice generator
     // currently we still need a cg even if these is only one choice
     // the dpor saves the corresponding cg that chose each received message
-    int choice = 0;
-    if (Util.getBooleanProperty("basset.bigstep") && numEnabledMessages == 1)
+    int choice;
+    if (settings.isBigstep() && numEnabledMessages == 1)
       choice = 0;
-    else if (dporType == DPOR_TRANSISTENT_SLEEP) {
-      choice = Util.getIntDPORPersistentSleep(0, numEnabledMessages - 1,
-          enabledMsgIdArray, receiversArray, true);
-    } else if (dporType == DPOR_PERSISTENT_SLEEP) {
+    else
       choice = Util.getIntDPORPersistentSleep(0, numEnabledMessages - 1,
-          enabledMsgIdArray, receiversArray, false);
-    }
+          enabledMsgIdArray, receiversArray, expandOnlyOnce);
 
     // System.out.println(count + ":: choices: " +
     // java.util.Arrays.toString(enabledMsgIdArray) +
@@ -403,8 +529,7 @@ public class Cloud {
 
     chosenMessage = enabledMessages.get(choice);
 
-    boolean found = pendingMessages.remove(chosenMessage);
-    assert (found);
+    removePending(chosenMessage);
 
     return chosenMessage;
 
@@ -412,6 +537,41 @@ public class Cloud {
 
   }
 
+  /***********************************************************/
+  // optimal dpor: the choice generator is handed the keys of the enabled
+  // messages, which identify them across paths
+  IMessage getDPOR_optimal() {
+    // create a list of enabled/deliverable messages
+    List<IMessage> enabledMessages = getEnabledMessages();
+
+    // sort the list of enabled messages using the specified heuristic
+    MessageOrderer.orderByHeuristic(enabledMessages);
+
+    // return null if there are no enabled/deliverable messages
+    int numEnabledMessages = enabledMessages.size();
+    if (numEnabledMessages == 0)
+      return null;
+
+    long[] enabledMsgKeyArray = new long[numEnabledMessages];
+    long[] receiversArray = new long[numEnabledMessages];
+    for (int i = 0; i < numEnabledMessages; i++) {
+      enabledMsgKeyArray[i] = Platform.getMessageKey(enabledMessages.get(i));
+      receiversArray[i] = enabledMessages.get(i).getReceiver().getKey();
+    }
+
+    // unlike the other modes this needs a cg even in big step mode, the
+    // cg of each delivery keeps its wakeup tree and sleep set
+    int choice = Util.getIntDPOROptimal(0, numEnabledMessages - 1,
+        enabledMsgKeyArray, receiversArray);
+
+    // return chosen message from the enabled message list
+    // also remove chosen message from pending message list
+    IMessage chosenMessage = enabledMessages.get(choice);
+    removePending(chosenMessage);
+
+    return chosenMessage;
+  }
+
   private VectorClock getMsgRcceiverClock(IMessage sMsg) {
     for (ReceiveEvent event : receiveEventList) {
       if (event.messageId == sMsg.getID())
@@ -437,13 +597,13 @@ public class Cloud {
 
   /***********************************************************/
   public void printPendingMessagesInfo() {
-    for (IMessage msg : pendingMessages)
+    for (IMessage msg : getPendingMessages())
       Logger.warning(this, "Pending: " + msg);
   }
 
   /***********************************************************/
   public int totalPendingMessages() {
-    return pendingMessages.size();
+    return pendingCount;
   }
 
   /***********************************************************/
@@ -457,10 +617,29 @@ public class Cloud {
   }
 
   /***********************************************************/
-  // XXX: Be careful in using this. Side-effects can have very bad
-  // consequences ...
+  // Returns a snapshot of all pending messages in send order. Modifying the
+  // returned list does not affect the cloud.
   List<IMessage> getPendingMessages() {
-    return pendingMessages;
+    IMessage[] pending = new IMessage[pendingCount];
+    long[] keys = new long[pendingCount];
+    int k = 0;
+    for (int id = 0; id < mailboxes.length; id++) {
+      Mailbox mb = mailboxes[id];
+      if (mb != null) {
+        for (int i = 0; i < mb.size(); i++) {
+          keys[k] = ((long) mb.getSeq(i) << 32) | k;
+          pending[k] = mb.get(i);
+          k++;
+        }
+      }
+    }
+
+    Arrays.sort(keys);
+
+    List<IMessage> result = new ArrayList<IMessage>(k);
+    for (int i = 0; i < k; i++)
+      result.add(pending[(int) keys[i]]);
+    return result;
   }
 
   public void setEventList(ArrayList<ReceiveEvent> receiveEvents) {
@@ -48,17 +48,47 @@ public class CoreActorName implements IActorName {
   @FilterField
   private final int id;
 
+  // derived from the key of the creating actor and the number of actors it
+  // created before, so that it doesn't depend on the interleaving. Actors
+  // that are not created by another actor (e.g. by the driver) are numbered
+  // in the order in which they are created
+  @FilterField
+  private final long key;
+  @FilterField
+  private int created = 0;
+  @FilterField
+  private static int createdByPlatform = 0;
+
   protected CoreActorName() {
     this(EMPTY_PREFIX);
   }
 
   public CoreActorName(String prefix) {
     this.id = idGen++;
+    this.key = nextKey();
     this.name = JPF_ACTOR_NAME + id + NAME_SEP_LEFT + prefix + NAME_SEP_RIGHT;
     assert !exists(this);
     names.add(this);
   }
 
+  private static long nextKey() {
+    Thread t = Thread.currentThread();
+    if (t instanceof CoreActorThread) {
+      IActorName creator = ((CoreActorThread) t).getActorName();
+      if (creator instanceof CoreActorName) {
+        CoreActorName c = (CoreActorName) creator;
+        return mix(c.key, c.created++);
+      }
+    }
+    return mix(0, createdByPlatform++);
+  }
+
+  private static long mix(long parent, int index) {
+    long h = (parent + index + 1) * 0x9e3779b97f4a7c15L;
+    h = (h ^ (h >>> 32)) * 0xd6e8feb86659fd93L;
+    return h ^ (h >>> 32);
+  }
+
   public static CoreActorName createActorName() {
     return new CoreActorName();
   }
@@ -103,4 +133,9 @@ public class CoreActorName implements IActorName {
     return id;
   }
 
+  @Override
+  public long getKey() {
+    return key;
+  }
+
 }
@@ -35,6 +35,10 @@ public abstract class CoreActorThread extends Thread implements IActorThread {
   protected final CoreActor attached;
   @FilterField
   public VectorClock vc;
+  // the actor ID plus one, set by the native peer when the thread is started
+  // and used to find its ThreadInfo without searching the thread list
+  @FilterField
+  private int threadIndex;
 
   protected CoreActorThread(CoreActor actor) {
     this.attached = actor;
@@ -92,7 +96,7 @@ public abstract class CoreActorThread extends Thread implements IActorThread {
 
   @Override
   public void setVectorClock(VectorClock clock) {
-    vc.setVector(clock.getVector());
+    vc = clock.snapshot();
   }
 
   @Override
@@ -102,7 +106,7 @@ public abstract class CoreActorThread extends Thread implements IActorThread {
 
   @Override
   public void startThread() {
-    Util.startThreadInInterruptedStatus(this);
+    Util.startThreadInInterruptedStatus(this, getActorName().getID());
   }
 
   @Override
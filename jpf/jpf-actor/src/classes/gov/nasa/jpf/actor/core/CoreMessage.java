@@ -69,7 +69,7 @@ public class CoreMessage implements IMessage {
 
   /*******************************************************/
   public void setVectorClock(VectorClock clock) {
-    vc.setVector(clock.getVector());
+    vc = clock.snapshot();
   }
 
   /*******************************************************/
@@ -82,6 +82,11 @@ public class CoreMessage implements IMessage {
     return id;
   }
 
+  /*******************************************************/
+  public String getLabel() {
+    return (content == null) ? "null" : content.getClass().getName();
+  }
+
   /*******************************************************/
   @Override
   public String toString() {
@@ -0,0 +1,251 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.core;
+
+import gov.nasa.jpf.actor.icore.IActorName;
+import gov.nasa.jpf.actor.icore.IMessage;
+
+import static gov.nasa.jpf.actor.util.Constants.*;
+
+/**
+ * The dynamic partial order reductions selectable with basset.dpor.
+ * 
+ * Each mode knows how the next message is chosen from the cloud, how a send
+ * is recorded and which backtrack set a dependent receive event is added
+ * to, so the platform and the cloud don't have to test the option on every
+ * send and delivery.
+ */
+public enum DporMode {
+
+  NONE(DPOR_NONE, false) {
+    IMessage select(Cloud cloud) {
+      return cloud.getNormal();
+    }
+
+    void recordSend(Platform platform, IMessage msg) {
+    }
+
+    public boolean isEnabled() {
+      return false;
+    }
+  },
+
+  DCUTE(DPOR_DCUTE, false) {
+    IMessage select(Cloud cloud) {
+      return cloud.getDPOR_dcute();
+    }
+
+    void recordSend(Platform platform, IMessage msg) {
+      platform.pushDPORDcute(msg);
+    }
+  },
+
+  DCUTE_FAST(DPOR_DCUTE_FAST, true) {
+    IMessage select(Cloud cloud) {
+      return cloud.getDPOR_dcute();
+    }
+
+    void recordSend(Platform platform, IMessage msg) {
+      platform.pushDPORDcute(msg);
+    }
+  },
+
+  PERSISTENT(DPOR_PERSISTENT, false) {
+    IMessage select(Cloud cloud) {
+      return cloud.getDPOR_persistent(false);
+    }
+
+    void addToBacktrackSet(int cg, int messageId, int receiverId) {
+      Util.addToPersistentSet(cg, messageId, receiverId);
+    }
+  },
+
+  PERSISTENT_FAST(DPOR_PERSISTENT_FAST, true) {
+    IMessage select(Cloud cloud) {
+      return cloud.getDPOR_persistent(false);
+    }
+
+    void addToBacktrackSet(int cg, int messageId, int receiverId) {
+      Util.addToPersistentSet(cg, messageId, receiverId);
+    }
+  },
+
+  TRANSISTENT(DPOR_TRANSISTENT, false) {
+    IMessage select(Cloud cloud) {
+      return cloud.getDPOR_persistent(true);
+    }
+
+    void addToBacktrackSet(int cg, int messageId, int receiverId) {
+      Util.addToTransistentSet(cg, messageId, receiverId);
+    }
+
+    boolean traversesStack() {
+      return true;
+    }
+  },
+
+  // this mode only prunes with the "expand only once" choice generators,
+  // dependent receive events are not added to any set
+  TRANSISTENT_FAST(DPOR_TRANSISTENT_FAST, true) {
+    IMessage select(Cloud cloud) {
+      return cloud.getDPOR_persistent(true);
+    }
+  },
+
+  PERSISTENT_SLEEP(DPOR_PERSISTENT_SLEEP, false) {
+    IMessage select(Cloud cloud) {
+      return cloud.getDPOR_persistent_sleep(false);
+    }
+
+    void addToBacktrackSet(int cg, int messageId, int receiverId) {
+      Util.addToPersistentSet_Sleep(cg, messageId, receiverId);
+    }
+  },
+
+  TRANSISTENT_SLEEP(DPOR_TRANSISTENT_SLEEP, false) {
+    IMessage select(Cloud cloud) {
+      return cloud.getDPOR_persistent_sleep(true);
+    }
+
+    void addToBacktrackSet(int cg, int messageId, int receiverId) {
+      Util.addToTransistentSet_Sleep(cg, messageId, receiverId);
+    }
+
+    boolean traversesStack() {
+      return true;
+    }
+  },
+
+  // races are detected (and wakeup trees updated) by the choice generators
+  // when a delivery is reported, sends only need to update the clocks
+  OPTIMAL(DPOR_OPTIMAL, false) {
+    IMessage select(Cloud cloud) {
+      return cloud.getDPOR_optimal();
+    }
+
+    void recordSend(Platform platform, IMessage msg) {
+      platform.pushDPOROptimal(msg);
+    }
+
+    void recordDelivery(IMessage msg, VectorClock receiptClock) {
+      IActorName receiver = msg.getReceiver();
+      Util.recordDelivery(Platform.getMessageKey(msg), receiver.getKey(),
+          receiver.getID(), receiptClock.toArray(), msg.getVectorClock()
+              .toArray());
+    }
+  },
+
+  // the sampling modes explore basset.samples random traces, see Sampler
+  PCT(DPOR_PCT, false) {
+    IMessage select(Cloud cloud) {
+      return cloud.getSampled();
+    }
+
+    void recordSend(Platform platform, IMessage msg) {
+    }
+
+    public boolean isEnabled() {
+      return false;
+    }
+  },
+
+  DELAY_BOUNDED(DPOR_DELAY_BOUNDED, false) {
+    IMessage select(Cloud cloud) {
+      return cloud.getSampled();
+    }
+
+    void recordSend(Platform platform, IMessage msg) {
+    }
+
+    public boolean isEnabled() {
+      return false;
+    }
+  },
+
+  // follows the schedule of basset.schedule.replay, without any choice
+  REPLAY(DPOR_REPLAY, false) {
+    IMessage select(Cloud cloud) {
+      return cloud.getReplayed();
+    }
+
+    void recordSend(Platform platform, IMessage msg) {
+    }
+
+    public boolean isEnabled() {
+      return false;
+    }
+  };
+
+  private final int id;
+  private final boolean fast;
+
+  private DporMode(int id, boolean fast) {
+    this.id = id;
+    this.fast = fast;
+  }
+
+  /***********************************************************/
+  public static DporMode forId(int id) {
+    for (DporMode mode : values()) {
+      if (mode.id == id)
+        return mode;
+    }
+    throw new RuntimeException("Invalid DPOR specified: " + id);
+  }
+
+  /***********************************************************/
+  public int getId() {
+    return id;
+  }
+
+  public boolean isEnabled() {
+    return true;
+  }
+
+  // "The Rajesh Enhancement": only the earliest dependent receive event
+  // is considered for each send
+  public boolean isFast() {
+    return fast;
+  }
+
+  /***********************************************************/
+  // chooses the next message to deliver, null if none is enabled
+  abstract IMessage select(Cloud cloud);
+
+  // vector clock and backtrack set processing for a message send
+  void recordSend(Platform platform, IMessage msg) {
+    platform.pushDPORPersistent(msg);
+  }
+
+  // adds a dependent receive event to the backtrack set of a choice
+  // generator
+  void addToBacktrackSet(int cg, int messageId, int receiverId) {
+  }
+
+  // reports a delivery to the choice generator that chose it
+  void recordDelivery(IMessage msg, VectorClock receiptClock) {
+  }
+
+  // whether the receive events on the stack need to be revisited after
+  // each delivery
+  boolean traversesStack() {
+    return false;
+  }
+
+}
@@ -0,0 +1,119 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.core;
+
+import gov.nasa.jpf.actor.icore.IActor;
+import gov.nasa.jpf.actor.icore.IMessage;
+import gov.nasa.jpf.annotation.FilterField;
+
+/**
+ * The pending messages for a single receiver, kept in the order in which they
+ * were pushed to the cloud.
+ * 
+ * Each message is tagged with a cloud wide sequence number so that the
+ * enabled messages of several mailboxes can be merged back into the global
+ * send order. The sequence numbers are filtered from the state, since two
+ * clouds that only differ in the interleaving of sends to different receivers
+ * offer the same deliveries.
+ * 
+ */
+class Mailbox {
+
+  final int receiverId;
+
+  // the receiving actor, known once it has been registered with the platform
+  IActor owner;
+
+  // true while the owner is in a state in which it can accept messages
+  boolean receptive;
+
+  // position of this mailbox in the cloud's ready list, -1 if not ready
+  @FilterField
+  int readyIndex = -1;
+
+  private IMessage[] messages = new IMessage[4];
+  @FilterField
+  private int[] seqs = new int[4];
+  private int size;
+
+  Mailbox(int receiverId) {
+    this.receiverId = receiverId;
+  }
+
+  /***********************************************************/
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  IMessage get(int i) {
+    return messages[i];
+  }
+
+  int getSeq(int i) {
+    return seqs[i];
+  }
+
+  /***********************************************************/
+  void add(IMessage msg, int seq) {
+    if (size == messages.length) {
+      IMessage[] m = new IMessage[size * 2];
+      System.arraycopy(messages, 0, m, 0, size);
+      messages = m;
+      int[] s = new int[size * 2];
+      System.arraycopy(seqs, 0, s, 0, size);
+      seqs = s;
+    }
+    messages[size] = msg;
+    seqs[size] = seq;
+    size++;
+  }
+
+  /***********************************************************/
+  boolean remove(IMessage msg) {
+    for (int i = 0; i < size; i++) {
+      if (messages[i] == msg) {
+        int n = size - i - 1;
+        if (n > 0) {
+          System.arraycopy(messages, i + 1, messages, i, n);
+          System.arraycopy(seqs, i + 1, seqs, i, n);
+        }
+        size--;
+        // don't keep stale references around, they would show up in the state
+        messages[size] = null;
+        seqs[size] = 0;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /***********************************************************/
+  boolean isReady() {
+    return receptive && size > 0;
+  }
+
+  public String toString() {
+    return "Mailbox<" + receiverId + ",size=" + size + ">";
+  }
+
+}
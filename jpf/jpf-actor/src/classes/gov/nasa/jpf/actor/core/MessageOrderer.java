@@ -19,15 +19,11 @@
 package gov.nasa.jpf.actor.core;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
-import java.util.Vector;
 
 import gov.nasa.jpf.actor.icore.IMessage;
+import gov.nasa.jpf.annotation.FilterField;
 
 import static gov.nasa.jpf.actor.util.Constants.*;
 
@@ -39,329 +35,143 @@ import static gov.nasa.jpf.actor.util.Constants.*;
 public class MessageOrderer {
 
   /***********************************************************/
-  // Given a list of messages this method returns a list of
-  // messages ordered according to the current dpor ordering
-  // heuristic. Currently this method is used to order only
+  // Orders a list of messages according to the current dpor ordering
+  // heuristic, in place. Currently this method is used to order only
   // enabled messages - not the potentially larger set of
   // pending messages.
-  public static List<IMessage> orderByHeuristic(List<IMessage> messages) {
-    List<IMessage> orderedMessages;
-    int heuristic = Util.getIntegerProperty("basset.dpor_heuristic");
-
-    switch (heuristic) {
-
-    case HEURISTIC_LOW_RECEIVER_ID: {
-      orderedMessages = heuristicLowReceiverId(messages);
-      break;
-    }
-    case HEURISTIC_HIGH_RECEIVER_ID: {
-      orderedMessages = heuristicHighReceiverId(messages);
-      break;
-    }
-    case HEURISTIC_NONE:
-    case HEURISTIC_QUEUE: {
-      orderedMessages = heuristicQueue(messages);
-      break;
-    }
-    case HEURISTIC_STACK: {
-      orderedMessages = heuristicStack(messages);
-      break;
-    }
-    case HEURISTIC_RANDOM: {
-      orderedMessages = heuristicRandom(messages);
-      break;
-    }
-    case HEURISTIC_LOW_RECEIVER_ENABLED_MESSAGE_COUNT: {
-      orderedMessages = heuristicLowEnabledMessageCount(messages);
-      break;
-    }
-    case HEURISTIC_HIGH_RECEIVER_ENABLED_MESSAGE_COUNT: {
-      orderedMessages = heuristicHighEnabledMessageCount(messages);
-      break;
-    }
-    case HEURISTIC_HIGH_ACTOR_SEND_AVERAGE: {
-      orderedMessages = heuristicHighActorSendAverage(messages);
-      break;
-    }
-    case HEURISTIC_SEND_GRAPH_REACHABILITY: {
-      orderedMessages = heuristicSendGraphReachability(messages);
-      break;
-    }
-    default:
-      throw new RuntimeException("invalid +basset.dpor_heuristic: " + heuristic);
-    }
-
-    return orderedMessages;
+  public static void orderByHeuristic(List<IMessage> messages) {
+    BassetSettings.get().getOrdering().order(messages);
   }
 
   /***********************************************************/
-  private static List<IMessage> heuristicStack(List<IMessage> messages) {
-    Vector<Integer> order = new Vector<Integer>();
-
-    for (int i = messages.size() - 1; i >= 0; i--) {
-      int receiver = messages.get(i).getReceiver().getID();
-      if (!order.contains(Integer.valueOf(receiver))) {
-        order.add(receiver);
-      }
-    }
-
-    List<IMessage> orderedMessages = new ArrayList<IMessage>();
-    while (!order.isEmpty()) {
-      int receiver = order.remove(0);
-      for (IMessage msg : messages) {
-        if (msg.getReceiver().getID() == receiver) {
-          orderedMessages.add(msg);
-        }
-      }
-    }
-    return orderedMessages;
+  // Returns the ordering for a basset.dpor_heuristic value
+  public static MessageOrderingStrategy forHeuristic(int heuristic) {
+    if (heuristic < 0 || heuristic >= HEURISTICS.length)
+      throw new RuntimeException("invalid +basset.dpor_heuristic: " + heuristic);
+    return HEURISTICS[heuristic];
   }
 
-  /***********************************************************/
-  private static List<IMessage> heuristicLowEnabledMessageCount(List<IMessage> messages) {
-    Map<Integer, Integer> order = new HashMap<Integer, Integer>();
-
-    for (int i = 0; i < messages.size(); i++) {
-      int receiver = messages.get(i).getReceiver().getID();
-      if (!order.containsKey(receiver)) {
-        order.put(receiver, 1);
-      } else {
-        order.put(receiver, order.get(receiver) + 1);
-      }
-    }
-
-    List<Integer> mapKeys = new Vector<Integer>(order.keySet());
-    List<Integer> mapValues = new Vector<Integer>(order.values());
-
-    List<Integer> sortedValues = new Vector<Integer>(mapValues);
-    Collections.sort(sortedValues);
-
-    int size = sortedValues.size();
-    Integer[] orderedActors = new Integer[size];
-
-    for (int i = 0; i < size; i++) {
-      int index = mapValues.indexOf(sortedValues.get(i));
-      orderedActors[i] = mapKeys.get(index);
-      mapValues.set(index, 0);
+  // Returns a new instance of a basset.dpor_ordering class
+  public static MessageOrderingStrategy forClassName(String className) {
+    try {
+      return (MessageOrderingStrategy) Class.forName(className).newInstance();
+    } catch (Exception e) {
+      throw new RuntimeException("invalid +basset.dpor_ordering: " + className
+          + " (" + e + ")");
     }
-
-    List<IMessage> orderedMessages = new ArrayList<IMessage>();
-    for (int i = 0; i < orderedActors.length; i++) {
-      int receiver = orderedActors[i];
-      for (IMessage msg : messages) {
-        if (msg.getReceiver().getID() == receiver) {
-          orderedMessages.add(msg);
-        }
-      }
-    }
-    return orderedMessages;
   }
 
   /***********************************************************/
-  private static List<IMessage> heuristicHighEnabledMessageCount(List<IMessage> messages) {
-    Map<Integer, Integer> order = new HashMap<Integer, Integer>();
-
-    for (int i = 0; i < messages.size(); i++) {
-      int receiver = messages.get(i).getReceiver().getID();
-      if (!order.containsKey(receiver)) {
-        order.put(receiver, 1);
-      } else {
-        order.put(receiver, order.get(receiver) + 1);
-      }
-    }
-
-    List<Integer> mapKeys = new Vector<Integer>(order.keySet());
-    List<Integer> mapValues = new Vector<Integer>(order.values());
-
-    List<Integer> sortedValues = new Vector<Integer>(mapValues);
-    Collections.sort(sortedValues, new Comparator<Integer>() {
-      @Override
-      public int compare(Integer arg0, Integer arg1) {
-        return arg1.compareTo(arg0);
-      }
-    });
-
-    int size = sortedValues.size();
-    Integer[] orderedActors = new Integer[size];
-
-    for (int i = 0; i < size; i++) {
-      int index = mapValues.indexOf(sortedValues.get(i));
-      orderedActors[i] = mapKeys.get(index);
-      mapValues.set(index, 0);
+  // receivers in the order of their first message (FIFO)
+  static final MessageOrderingStrategy QUEUE = new ReceiverOrdering() {
+    protected void orderReceivers(int[] order, int size) {
     }
+  };
 
-    List<IMessage> orderedMessages = new ArrayList<IMessage>();
-    for (int i = 0; i < orderedActors.length; i++) {
-      int receiver = orderedActors[i];
-      for (IMessage msg : messages) {
-        if (msg.getReceiver().getID() == receiver) {
-          orderedMessages.add(msg);
-        }
-      }
+  // receivers in the reverse order of their last message (LIFO)
+  static final MessageOrderingStrategy STACK = new ReceiverOrdering() {
+    protected int compare(int b1, int b2) {
+      return getLastPosition(b2) - getLastPosition(b1);
     }
-    return orderedMessages;
-  }
-
-  /***********************************************************/
-  private static List<IMessage> heuristicRandom(List<IMessage> messages) {
-    Vector<Integer> order = new Vector<Integer>();
+  };
 
-    for (int i = 0; i < messages.size(); i++) {
-      int receiver = messages.get(i).getReceiver().getID();
-      if (!order.contains(Integer.valueOf(receiver))) {
-        order.add(receiver);
-      }
+  static final MessageOrderingStrategy LOW_RECEIVER_ID = new ReceiverOrdering() {
+    protected int compare(int b1, int b2) {
+      return getReceiverId(b1) - getReceiverId(b2);
     }
+  };
 
-    Integer[] orderArray = order.toArray(new Integer[] {});
-    randomizeIntegerArray(orderArray);
-
-    List<IMessage> orderedMessages = new ArrayList<IMessage>();
-    for (int i = 0; i < orderArray.length; i++) {
-      int receiver = orderArray[i];
-      for (IMessage msg : messages) {
-        if (msg.getReceiver().getID() == receiver) {
-          orderedMessages.add(msg);
-        }
-      }
+  static final MessageOrderingStrategy HIGH_RECEIVER_ID = new ReceiverOrdering() {
+    protected int compare(int b1, int b2) {
+      return getReceiverId(b2) - getReceiverId(b1);
     }
-    return orderedMessages;
-  }
-
-  /***********************************************************/
-  private static List<IMessage> heuristicHighReceiverId(List<IMessage> messages) {
-    List<IMessage> orderedMessages = new ArrayList<IMessage>(messages);
-    Comparator<IMessage> compHigher = new Comparator<IMessage>() {
-      @Override
-      public int compare(IMessage message1, IMessage message2) {
-        return message2.getReceiver().getID() - message1.getReceiver().getID();
-      }
-    };
-    Collections.sort(orderedMessages, compHigher);
-    return orderedMessages;
-  }
+  };
 
-  /***********************************************************/
-  private static List<IMessage> heuristicLowReceiverId(List<IMessage> messages) {
-    List<IMessage> orderedMessages = new ArrayList<IMessage>(messages);
-
-    Comparator<IMessage> compLower = new Comparator<IMessage>() {
-      @Override
-      public int compare(IMessage message1, IMessage message2) {
-        return message1.getReceiver().getID() - message2.getReceiver().getID();
-      }
-    };
-    Collections.sort(orderedMessages, compLower);
-    return orderedMessages;
-  }
+  // receivers in the order of their first message, shuffled with the
+  // basset.randomseed (the same permutation for the same receivers)
+  static final MessageOrderingStrategy RANDOM = new ReceiverOrdering() {
+    @FilterField
+    private final Random generator = new Random();
 
-  /***********************************************************/
-  private static List<IMessage> heuristicQueue(List<IMessage> messages) {
-    Vector<Integer> order = new Vector<Integer>();
-    for (int i = 0; i < messages.size(); i++) {
-      int receiver = messages.get(i).getReceiver().getID();
-      if (!order.contains(Integer.valueOf(receiver))) {
-        order.add(receiver);
+    protected void orderReceivers(int[] order, int size) {
+      generator.setSeed(BassetSettings.get().getRandomSeed());
+      for (int i = 0; i < size * 2; i++) {
+        int index1 = generator.nextInt(size);
+        int index2 = generator.nextInt(size);
+        int temp = order[index1];
+        order[index1] = order[index2];
+        order[index2] = temp;
       }
     }
+  };
 
-    List<IMessage> orderedMessages = new ArrayList<IMessage>();
-    while (!order.isEmpty()) {
-      int receiver = order.remove(0);
-      for (IMessage msg : messages) {
-        if (msg.getReceiver().getID() == receiver) {
-          orderedMessages.add(msg);
-        }
-      }
+  // ties are broken by the lower receiver id
+  static final MessageOrderingStrategy LOW_ENABLED_MESSAGE_COUNT = new ReceiverOrdering() {
+    protected int compare(int b1, int b2) {
+      int c = getMessageCount(b1) - getMessageCount(b2);
+      return (c != 0) ? c : getReceiverId(b1) - getReceiverId(b2);
     }
-    return orderedMessages;
-  }
-
-  /***********************************************************/
-  private static List<IMessage> heuristicHighActorSendAverage(List<IMessage> messages) {
-    Map<Integer, Double> uniqueReceivers = new HashMap<Integer, Double>();
+  };
 
-    for (int i = 0; i < messages.size(); i++) {
-      int receiver = messages.get(i).getReceiver().getID();
-      if (!uniqueReceivers.containsKey(receiver)) {
-        uniqueReceivers.put(receiver, Util.getSendAverage(receiver));
-      }
+  static final MessageOrderingStrategy HIGH_ENABLED_MESSAGE_COUNT = new ReceiverOrdering() {
+    protected int compare(int b1, int b2) {
+      int c = getMessageCount(b2) - getMessageCount(b1);
+      return (c != 0) ? c : getReceiverId(b1) - getReceiverId(b2);
     }
+  };
 
-    List<Integer> mapKeys = new Vector<Integer>(uniqueReceivers.keySet());
-    List<Double> mapValues = new Vector<Double>(uniqueReceivers.values());
-
-    // sort the values: highest value (actor send average) first
-    List<Double> sortedValues = new Vector<Double>(mapValues);
-    Collections.sort(sortedValues);
-    Collections.reverse(sortedValues);
+  // highest actor send average first, ties are broken by the lower receiver id
+  static final MessageOrderingStrategy HIGH_ACTOR_SEND_AVERAGE = new ReceiverOrdering() {
+    @FilterField
+    private double[] averages = new double[8];
 
-    // create an array of keys (receiver ids) sorted according
-    // to their corresponding values (actor send averages)
-    int size = sortedValues.size();
-    Integer[] orderedActors = new Integer[size];
-    for (int i = 0; i < size; i++) {
-      int index = mapValues.indexOf(sortedValues.get(i));
-      orderedActors[i] = mapKeys.get(index);
-      mapValues.set(index, -1.0);
+    protected void orderReceivers(int[] order, int size) {
+      if (averages.length < size)
+        averages = new double[Math.max(size, averages.length * 2)];
+      for (int b = 0; b < size; b++)
+        averages[b] = Util.getSendAverage(getReceiverId(b));
+      sort(order, size);
     }
 
-    // create
-    List<IMessage> orderedMessages = new ArrayList<IMessage>();
-    for (int i = 0; i < orderedActors.length; i++) {
-      int receiver = orderedActors[i];
-      for (IMessage msg : messages) {
-        if (msg.getReceiver().getID() == receiver) {
-          orderedMessages.add(msg);
-        }
-      }
+    protected int compare(int b1, int b2) {
+      int c = Double.compare(averages[b2], averages[b1]);
+      return (c != 0) ? c : getReceiverId(b1) - getReceiverId(b2);
     }
+  };
 
-    return orderedMessages;
-  }
-
-  /***********************************************************/
   // If (A can send to B) and (B cannot send to A), explore
   // messages to A first. Otherwise, do not reorder A and B
-  private static List<IMessage> heuristicSendGraphReachability(List<IMessage> messages) {
-
-    List<IMessage> orderedMessages = new ArrayList<IMessage>(messages);
-    Comparator<IMessage> compHigher = new Comparator<IMessage>() {
-      @Override
-      public int compare(IMessage message1, IMessage message2) {
-        int id1 = message1.getReceiver().getID();
-        int id2 = message2.getReceiver().getID();
-        boolean from1to2 = Util.hasPathto(id1, id2);
-        boolean from2to1 = Util.hasPathto(id2, id1);
-
-        // return a negative integer, zero, or a positive
-        // integer as the first argument is less than,
-        // equal to, or greater than the second.
-        if (from1to2 == from2to1) {
-          return id1 - id2; // the tie breaker is lowest
-        } else if (from1to2) {
-          return -1;
-        } else {
-          return 1;
-        }
+  static final MessageOrderingStrategy SEND_GRAPH_REACHABILITY = new ReceiverOrdering() {
+    protected int compare(int b1, int b2) {
+      int id1 = getReceiverId(b1);
+      int id2 = getReceiverId(b2);
+      boolean from1to2 = Util.hasPathto(id1, id2);
+      boolean from2to1 = Util.hasPathto(id2, id1);
+
+      if (from1to2 == from2to1) {
+        return id1 - id2; // the tie breaker is lowest
+      } else if (from1to2) {
+        return -1;
+      } else {
+        return 1;
       }
-    };
-    Collections.sort(orderedMessages, compHigher);
-    return orderedMessages;
-  }
+    }
+  };
 
-  /***********************************************************/
-  private static void randomizeIntegerArray(Integer[] array) {
-    int seed = Util.getIntegerProperty("basset.randomseed");
-    Random generator = new Random(seed);
+  // indexed by the HEURISTIC_* constants
+  private static final MessageOrderingStrategy[] HEURISTICS = new MessageOrderingStrategy[HEURISTIC_SEND_GRAPH_REACHABILITY + 1];
 
-    for (int i = 0; i < array.length * 2; i++) {
-      int index1 = generator.nextInt(array.length);
-      int index2 = generator.nextInt(array.length);
-      Integer temp = array[index1];
-      array[index1] = array[index2];
-      array[index2] = temp;
-    }
+  static {
+    HEURISTICS[HEURISTIC_NONE] = QUEUE;
+    HEURISTICS[HEURISTIC_LOW_RECEIVER_ID] = LOW_RECEIVER_ID;
+    HEURISTICS[HEURISTIC_HIGH_RECEIVER_ID] = HIGH_RECEIVER_ID;
+    HEURISTICS[HEURISTIC_QUEUE] = QUEUE;
+    HEURISTICS[HEURISTIC_STACK] = STACK;
+    HEURISTICS[HEURISTIC_RANDOM] = RANDOM;
+    HEURISTICS[HEURISTIC_LOW_RECEIVER_ENABLED_MESSAGE_COUNT] = LOW_ENABLED_MESSAGE_COUNT;
+    HEURISTICS[HEURISTIC_HIGH_RECEIVER_ENABLED_MESSAGE_COUNT] = HIGH_ENABLED_MESSAGE_COUNT;
+    HEURISTICS[HEURISTIC_HIGH_ACTOR_SEND_AVERAGE] = HIGH_ACTOR_SEND_AVERAGE;
+    HEURISTICS[HEURISTIC_SEND_GRAPH_REACHABILITY] = SEND_GRAPH_REACHABILITY;
   }
 
   /***********************************************************/
@@ -0,0 +1,44 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.core;
+
+import java.util.List;
+
+import gov.nasa.jpf.actor.icore.IMessage;
+
+/**
+ * Orders the enabled messages before they are offered to a DPOR choice
+ * generator (see basset.dpor_heuristic).
+ * 
+ * Besides the built-in heuristics, an ordering can be given by class name
+ * with +basset.dpor_ordering=<class>. The class is loaded by the program
+ * under test, i.e. it has to be on the JPF classpath, and needs a public
+ * default constructor. Most orderings only decide on the order of the
+ * receivers and are best implemented by extending ReceiverOrdering.
+ */
+public interface MessageOrderingStrategy {
+
+  /**
+   * Puts the given messages, which are in the order in which they were sent,
+   * into the order in which they should be explored. The list is reordered
+   * in place.
+   */
+  void order(List<IMessage> messages);
+
+}
@@ -37,8 +37,6 @@ import gov.nasa.jpf.actor.util.Stat;
 import gov.nasa.jpf.jvm.Verify;
 import gov.nasa.jpf.annotation.FilterField;
 
-import static gov.nasa.jpf.actor.util.Constants.*;
-
 /**
  * This is the primary controller class for Basset that manages the overall
  * exploration of actor programs
@@ -69,10 +67,14 @@ public class Platform implements IActorStateListener {
   protected Cloud cloud;
   protected ActorRegistry actors;
 
+  @FilterField
+  private final BassetSettings settings;
+
   public Platform(IItemsFactory factory) {
     this.factory = factory;
     this.cloud = new Cloud();
     this.actors = new ActorRegistry();
+    this.settings = BassetSettings.get();
     platform = this;
   }
 
@@ -120,12 +122,13 @@ public class Platform implements IActorStateListener {
       if (choice == null)
         break;
 
-      Stat.incStatMessageDeliveryCount();
+      Stat.incStatMessageDeliveryCount(choice.getReceiver().getID());
+      if (settings.isRecordingSchedule())
+        recordScheduledDelivery(choice);
       deliver(choice);
 
       // exclusively for DPOR_TRANSISTENT**
-      int dpor = Util.getIntegerProperty("basset.dpor");
-      if (dpor == DPOR_TRANSISTENT_SLEEP || dpor == DPOR_TRANSISTENT) {
+      if (settings.getDporMode().traversesStack()) {
         traverseStack(choice);
       }
 
@@ -145,7 +148,7 @@ public class Platform implements IActorStateListener {
 
     cloud.printHistoryProcessedMessage();
 
-    if (Util.getBooleanProperty("basset.tracestats"))
+    if (settings.isTracestats())
       printEndOfTraceStatistics();
 
     // for (String x : path) {
@@ -173,19 +176,8 @@ public class Platform implements IActorStateListener {
     // initialization sends in the driver) or something like that. The
     // message does not have a proper sender and should not be considered
     // for POR processing.
-    int dpor = Util.getIntegerProperty("basset.dpor");
-    if (dpor != DPOR_NONE && !isSystemMessage) {
-      if (dpor == DPOR_DCUTE || dpor == DPOR_DCUTE_FAST) {
-        pushDPORDcute(msg);
-      } else if (dpor == DPOR_PERSISTENT || dpor == DPOR_PERSISTENT_FAST
-          || dpor == DPOR_PERSISTENT_SLEEP) {
-        pushDPORPersistent(msg);
-      } else if (dpor == DPOR_TRANSISTENT || dpor == DPOR_TRANSISTENT_FAST
-          || dpor == DPOR_TRANSISTENT_SLEEP) {
-        pushDPORTransistent(msg);
-      } else {
-        throw new RuntimeException("Invalid DPOR specified: " + dpor);
-      }
+    if (!isSystemMessage) {
+      settings.getDporMode().recordSend(this, msg);
     }
 
     cloud.push(msg);
@@ -193,7 +185,9 @@ public class Platform implements IActorStateListener {
   }
 
   /**********************************************************/
-  private void pushDPORDcute(IMessage msg) {
+  void pushDPORDcute(IMessage msg) {
+    DporMode mode = settings.getDporMode();
+
     // get sender thread
     IActorThread sender = getActorThread(msg.getSender());
 
@@ -201,11 +195,10 @@ public class Platform implements IActorStateListener {
     int senderId = sender.getActorName().getID();
     int receiverId = msg.getReceiver().getID();
     VectorClock senderClock = sender.getVectorClock();
-    senderClock.setClock(senderId, senderClock.getClock(senderId) + 1);
+    senderClock.tick(senderId);
 
     // set clock for the outgoing message
-    VectorClock messageClock = new VectorClock(senderClock.getVector());
-    msg.setVectorClock(messageClock);
+    msg.setVectorClock(senderClock);
     // System.out.println("== send " + msg.getID() + " from " + sender +
     // " to " + receiverId + " thread clock: " + senderClock);
 
@@ -214,24 +207,26 @@ public class Platform implements IActorStateListener {
     // previously executed receive event by that same actor (receiverId),
     // then set the needs_delay flag for the choice generator
     // corresponding to that receive event.
-    for (int i = 0; i < receiveEventList.size(); i++) {
-      ReceiveEvent event1 = receiveEventList.get(i);
-      if (event1.receiverId == receiverId) {
-        if (!event1.receiptClock.isLT(senderClock)
-            && !senderClock.isLT(event1.receiptClock)) {
-
-          Util.setNeedsDelayFlag(event1.currentCG);
-          if (Util.getIntegerProperty("basset.dpor") == DPOR_DCUTE_FAST) {
-            break; // The Rajesh Enhancement
-          }
-          // System.out.println("DELAY: " + event.currentCG);
-        }
+    int n = receiveEvents.count(receiverId);
+    int first = receiveEvents.firstNotBefore(receiverId, senderClock);
+    for (int k = first; k < n; k++) {
+      ReceiveEvent event1 = receiveEvents.get(receiveEvents.position(
+          receiverId, k));
+
+      Util.setNeedsDelayFlag(event1.currentCG);
+      if (mode.isFast()) {
+        break; // The Rajesh Enhancement
       }
+      // System.out.println("DELAY: " + event.currentCG);
     }
   }
 
   /**********************************************************/
-  private void pushDPORPersistent(IMessage msg) {
+  // used by both the persistent and the transistent modes, which only
+  // differ in the set that dependent receive events are added to
+  void pushDPORPersistent(IMessage msg) {
+    DporMode mode = settings.getDporMode();
+
     // get sender thread
     IActorThread sender = getActorThread(msg.getSender());
 
@@ -239,11 +234,10 @@ public class Platform implements IActorStateListener {
     int senderId = sender.getActorName().getID();
     int receiverId = msg.getReceiver().getID();
     VectorClock senderClock = sender.getVectorClock();
-    senderClock.setClock(senderId, senderClock.getClock(senderId) + 1);
+    senderClock.tick(senderId);
 
     // set clock for the outgoing message
-    VectorClock messageClock = new VectorClock(senderClock.getVector());
-    msg.setVectorClock(messageClock);
+    msg.setVectorClock(senderClock);
     // System.out.println("== send " + msg.getID() + " from " + sender +
     // " to " + receiverId + " thread clock: " + senderClock);
 
@@ -252,104 +246,67 @@ public class Platform implements IActorStateListener {
     // previously executed receive event by that same actor (receiverId),
     // then update the persistent set for the choice generator
     // corresponding to that previously executed receive event.
-    for (int i = 0; i < receiveEventList.size(); i++) {
-      ReceiveEvent event1 = receiveEventList.get(i);
-      if (event1.receiverId == receiverId) {
-        if (!event1.receiptClock.isLT(senderClock)
-            && !senderClock.isLT(event1.receiptClock)) {
-
-          // continue searching through the previously executed
-          // receive events
-          // for the next receive event that is a causal predecessor
-          // to the current send event.
-          for (int j = i + 1; j < receiveEventList.size(); j++) {
-            ReceiveEvent event2 = receiveEventList.get(j);
-            if (event2.receiptClock.isLT(senderClock)) {
-              // when this 2nd event is found, add the messageId
-              // and receiverId of this event to the persistent
-              // set of the 1st event's choice generator
-              if (Util.getIntegerProperty("basset.dpor") == DPOR_PERSISTENT_SLEEP)
-                Util.addToPersistentSet_Sleep(event1.currentCG,
-                    event2.messageId, event2.receiverId);
-              else
-                Util.addToPersistentSet(event1.currentCG, event2.messageId,
-                    event2.receiverId);
-              break;
-            }
-          }
+    // (the send has just been ticked, so none of these receive events can
+    // come after it and concurrent means not happening before it)
+    int n = receiveEvents.count(receiverId);
+    int first = receiveEvents.firstNotBefore(receiverId, senderClock);
+    for (int k = first; k < n; k++) {
+      int i = receiveEvents.position(receiverId, k);
+      ReceiveEvent event1 = receiveEvents.get(i);
+
+      // continue searching through the previously executed
+      // receive events
+      // for the next receive event that is a causal predecessor
+      // to the current send event.
+      int j = receiveEvents.nextPredecessor(i, senderClock);
+      if (j >= 0) {
+        ReceiveEvent event2 = receiveEvents.get(j);
+        // when this 2nd event is found, add the messageId
+        // and receiverId of this event to the persistent
+        // set of the 1st event's choice generator
+        mode.addToBacktrackSet(event1.currentCG, event2.messageId,
+            event2.receiverId);
+      }
 
-          if (Util.getIntegerProperty("basset.dpor") == DPOR_PERSISTENT_FAST
-              || Util.getIntegerProperty("basset.dpor") == DPOR_TRANSISTENT_FAST) {
-            break; // The Rajesh Enhancement
-          }
-          // System.out.println("ADD TO PERSISTENT: " +
-          // event1.currentCG);
-        }
+      if (mode.isFast()) {
+        break; // The Rajesh Enhancement
       }
+      // System.out.println("ADD TO PERSISTENT: " +
+      // event1.currentCG);
     }
   }
 
   /**********************************************************/
-  private void pushDPORTransistent(IMessage msg) {
-    // get sender thread
+  // optimal dpor detects races on delivery, a send only updates the clocks
+  void pushDPOROptimal(IMessage msg) {
     IActorThread sender = getActorThread(msg.getSender());
 
-    // update sender thread clock to reflect the send event
     int senderId = sender.getActorName().getID();
-    int receiverId = msg.getReceiver().getID();
     VectorClock senderClock = sender.getVectorClock();
-    senderClock.setClock(senderId, senderClock.getClock(senderId) + 1);
-
-    // set clock for the outgoing message
-    VectorClock messageClock = new VectorClock(senderClock.getVector());
-    msg.setVectorClock(messageClock);
-    // System.out.println("== send " + msg.getID() + " from " + sender +
-    // " to " + receiverId + " thread clock: " + senderClock);
-
-    // if the current send event (a send to actor receiverId)
-    // is independent (i.e. not causally related???) from a
-    // previously executed receive event by that same actor (receiverId),
-    // then update the persistent set for the choice generator
-    // corresponding to that previously executed receive event.
-    for (int i = 0; i < receiveEventList.size(); i++) {
-      ReceiveEvent event1 = receiveEventList.get(i);
-      if (event1.receiverId == receiverId) {
-        if (!event1.receiptClock.isLT(senderClock)
-            && !senderClock.isLT(event1.receiptClock)) {
-
-          // continue searching through the previously executed
-          // receive events
-          // for the next receive event that is a causal predecessor
-          // to the current send event.
-          for (int j = i + 1; j < receiveEventList.size(); j++) {
-            ReceiveEvent event2 = receiveEventList.get(j);
-            if (event2.receiptClock.isLT(senderClock)) {
-              // when this 2nd event is found, add the messageId
-              // and receiverId of this event to the persistent
-              // set of the 1st event's choice generator
-              if (Util.getIntegerProperty("basset.dpor") == DPOR_TRANSISTENT)
-                Util.addToTransistentSet(event1.currentCG, event2.messageId,
-                    event2.receiverId);
-              else if (Util.getIntegerProperty("basset.dpor") == DPOR_TRANSISTENT_SLEEP)
-                Util.addToTransistentSet_Sleep(event1.currentCG,
-                    event2.messageId, event2.receiverId);
-              break;
-            }
-          }
+    senderClock.tick(senderId);
+    msg.setVectorClock(senderClock);
+  }
 
-          if (Util.getIntegerProperty("basset.dpor") == DPOR_PERSISTENT_FAST
-              || Util.getIntegerProperty("basset.dpor") == DPOR_TRANSISTENT_FAST) {
-            break; // The Rajesh Enhancement
-          }
-          // System.out.println("ADD TO PERSISTENT: " +
-          // event1.currentCG);
-        }
-      }
-    }
+  /**********************************************************/
+  // identifies a message on every path that sends it: by the key of its
+  // sender and the sender's own clock entry at the send. Neither the sender
+  // id nor the message id can be used, both depend on the order in which
+  // actors were created and messages sent on the current path. System
+  // messages don't have a clock, they are sent by the driver before any
+  // actor runs, so their ids don't depend on the interleaving.
+  static long getMessageKey(IMessage msg) {
+    VectorClock clock = msg.getVectorClock();
+    if (clock.isEmpty())
+      return msg.getID();
+    IActorName sender = msg.getSender();
+    return (sender.getKey() + clock.getClock(sender.getID()))
+        * 0x9e3779b97f4a7c15L;
   }
 
   /**********************************************************/
   private void traverseStack(IMessage msg) {
+    DporMode mode = settings.getDporMode();
+
     // get sender thread
     IActorThread sender = getActorThread(msg.getSender());
 
@@ -359,45 +316,33 @@ public class Platform implements IActorStateListener {
     // get clock for the outgoing message
     VectorClock messageClock = msg.getVectorClock();
 
+    // a message without a clock (a system message) is ordered with respect
+    // to every receive event
+    if (messageClock.isEmpty()) {
+      return;
+    }
+
     // if the current send event (a send to actor receiverId)
     // is independent (i.e. not causally related???) from a
     // previously executed receive event by that same actor (receiverId),
     // then update the persistent set for the choice generator
     // corresponding to that previously executed receive event.
-    for (int i = 0; i < receiveEventList.size(); i++) {
-      ReceiveEvent event1 = receiveEventList.get(i);
-      if (event1.receiverId == receiverId) {
-        if (!event1.receiptClock.isLT(messageClock)) {
-
-          int dpor = Util.getIntegerProperty("basset.dpor");
-          boolean predFound = false;
-          // continue searching through the previously executed
-          // receive events
-          // for the next receive event that is a causal predecessor
-          // to the current send event.
-          for (int j = i + 1; j < receiveEventList.size(); j++) {
-            ReceiveEvent event2 = receiveEventList.get(j);
-            if (event2.receiptClock.isLT(messageClock)) {
-              predFound = true;
-              if (dpor == DPOR_TRANSISTENT_SLEEP)
-                Util.addToTransistentSet_Sleep(event1.currentCG,
-                    event2.messageId, receiverId);
-              else if (dpor == DPOR_TRANSISTENT)
-                Util.addToTransistentSet(event1.currentCG, event2.messageId,
-                    receiverId);
-              break;
-            }
-          }
-
-          if (!predFound) {
-            if (dpor == DPOR_TRANSISTENT_SLEEP)
-              Util.addToTransistentSet_Sleep(event1.currentCG, msg.getID(),
-                  receiverId);
-            else if (dpor == DPOR_TRANSISTENT)
-              Util.addToTransistentSet(event1.currentCG, msg.getID(),
-                  receiverId);
-          }
-        }
+    int n = receiveEvents.count(receiverId);
+    int first = receiveEvents.firstNotBefore(receiverId, messageClock);
+    for (int k = first; k < n; k++) {
+      int i = receiveEvents.position(receiverId, k);
+      ReceiveEvent event1 = receiveEvents.get(i);
+
+      // continue searching through the previously executed
+      // receive events
+      // for the next receive event that is a causal predecessor
+      // to the current send event.
+      int j = receiveEvents.nextPredecessor(i, messageClock);
+      if (j >= 0) {
+        mode.addToBacktrackSet(event1.currentCG, receiveEvents.get(j).messageId,
+            receiverId);
+      } else {
+        mode.addToBacktrackSet(event1.currentCG, msg.getID(), receiverId);
       }
     }
   }
@@ -421,6 +366,13 @@ public class Platform implements IActorStateListener {
     return cloud.countPendingMessages(getActor(actor));
   }
 
+  /***********************************************************/
+  private void recordScheduledDelivery(IMessage msg) {
+    IActorName sender = msg.getSender();
+    Util.recordScheduledDelivery(msg.getID(), msg.getReceiver().getName(),
+        (sender == null) ? "-" : sender.getName(), msg.getLabel());
+  }
+
   /***********************************************************/
   private void checkForDeadlock() {
     Environment env = null;
@@ -435,7 +387,7 @@ public class Platform implements IActorStateListener {
       Class<?> sklass = klass.getSuperclass();
  
       // if (factory instanceof ScalaItemsFactory && sklass.equals(Object.class)) {
-      if (Util.getProperty("basset.language").equals("scala") && sklass.equals(Object.class)) {
+      if ("scala".equals(settings.getLanguage()) && sklass.equals(Object.class)) {
         // if super class is object it could be because of how Scala
         // compiles "object", i.e., it always append a "$" at the
         // end of the class (object) name.
@@ -496,7 +448,10 @@ public class Platform implements IActorStateListener {
       return;
 
     Stat.incStatDeadlocks();
-    if (Util.getBooleanProperty("basset.tracestats")) {
+    if (cloud.isSampled())
+      Logger.severe("deadlock in the sampled trace with seed "
+          + cloud.getTraceSeed());
+    if (settings.isTracestats()) {
       StringBuffer buf = new StringBuffer("DEADLOCK DETECTED!!\n");
       buf.append("Actors:\n");
       for (IActor actor : deadlocked)
@@ -514,7 +469,7 @@ public class Platform implements IActorStateListener {
     // potential deadlock
     if (cloud.hasPendingMessages()) {
       Stat.incStatMessageDeliveryFailCount();
-      if (Util.getBooleanProperty("basset.tracestats")) {
+      if (settings.isTracestats()) {
         List<IActor> deadlocked = actors.getWaitingOnReplyActors();
         List<IActor> idle = actors.getWaitingActors();
 
@@ -628,7 +583,7 @@ public class Platform implements IActorStateListener {
   }
 
   /***********************************************************/
-  ArrayList<ReceiveEvent> receiveEventList = new ArrayList<ReceiveEvent>();
+  ReceiveEventIndex receiveEvents = new ReceiveEventIndex();
 
   protected void deliver(IMessage msg) {
     // get receiver thread
@@ -641,28 +596,25 @@ public class Platform implements IActorStateListener {
     // path.add(record);
 
     // if POR is active
-    int dpor = Util.getIntegerProperty("basset.dpor");
-    if (dpor != DPOR_NONE) {
+    if (settings.getDporMode().isEnabled()) {
       // if (dpor == DPOR_DCUTE || dpor == DPOR_DCUTE_FAST
       // || dpor == DPOR_PERSISTENT || dpor == DPOR_PERSISTENT_FAST
       // || dpor == DPOR_NEW_PERSISTENT || dpor == DPOR_NEW_PERSISTENT_FAST) {
 
       // process clock
-      VectorClock currThreadClock = receiver.getVectorClock();
-      VectorClock messageClock = msg.getVectorClock();
-      VectorClock newThreadClock = currThreadClock.getMax(messageClock);
+      VectorClock threadClock = receiver.getVectorClock();
+      msg.getVectorClock().mergeInto(threadClock);
       int receiverId = receiver.getActorName().getID();
-      newThreadClock.setClock(receiverId,
-          newThreadClock.getClock(receiverId) + 1);
-      receiver.setVectorClock(newThreadClock);
+      threadClock.tick(receiverId);
 
       // dpor -- save save the event clock and current choice generator
-      VectorClock receiptClock = new VectorClock(newThreadClock.getVector());
+      VectorClock receiptClock = threadClock.snapshot();
       // System.out.println("== receive " + msg.getID() + " at " +
       // receiver + " thread clock: " + newThreadClock);
       int currentCG = Util.getCurrentCG();
-      receiveEventList.add(new ReceiveEvent(receiptClock, currentCG, msg
+      receiveEvents.add(new ReceiveEvent(receiptClock, currentCG, msg
           .getID(), receiverId));
+      settings.getDporMode().recordDelivery(msg, receiptClock);
     }
 
     // deliver the message and yield
@@ -698,6 +650,7 @@ public class Platform implements IActorStateListener {
     Stat.incStatActorCreateCount();
     actors.register(athread);
     addListener(actor);
+    cloud.register(actor);
     actor.addStateListener(this);
   }
 
@@ -739,32 +692,37 @@ public class Platform implements IActorStateListener {
 
   public void notifyActorSuspended(IActor actor) {
     unstarted = true;
+    cloud.setReceptive(actor, false);
     // Fire actions for actor ready
   }
 
   /***********************************************************/
   public void notifyActorActive(IActor actor) {
+    cloud.setReceptive(actor, false);
     // Fire actions for actor active
   }
 
   /***********************************************************/
   public void notifyActorWaiting(IActor actor) {
+    cloud.setReceptive(actor, true);
     // Fire actions for actor waiting
   }
 
   /***********************************************************/
   public void notifyActorWaitingOnReply(IActor actor) {
+    cloud.setReceptive(actor, true);
     // Fire actions for actor waiting
   }
 
   /***********************************************************/
   public void notifyActorTerminated(IActor actor) {
-
+    cloud.setReceptive(actor, false);
   }
 
   /***********************************************************/
   public void notifyActorDestroyed(IActor actor) {
     removeListener(actor);
+    cloud.setReceptive(actor, false);
     // TODO: This is ugly
     actors.unregister(actor.getAttachedActorThread());
   }
@@ -0,0 +1,167 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.core;
+
+import gov.nasa.jpf.actor.core.Platform.ReceiveEvent;
+
+/**
+ * The receive events of the current path, in the order in which they were
+ * executed, together with a per receiver index of their positions.
+ * 
+ * The DPOR processing of a send only has to look at the receive events of the
+ * send's receiver that are concurrent with it, and for each of them at the
+ * first later receive event that is a causal predecessor of the send. Both
+ * questions can be answered from the receiver's own component of the receipt
+ * clocks: a receive event of actor p happens before a clock c if and only if
+ * its receipt clock does not exceed c in entry p. Since an actor's own clock
+ * entry grows with each of its events, the events of one receiver that happen
+ * before c form a prefix of that receiver's list, and both lookups become
+ * binary searches instead of scans over the whole path.
+ * 
+ * The index lives on the JPF heap like the rest of the platform, so it is
+ * restored along with the path when the search backtracks.
+ */
+class ReceiveEventIndex {
+
+  private ReceiveEvent[] events = new ReceiveEvent[16];
+  private int size;
+
+  // for each receiver id: the path positions of its receive events and the
+  // receiver's own clock entry at each of them, both in ascending order
+  private int[][] positions = new int[0][];
+  private int[][] ownClocks = new int[0][];
+  private int[] counts = new int[0];
+
+  /***********************************************************/
+  void add(ReceiveEvent event) {
+    if (size == events.length) {
+      ReceiveEvent[] e = new ReceiveEvent[size * 2];
+      System.arraycopy(events, 0, e, 0, size);
+      events = e;
+    }
+
+    int r = event.receiverId;
+    if (r >= counts.length) {
+      grow(r + 1);
+    }
+    int n = counts[r];
+    if (positions[r] == null) {
+      positions[r] = new int[4];
+      ownClocks[r] = new int[4];
+    } else if (n == positions[r].length) {
+      positions[r] = copyOf(positions[r], n * 2);
+      ownClocks[r] = copyOf(ownClocks[r], n * 2);
+    }
+    positions[r][n] = size;
+    ownClocks[r][n] = event.receiptClock.getClock(r);
+    counts[r] = n + 1;
+
+    events[size++] = event;
+  }
+
+  /***********************************************************/
+  int size() {
+    return size;
+  }
+
+  ReceiveEvent get(int position) {
+    return events[position];
+  }
+
+  // number of receive events executed by the given receiver
+  int count(int receiverId) {
+    return receiverId < counts.length ? counts[receiverId] : 0;
+  }
+
+  // path position of the k-th receive event of the given receiver
+  int position(int receiverId, int k) {
+    return positions[receiverId][k];
+  }
+
+  /***********************************************************/
+  // returns the index k of the first receive event of the given receiver that
+  // does not happen before the clock; all of the receiver's events from k on
+  // are concurrent with it, or count(receiverId) if there are none
+  int firstNotBefore(int receiverId, VectorClock clock) {
+    int n = count(receiverId);
+    if (n == 0) {
+      return 0;
+    }
+    return upperBound(ownClocks[receiverId], n, clock.getClock(receiverId));
+  }
+
+  /***********************************************************/
+  // returns the position of the first receive event after the given position
+  // that happens before the clock, or -1 if there is none
+  int nextPredecessor(int after, VectorClock clock) {
+    int found = -1;
+    for (int r = 0; r < counts.length; r++) {
+      int n = counts[r];
+      if (n == 0) {
+        continue;
+      }
+      // events [0, limit) of r happen before the clock
+      int limit = upperBound(ownClocks[r], n, clock.getClock(r));
+      if (limit == 0) {
+        continue;
+      }
+      int k = upperBound(positions[r], limit, after);
+      if (k < limit) {
+        int pos = positions[r][k];
+        if (found < 0 || pos < found) {
+          found = pos;
+        }
+      }
+    }
+    return found;
+  }
+
+  /***********************************************************/
+  // index of the first of the n ascending values that is greater than key
+  private static int upperBound(int[] values, int n, int key) {
+    int lo = 0;
+    int hi = n;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (values[mid] <= key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private void grow(int minLength) {
+    int len = Math.max(minLength, counts.length * 2);
+    int[][] p = new int[len][];
+    int[][] c = new int[len][];
+    System.arraycopy(positions, 0, p, 0, counts.length);
+    System.arraycopy(ownClocks, 0, c, 0, counts.length);
+    positions = p;
+    ownClocks = c;
+    counts = copyOf(counts, len);
+  }
+
+  private static int[] copyOf(int[] a, int len) {
+    int[] b = new int[len];
+    System.arraycopy(a, 0, b, 0, Math.min(a.length, len));
+    return b;
+  }
+}
@@ -0,0 +1,184 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.core;
+
+import java.util.List;
+
+import gov.nasa.jpf.actor.icore.IMessage;
+import gov.nasa.jpf.annotation.FilterField;
+
+/**
+ * Base class for orderings that keep the messages of each receiver together,
+ * in the order in which they were sent, and only decide on the order of the
+ * receivers.
+ * 
+ * order() buckets the messages by receiver in a single pass, asks
+ * orderReceivers() for the order of the buckets and writes the messages back
+ * into the list. The buckets are kept in int arrays that are reused from
+ * call to call, so nothing is allocated once they are large enough. The
+ * default orderReceivers() is a stable sort by compare(), which subclasses
+ * override to implement a heuristic.
+ */
+public abstract class ReceiverOrdering implements MessageOrderingStrategy {
+
+  // receiver id -> bucket + 1, 0 for receivers without a message
+  @FilterField
+  private int[] bucketOf = new int[16];
+
+  // per bucket, in the order in which the receivers first appear
+  @FilterField
+  private int[] receivers = new int[8];
+  @FilterField
+  private int[] counts = new int[8];
+  @FilterField
+  private int[] heads = new int[8];
+  @FilterField
+  private int[] tails = new int[8];
+  @FilterField
+  private int[] order = new int[8];
+  @FilterField
+  private int[] tmp = new int[8];
+
+  // per position in the message list
+  @FilterField
+  private int[] next = new int[8];
+  @FilterField
+  private IMessage[] copy = new IMessage[8];
+
+  /***********************************************************/
+  public final void order(List<IMessage> messages) {
+    int n = messages.size();
+    if (n < 2)
+      return;
+    if (n > copy.length)
+      grow(Math.max(n, copy.length * 2));
+
+    int size = 0;
+    for (int i = 0; i < n; i++) {
+      IMessage msg = messages.get(i);
+      int id = msg.getReceiver().getID();
+      if (id >= bucketOf.length) {
+        int[] a = new int[Math.max(id + 1, bucketOf.length * 2)];
+        System.arraycopy(bucketOf, 0, a, 0, bucketOf.length);
+        bucketOf = a;
+      }
+
+      int b = bucketOf[id] - 1;
+      if (b < 0) {
+        b = size++;
+        bucketOf[id] = size;
+        receivers[b] = id;
+        counts[b] = 0;
+        heads[b] = i;
+      } else {
+        next[tails[b]] = i;
+      }
+      tails[b] = i;
+      counts[b]++;
+      next[i] = -1;
+      copy[i] = msg;
+    }
+
+    for (int b = 0; b < size; b++)
+      order[b] = b;
+    if (size > 1)
+      orderReceivers(order, size);
+
+    int k = 0;
+    for (int j = 0; j < size; j++) {
+      int b = order[j];
+      for (int i = heads[b]; i >= 0; i = next[i])
+        messages.set(k++, copy[i]);
+      bucketOf[receivers[b]] = 0;
+    }
+
+    // don't keep the messages alive
+    for (int i = 0; i < n; i++)
+      copy[i] = null;
+  }
+
+  private void grow(int capacity) {
+    receivers = new int[capacity];
+    counts = new int[capacity];
+    heads = new int[capacity];
+    tails = new int[capacity];
+    order = new int[capacity];
+    tmp = new int[capacity];
+    next = new int[capacity];
+    copy = new IMessage[capacity];
+  }
+
+  /***********************************************************/
+  // Puts the buckets order[0..size-1], which are initially in the order in
+  // which their receivers first appear, into the order in which they should
+  // be explored.
+  protected void orderReceivers(int[] order, int size) {
+    sort(order, size);
+  }
+
+  // <0 if the messages to the receiver of bucket b1 should come first, >0 if
+  // those to the receiver of b2 should, 0 to keep the order of appearance
+  protected int compare(int b1, int b2) {
+    return 0;
+  }
+
+  /***********************************************************/
+  protected final int getReceiverId(int bucket) {
+    return receivers[bucket];
+  }
+
+  protected final int getMessageCount(int bucket) {
+    return counts[bucket];
+  }
+
+  // positions of the first and the last message to the receiver
+  protected final int getFirstPosition(int bucket) {
+    return heads[bucket];
+  }
+
+  protected final int getLastPosition(int bucket) {
+    return tails[bucket];
+  }
+
+  /***********************************************************/
+  // stable bottom-up merge sort of order[0..size-1] by compare()
+  protected final void sort(int[] order, int size) {
+    int[] src = order;
+    int[] dst = tmp;
+    for (int width = 1; width < size; width <<= 1) {
+      for (int lo = 0; lo < size; lo += width << 1) {
+        int mid = Math.min(lo + width, size);
+        int hi = Math.min(lo + (width << 1), size);
+        int i = lo, j = mid, k = lo;
+        while (i < mid && j < hi)
+          dst[k++] = (compare(src[j], src[i]) < 0) ? src[j++] : src[i++];
+        while (i < mid)
+          dst[k++] = src[i++];
+        while (j < hi)
+          dst[k++] = src[j++];
+      }
+      int[] t = src;
+      src = dst;
+      dst = t;
+    }
+    if (src != order)
+      System.arraycopy(src, 0, order, 0, size);
+  }
+
+}
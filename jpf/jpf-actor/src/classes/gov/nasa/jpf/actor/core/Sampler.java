@@ -0,0 +1,155 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.core;
+
+import gov.nasa.jpf.actor.icore.IMessage;
+import gov.nasa.jpf.jvm.Verify;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Chooses the messages of one randomly sampled trace, for the basset.dpor
+ * modes that sample the schedules instead of exploring all of them.
+ * 
+ * PCT (probabilistic concurrency testing) gives every receiver actor a
+ * random priority when it first shows up, and always delivers the earliest
+ * enabled message of the actor with the highest priority. At d-1 randomly
+ * chosen steps the priority of the actor that was just scheduled drops
+ * below all initial priorities, d is basset.pct_depth.
+ * 
+ * The delay bounded mode delivers the messages in the order in which they
+ * were sent, except at basset.delay_bound randomly chosen steps, where the
+ * next enabled message is delivered instead (a step that was chosen twice
+ * skips two messages, and so on).
+ * 
+ * Steps are counted from 1 and the random steps are drawn from
+ * [1, basset.sample_steps], which should be an estimate of the number of
+ * deliveries in a trace.
+ * 
+ * Which of the basset.samples traces is explored is the only choice, sample
+ * i uses the seed basset.randomseed + i. All other randomness comes from a
+ * generator on the JPF heap that is seeded with it, so a trace can be
+ * replayed with +basset.randomseed=<seed> +basset.samples=1.
+ */
+final class Sampler {
+
+  private final boolean pct;
+  private final int seed;
+  private long state;
+
+  private int step = 0;
+
+  // PCT: priority of each actor by id, 0 if the actor was not seen yet
+  private int[] priorities = new int[16];
+
+  // PCT: change point i lowers the priority to i+1, delay bounded: delays
+  private final int[] points;
+
+  /***********************************************************/
+  private Sampler(boolean pct, int seed, int depth, int steps) {
+    this.pct = pct;
+    this.seed = seed;
+    this.state = seed;
+    points = new int[depth];
+    for (int i = 0; i < depth; i++)
+      points[i] = 1 + nextInt(steps);
+  }
+
+  // chooses the sample of this trace, this is the trace's only choice
+  // point
+  static Sampler start(BassetSettings settings) {
+    int sample = Verify.getInt(0, settings.getSamples() - 1);
+    int seed = settings.getRandomSeed() + sample;
+    Util.setTraceSeed(seed);
+
+    if (settings.getDporMode() == DporMode.PCT)
+      return new Sampler(true, seed, settings.getPctDepth() - 1, settings
+          .getSampleSteps());
+    else
+      return new Sampler(false, seed, settings.getDelayBound(), settings
+          .getSampleSteps());
+  }
+
+  /***********************************************************/
+  // SplitMix64
+  private long next() {
+    long z = (state += 0x9E3779B97F4A7C15L);
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  private int nextInt(int bound) {
+    return (int) ((next() >>> 1) % bound);
+  }
+
+  /***********************************************************/
+  public int getSeed() {
+    return seed;
+  }
+
+  /***********************************************************/
+  // enabled messages are in send order
+  IMessage choose(List<IMessage> enabled) {
+    step++;
+    return pct ? choosePCT(enabled) : chooseDelayed(enabled);
+  }
+
+  private IMessage choosePCT(List<IMessage> enabled) {
+    IMessage chosen = null;
+    int highest = 0;
+    for (IMessage msg : enabled) {
+      int p = getPriority(msg.getReceiver().getID());
+      // ties go to the earliest sent message
+      if (p > highest) {
+        highest = p;
+        chosen = msg;
+      }
+    }
+
+    for (int i = 0; i < points.length; i++) {
+      if (points[i] == step)
+        priorities[chosen.getReceiver().getID()] = i + 1;
+    }
+    return chosen;
+  }
+
+  private int getPriority(int actorId) {
+    if (actorId >= priorities.length)
+      priorities = Arrays.copyOf(priorities, Math.max(actorId + 1,
+          priorities.length * 2));
+    if (priorities[actorId] == 0) {
+      // above the d-1 priorities of the change points
+      int low = points.length + 1;
+      priorities[actorId] = low + nextInt(Integer.MAX_VALUE - low);
+    }
+    return priorities[actorId];
+  }
+
+  private IMessage chooseDelayed(List<IMessage> enabled) {
+    int delays = 0;
+    for (int i = 0; i < points.length; i++) {
+      if (points[i] == step)
+        delays++;
+    }
+    return enabled.get(delays % enabled.size());
+  }
+
+}
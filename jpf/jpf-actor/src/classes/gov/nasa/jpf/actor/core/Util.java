@@ -18,6 +18,7 @@
 //
 package gov.nasa.jpf.actor.core;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -64,10 +65,18 @@ public class Util {
 
   public static native boolean hasPathto(int sender, int receiver);
 
+  /*******************************************************
+   * Support for message dispatch (ActorFoundry), returns the
+   * index of the handler in methods, or -1
+   *******************************************************/
+  public static native int findHandler(Object target, Method[] methods,
+                                       String name, Object[] args);
+
   /*******************************************************
    * Support for thread switching
    *******************************************************/
-  public static native void startThreadInInterruptedStatus(Thread thread);
+  public static native void startThreadInInterruptedStatus(Thread thread,
+                                                           int actorId);
 
   public static native void yieldToPlatform();
 
@@ -84,6 +93,24 @@ public class Util {
 
   public static native String getProperty(String key);
 
+  /*******************************************************
+   * Support for sampling
+   *******************************************************/
+  // tells the host the seed of the sampled trace, to report it on errors
+  public static native void setTraceSeed(int seed);
+
+  /*******************************************************
+   * Support for schedules
+   *******************************************************/
+  // whether the ScheduleListener records the deliveries
+  public static native boolean isRecordingSchedule();
+
+  public static native void recordScheduledDelivery(int id, String receiver,
+                                                    String sender, String label);
+
+  // the deliveries of a schedule file
+  public static native String[] loadSchedule(String file);
+
   /*******************************************************
    * Support for DPOR
    *******************************************************/
@@ -120,6 +147,15 @@ public class Util {
                                                      int[] receivers,
                                                      boolean expandOnlyOnce);
 
+  public static native int getIntDPOROptimal(int min, int max,
+                                             long[] enabledMsgKeys,
+                                             long[] receiverKeys);
+
+  public static native void recordDelivery(long msgKey, long receiverKey,
+                                           int receiverId,
+                                           int[] receiptClock,
+                                           int[] messageClock);
+
   public static native void removeFromPersistent(int currentCG, int dealyed);
 
   public static <T> List<T> asList(T... e) {
@@ -18,107 +18,283 @@
 //
 package gov.nasa.jpf.actor.core;
 
-import java.util.ArrayList;
+import gov.nasa.jpf.annotation.FilterField;
 
 /**
  * A vector clock implementation for use by Basset's dynamic partial order
  * reduction implementations
  * 
+ * Clocks are kept in a plain int[] so that they are cheap to store on the
+ * JPF heap. Small clocks are dense, i.e. entry i is the clock of the actor
+ * with id i. Once a clock would have to grow beyond SPARSE_THRESHOLD slots
+ * while most of its entries are zero, it switches to a sparse layout of
+ * (actor id, clock) pairs sorted by id. Missing entries are zero in both
+ * layouts.
+ * 
+ * The entries can be shared between clocks. snapshot() returns a clock that
+ * uses the same array, and whichever of the two clocks is written first
+ * copies it. This way a message can carry the clock of its sender without a
+ * copy being made for every send.
+ * 
+ * A clock without any entries (e.g. the clock of a system message, which has
+ * no sender) carries no causal information and is ordered with respect to
+ * every other clock.
+ * 
  * @author Steven Lauterburg (steven.lauterburg@gmail.com)
  * 
  */
 public class VectorClock {
 
-  ArrayList<Integer> vector = new ArrayList<Integer>();
+  static final int SPARSE_THRESHOLD = 64;
+
+  private static final int[] NO_ENTRIES = new int[0];
+
+  // dense: entries[i] is the clock of actor i, for i < length
+  // sparse: entries[2k], entries[2k+1] are the k-th (actor id, clock) pair
+  // and length is twice the number of pairs
+  private int[] entries;
+  private int length;
+  private boolean sparse;
+
+  // true if entries might be referenced by another clock as well
+  @FilterField
+  private boolean shared;
 
   public VectorClock() {
-    vector = new ArrayList<Integer>();
+    entries = NO_ENTRIES;
+    shared = true;
   }
 
-  public VectorClock(int size) {
-    vector = new ArrayList<Integer>();
-    for (int i = 0; i < size; i++)
-      vector.add(0);
+  public VectorClock(int capacity) {
+    entries = new int[capacity];
   }
 
-  public VectorClock(ArrayList<Integer> v) {
-    this.vector = (ArrayList<Integer>) v.clone();
+  private VectorClock(int[] entries, int length, boolean sparse) {
+    this.entries = entries;
+    this.length = length;
+    this.sparse = sparse;
+    this.shared = true;
   }
 
+  /***********************************************************/
+  public boolean isEmpty() {
+    return length == 0;
+  }
+
+  public boolean isSparse() {
+    return sparse;
+  }
+
+  /***********************************************************/
   public int getClock(int processIndex) {
-    try {
-      return vector.get(processIndex);
-    } catch (Exception ex) {
-      ex.printStackTrace();
-    }
-    return -1;
+    if (!sparse)
+      return (processIndex < length) ? entries[processIndex] : 0;
 
+    int k = findPair(processIndex);
+    return (k >= 0) ? entries[k + 1] : 0;
   }
 
-  public void setVector(ArrayList<Integer> v) {
-    this.vector = (ArrayList<Integer>) v.clone();
+  /***********************************************************/
+  public void setClock(int processIndex, int value) {
+    if (sparse) {
+      setSparse(processIndex, value);
+      return;
+    }
+
+    if (processIndex < length) {
+      if (entries[processIndex] != value) {
+        makeWritable(length);
+        entries[processIndex] = value;
+      }
+      return;
+    }
+
+    if (value == 0)
+      return;
+
+    if (processIndex >= SPARSE_THRESHOLD && processIndex >= entries.length
+        && countNonZero() * 4 < processIndex) {
+      toSparse();
+      setSparse(processIndex, value);
+      return;
+    }
+
+    makeWritable(processIndex + 1);
+    // slots between the old length and processIndex are still 0
+    entries[processIndex] = value;
+    length = processIndex + 1;
   }
 
-  public int setClock(int processIndex, int CValue) {
-    if (processIndex < vector.size()) {
-      vector.set(processIndex, CValue);
-      return processIndex;
-    } else if (processIndex == vector.size()) {
-      vector.add(CValue);
-      return processIndex;
-    } else
-      return -1;
+  /***********************************************************/
+  public void tick(int processIndex) {
+    setClock(processIndex, getClock(processIndex) + 1);
   }
 
-  public ArrayList<Integer> getVector() {
-    return this.vector;
+  /***********************************************************/
+  // Returns a copy of this clock that shares the entries with it until
+  // either one is modified
+  public VectorClock snapshot() {
+    shared = true;
+    return new VectorClock(entries, length, sparse);
   }
 
-  public boolean isGT(VectorClock newVC) {
-    ArrayList<Integer> v = newVC.vector;
-    if (v.size() == vector.size()) {
-      for (int i = 0; i < vector.size(); i++) {
-        if (vector.get(i) < v.get(i))
+  /***********************************************************/
+  // true if every entry of this clock is less than or equal to the
+  // corresponding entry of the other clock
+  public boolean happensBefore(VectorClock other) {
+    if (length == 0 || other.length == 0)
+      return true;
+
+    if (!sparse) {
+      for (int i = 0; i < length; i++) {
+        if (entries[i] > other.getClock(i))
+          return false;
+      }
+    } else {
+      for (int k = 0; k < length; k += 2) {
+        if (entries[k + 1] > other.getClock(entries[k]))
           return false;
       }
     }
     return true;
   }
 
-  public boolean isLT(VectorClock newVC) {
-    ArrayList<Integer> v = newVC.vector;
-    if (v.size() == vector.size()) {
-      for (int i = 0; i < vector.size(); i++) {
-        if (vector.get(i) > v.get(i))
-          return false;
+  /***********************************************************/
+  public boolean concurrent(VectorClock other) {
+    return !happensBefore(other) && !other.happensBefore(this);
+  }
+
+  /***********************************************************/
+  // sets each entry of the target clock to the maximum of its own and the
+  // corresponding entry of this clock
+  public void mergeInto(VectorClock target) {
+    if (!sparse) {
+      for (int i = 0; i < length; i++) {
+        if (entries[i] > target.getClock(i))
+          target.setClock(i, entries[i]);
+      }
+    } else {
+      for (int k = 0; k < length; k += 2) {
+        if (entries[k + 1] > target.getClock(entries[k]))
+          target.setClock(entries[k], entries[k + 1]);
       }
     }
-    return true;
   }
 
-  public VectorClock getMax(VectorClock newVC) {
-    ArrayList<Integer> v = newVC.vector;
+  /***********************************************************/
+  // returns the clock as a dense array, entry i being the clock of actor i
+  public int[] toArray() {
+    if (!sparse) {
+      int[] a = new int[length];
+      System.arraycopy(entries, 0, a, 0, length);
+      return a;
+    }
+
+    int[] a = new int[length == 0 ? 0 : entries[length - 2] + 1];
+    for (int k = 0; k < length; k += 2)
+      a[entries[k]] = entries[k + 1];
+    return a;
+  }
+
+  /***********************************************************/
+  // makes sure that entries is not shared and has room for minCapacity ints
+  private void makeWritable(int minCapacity) {
+    if (shared || minCapacity > entries.length) {
+      int newCapacity = entries.length;
+      if (minCapacity > newCapacity)
+        newCapacity = Math.max(minCapacity, newCapacity * 2);
+
+      int[] a = new int[newCapacity];
+      System.arraycopy(entries, 0, a, 0, length);
+      entries = a;
+      shared = false;
+    }
+  }
+
+  /***********************************************************/
+  private int countNonZero() {
+    int n = 0;
+    for (int i = 0; i < length; i++) {
+      if (entries[i] != 0)
+        n++;
+    }
+    return n;
+  }
+
+  /***********************************************************/
+  private void toSparse() {
+    int[] a = new int[Math.max(8, countNonZero() * 4)];
+    int k = 0;
+    for (int i = 0; i < length; i++) {
+      if (entries[i] != 0) {
+        a[k++] = i;
+        a[k++] = entries[i];
+      }
+    }
+    entries = a;
+    length = k;
+    sparse = true;
+    shared = false;
+  }
 
-    VectorClock max = new VectorClock();
-    if (v.size() == 0) {
-      max.setVector(this.vector);
-      return max;
+  /***********************************************************/
+  // binary search for the pair of an actor id. Returns the index of the
+  // pair, or -(insertion point) - 1 if there is none
+  private int findPair(int processIndex) {
+    int lo = 0;
+    int hi = (length >> 1) - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int id = entries[mid << 1];
+      if (id < processIndex)
+        lo = mid + 1;
+      else if (id > processIndex)
+        hi = mid - 1;
+      else
+        return mid << 1;
     }
+    return -(lo << 1) - 1;
+  }
 
-    if (v.size() == vector.size()) {
-      for (int i = 0; i < vector.size(); i++) {
-        if (vector.get(i) >= v.get(i))
-          max.vector.add(vector.get(i));
-        else
-          max.vector.add(v.get(i));
+  /***********************************************************/
+  private void setSparse(int processIndex, int value) {
+    int k = findPair(processIndex);
+    if (k >= 0) {
+      if (entries[k + 1] != value) {
+        makeWritable(length);
+        entries[k + 1] = value;
       }
-      return max;
-    } else
-      return null;
+      return;
+    }
+
+    if (value == 0)
+      return;
+
+    int pos = -k - 1;
+    makeWritable(length + 2);
+    System.arraycopy(entries, pos, entries, pos + 2, length - pos);
+    entries[pos] = processIndex;
+    entries[pos + 1] = value;
+    length += 2;
   }
 
+  /***********************************************************/
   public String toString() {
-    return vector.toString();
+    StringBuilder sb = new StringBuilder("[");
+    if (!sparse) {
+      for (int i = 0; i < length; i++) {
+        if (i > 0)
+          sb.append(", ");
+        sb.append(entries[i]);
+      }
+    } else {
+      for (int k = 0; k < length; k += 2) {
+        if (k > 0)
+          sb.append(", ");
+        sb.append(entries[k]).append(':').append(entries[k + 1]);
+      }
+    }
+    return sb.append(']').toString();
   }
 
 }
@@ -28,6 +28,10 @@ public interface IActorName {
 
   int getID();
 
+  // identifies the actor on every path, unlike the id, which depends on the
+  // order in which actors are created
+  long getKey();
+
   String getName();
 
 }
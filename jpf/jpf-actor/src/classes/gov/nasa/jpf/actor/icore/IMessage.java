@@ -40,4 +40,7 @@ public interface IMessage {
 
   int getID();
 
+  // identifies the kind of message in a schedule, e.g. the method
+  String getLabel();
+
 }
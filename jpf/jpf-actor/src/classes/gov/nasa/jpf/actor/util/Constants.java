@@ -37,6 +37,10 @@ public class Constants {
   public static final int DPOR_TRANSISTENT_FAST = 6;
   public static final int DPOR_PERSISTENT_SLEEP = 10;
   public static final int DPOR_TRANSISTENT_SLEEP = 11;
+  public static final int DPOR_OPTIMAL = 12; // source sets + wakeup trees
+  public static final int DPOR_PCT = 20; // random sampling, no reduction
+  public static final int DPOR_DELAY_BOUNDED = 21; // random sampling
+  public static final int DPOR_REPLAY = -1; // set by basset.schedule.replay
 
   // Constants for option basset.dpor_heuristic
   public static final int HEURISTIC_NONE = 0;
@@ -18,7 +18,7 @@
 //
 package gov.nasa.jpf.actor.util;
 
-import gov.nasa.jpf.actor.core.Util;
+import gov.nasa.jpf.actor.core.BassetSettings;
 
 import java.io.PrintStream;
 
@@ -102,21 +102,21 @@ public class Logger {
   }
 
   public static boolean isVerboseMode() {
-    return Util.getBooleanProperty("basset.debug")
-        || Util.getBooleanProperty("basset.verbose");
+    BassetSettings settings = BassetSettings.get();
+    return settings.isDebug() || settings.isVerbose();
   }
 
   public static boolean isDebugMode() {
-    return Util.getBooleanProperty("basset.debug");
+    return BassetSettings.get().isDebug();
   }
 
   public static boolean isInfoMode() {
-    return Util.getBooleanProperty("basset.info");
+    return BassetSettings.get().isInfo();
   }
 
   public static boolean isErrorMode() {
-    return Util.getBooleanProperty("basset.debug")
-        || Util.getBooleanProperty("basset.error");
+    BassetSettings settings = BassetSettings.get();
+    return settings.isDebug() || settings.isError();
   }
 
 }
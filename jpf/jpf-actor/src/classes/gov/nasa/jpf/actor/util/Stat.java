@@ -35,7 +35,7 @@ public class Stat {
 
   public static native void incStatJPFTraceCount();
 
-  public static native void incStatMessageDeliveryCount();
+  public static native void incStatMessageDeliveryCount(int receiverId);
 
   public static native void incStatMessageDeliveryFailCount();
 
@@ -45,6 +45,6 @@ public class Stat {
 
   public static native void incStatAbortedTraceCount();
 
-  public static native int getStatJPFTraceCount();
+  public static native long getStatJPFTraceCount();
 
 }
@@ -57,6 +57,10 @@ public class ActorMessage extends CoreMessage implements Serializable {
     return method;
   }
 
+  public String getLabel() {
+    return method;
+  }
+
   public final Object[] getArguments() {
     return args;
   }
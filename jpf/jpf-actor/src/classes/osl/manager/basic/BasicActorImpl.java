@@ -27,6 +27,7 @@
 package osl.manager.basic;
 
 import gov.nasa.jpf.actor.core.CoreActor;
+import gov.nasa.jpf.actor.core.Util;
 import gov.nasa.jpf.actor.util.Logger;
 import gov.nasa.jpf.annotation.FilterField;
 
@@ -35,9 +36,6 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
-import java.util.Hashtable;
-import java.util.Iterator;
-import java.util.LinkedList;
 
 import kilim.PauseReason;
 import kilim.Task;
@@ -1145,80 +1143,18 @@ public class BasicActorImpl extends ActorImpl {
 
   /*******************************************************/
   @FilterField
-  private transient Hashtable<String, LinkedList<Method>> m_htMethods;
+  private transient Method[] m_maMethods;
 
   private void createMethodTable() {
-    m_htMethods = new Hashtable<String, LinkedList<Method>>();
-
-    Method[] maMethods = attached.getClass().getMethods();
-
-    for (int i = 0; i < maMethods.length; i++) {
-
-      // ignore methods of java.lang.Object
-      if (maMethods[i].getDeclaringClass().getName().toString()
-          .equalsIgnoreCase("java.lang.Object")) {
-        continue;
-      }
-
-      // make a linked list for a method and insert into the method table
-      LinkedList<Method> llMethods;
-      if (m_htMethods.containsKey(maMethods[i].getName())) {
-        llMethods = m_htMethods.remove(maMethods[i].getName());
-      } else {
-        llMethods = new LinkedList<Method>();
-      }
-
-      llMethods.add(maMethods[i]);
-
-      m_htMethods.put(maMethods[i].getName(), llMethods);
-    }
+    m_maMethods = attached.getClass().getMethods();
   }
 
   /*******************************************************/
+  // BASSET: the matching is done by the native peer, which caches the
+  // handler per actor class, method name and argument classes
   public Method searchForMethod(String strMethod, Object[] oaArgs) {
-
-    // search for a method matched with the given message.
-    boolean bFound = false;
-    LinkedList<Method> llMethods = m_htMethods.get(strMethod);
-    Method method = null;
-
-    if ((llMethods != null) && (llMethods.size() != 0)) {
-      Iterator<Method> iterMethods = llMethods.iterator();
-      while (iterMethods.hasNext()) {
-        method = iterMethods.next();
-        Class<?>[] caParameterType = method.getParameterTypes();
-
-        if (caParameterType.length == oaArgs.length) {
-          bFound = true;
-
-          for (int i = 0; i < oaArgs.length; i++) {
-            if (caParameterType[i].isPrimitive()) {
-              if (oaArgs[i] == null) {
-                bFound = false;
-                break;
-              } else if (caParameterType[i] == Integer.TYPE
-                  && !(oaArgs[i] instanceof Integer)) {
-                bFound = false;
-                break;
-              } else if (caParameterType[i] == Long.TYPE
-                  && !(oaArgs[i] instanceof Long)) {
-                bFound = false;
-                break;
-              } // add more primitives as needed
-            } else if ((oaArgs[i] != null)
-                && (!caParameterType[i].isInstance(oaArgs[i]))) {
-              bFound = false;
-              break;
-            }
-          }
-        }
-        if (bFound) {
-          return method;
-        }
-      }
-    }
-    return null;
-
+    int index = Util.findHandler(attached, m_maMethods, strMethod, oaArgs);
+    return (index < 0) ? null : m_maMethods[index];
   }
 
   // ///////////////////////////////////////////////////////////////
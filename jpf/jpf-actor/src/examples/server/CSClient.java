@@ -59,4 +59,9 @@ public class CSClient extends Actor {
     return (v1 == v2);
   }
 
+  @message
+  public void ping() {
+    System.out.println("client pinged");
+  }
+
 }
@@ -0,0 +1,391 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import gov.nasa.jpf.jvm.ArrayFields;
+import gov.nasa.jpf.jvm.ClassInfo;
+import gov.nasa.jpf.jvm.ElementInfo;
+import gov.nasa.jpf.jvm.FieldInfo;
+import gov.nasa.jpf.jvm.Fields;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.StaticElementInfo;
+import gov.nasa.jpf.jvm.ThreadInfo;
+import gov.nasa.jpf.jvm.serialize.CFSerializer;
+import gov.nasa.jpf.util.FinalBitSet;
+import gov.nasa.jpf.util.IntVector;
+
+/**
+ * A state serializer for actor programs, to be used for stateful
+ * explorations (basset.dpor=0) with e.g.
+ * 
+ *   +vm.storage.class=gov.nasa.jpf.jvm.JenkinsStateSet
+ *   +vm.serializer.class=gov.nasa.jpf.actor.ActorStateSerializer
+ * 
+ * Instead of the whole heap, only what makes up the state of the actor
+ * system is serialized:
+ * 
+ * - the actors, in the order of their names, i.e. the stacks of the actor
+ *   threads and the actor (behavior) objects reachable from them. Of an
+ *   actor thread object itself only the attached actor is serialized, the
+ *   rest of it is runtime plumbing (dispatch caches, executors etc.).
+ * 
+ * - the stacks of the other threads and the static fields of the
+ *   application classes, without following references into the Basset
+ *   platform (Platform, Cloud, Mailbox, ActorRegistry ..).
+ * 
+ * - the mailboxes in the cloud, each one as a multiset of messages, i.e.
+ *   independent of the order in which the pending messages were sent.
+ * 
+ * Like the CFSerializer, references are serialized in the order in which
+ * they are found, which makes the state independent of allocation order.
+ */
+public class ActorStateSerializer extends CFSerializer {
+
+  static final int POLICY_UNKNOWN = 0;
+  static final int POLICY_FOLLOW = 1;
+  static final int POLICY_SKIP = 2;        // platform scaffolding
+  static final int POLICY_ACTOR_THREAD = 3;
+
+  static final String[] SKIPPED_CLASSES = { "gov.nasa.jpf.actor.core.Platform",
+      "gov.nasa.jpf.actor.core.Cloud", "gov.nasa.jpf.actor.core.Mailbox",
+      "gov.nasa.jpf.actor.core.ActorRegistry",
+      "gov.nasa.jpf.actor.core.ReceiveEventIndex",
+      "gov.nasa.jpf.actor.core.VectorClock",
+      "gov.nasa.jpf.actor.core.BassetSettings", "java.lang.ThreadGroup" };
+
+  static final String[] SYSTEM_PACKAGES = { "java.", "javax.", "sun.",
+      "gov.nasa.jpf.", "osl.", "scala." };
+
+  // indexed by class uniqueId
+  int[] policies = new int[256];
+
+  // mirrors CFSerializer.positiveSid, i.e. the sign of the serialization ids
+  // handed out in the current run
+  boolean positiveSid;
+
+  List<ThreadInfo> actorThreads = new ArrayList<ThreadInfo>();
+  List<ThreadInfo> otherThreads = new ArrayList<ThreadInfo>();
+
+  // resolved at attach, null if the Basset classes are not on the classpath
+  ClassInfo platformClass;
+  FieldInfo ownerField;
+  FieldInfo receiverIdField;
+  FieldInfo receptiveField;
+  FieldInfo sizeField;
+  FieldInfo messagesField;
+
+  // reused for each serialized message
+  IntVector message = new IntVector();
+  HashMap<Integer, Integer> local = new HashMap<Integer, Integer>();
+
+  /***********************************************************/
+  @Override
+  public void attach(JVM jvm) {
+    super.attach(jvm);
+
+    platformClass = ClassInfo
+        .tryGetResolvedClassInfo("gov.nasa.jpf.actor.core.Platform");
+    ClassInfo mailbox = ClassInfo
+        .tryGetResolvedClassInfo("gov.nasa.jpf.actor.core.Mailbox");
+    if (mailbox != null) {
+      ownerField = mailbox.getInstanceField("owner");
+      receiverIdField = mailbox.getInstanceField("receiverId");
+      receptiveField = mailbox.getInstanceField("receptive");
+      sizeField = mailbox.getInstanceField("size");
+      messagesField = mailbox.getInstanceField("messages");
+    }
+  }
+
+  /***********************************************************/
+  int getPolicy(ClassInfo ci) {
+    int cid = ci.getUniqueId();
+    if (cid >= policies.length) {
+      policies = Arrays.copyOf(policies, Math.max(cid + 1,
+          policies.length * 2));
+    }
+
+    int p = policies[cid];
+    if (p == POLICY_UNKNOWN) {
+      p = POLICY_FOLLOW;
+      if (ci.isInstanceOf("gov.nasa.jpf.actor.core.CoreActorThread")) {
+        p = POLICY_ACTOR_THREAD;
+      } else {
+        for (String name : SKIPPED_CLASSES) {
+          if (ci.isInstanceOf(name)) {
+            p = POLICY_SKIP;
+            break;
+          }
+        }
+      }
+      policies[cid] = p;
+    }
+    return p;
+  }
+
+  /***********************************************************/
+  @Override
+  protected void initReferenceQueue() {
+    super.initReferenceQueue();
+    positiveSid = !positiveSid;
+  }
+
+  // has the object got a serialization id in the current run?
+  boolean isNumbered(ElementInfo ei) {
+    int sid = ei.getSid();
+    return positiveSid ? sid > 0 : sid < 0;
+  }
+
+  @Override
+  protected void queueReference(ElementInfo ei) {
+    if (getPolicy(ei.getClassInfo()) != POLICY_SKIP)
+      super.queueReference(ei);
+  }
+
+  @Override
+  public void processElementInfo(ElementInfo ei) {
+    ClassInfo ci = ei.getClassInfo();
+    if (getPolicy(ci) == POLICY_ACTOR_THREAD) {
+      buf.add(ci.getUniqueId());
+      processReference(ei.getReferenceField("attached"));
+    } else {
+      super.processElementInfo(ei);
+    }
+  }
+
+  /***********************************************************/
+  @Override
+  protected int[] computeStoringData() {
+    buf.clear();
+    heap = ks.getHeap();
+    initReferenceQueue();
+    sortThreads();
+
+    for (ThreadInfo ti : actorThreads) {
+      serializeStackFrames(ti);
+    }
+    for (ThreadInfo ti : otherThreads) {
+      serializeStackFrames(ti);
+    }
+    serializeApplicationStatics();
+    processReferenceQueue();
+
+    serializeMailboxes();
+
+    // thread ids depend on the order in which the actors were created, so
+    // they are left out (the threads are in canonical order anyway)
+    for (ThreadInfo ti : actorThreads) {
+      serializeThreadState(ti);
+    }
+    for (ThreadInfo ti : otherThreads) {
+      serializeThreadState(ti);
+    }
+
+    return buf.toArray();
+  }
+
+  /***********************************************************/
+  void sortThreads() {
+    actorThreads.clear();
+    otherThreads.clear();
+    for (Iterator<ThreadInfo> it = ks.getThreadList().canonicalLiveIterator(); it
+        .hasNext();) {
+      ThreadInfo ti = it.next();
+      if (getPolicy(ti.getClassInfo()) == POLICY_ACTOR_THREAD)
+        actorThreads.add(ti);
+      else
+        otherThreads.add(ti);
+    }
+    // actor threads are named after their actors
+    Collections.sort(actorThreads, new Comparator<ThreadInfo>() {
+      public int compare(ThreadInfo t1, ThreadInfo t2) {
+        return t1.getName().compareTo(t2.getName());
+      }
+    });
+  }
+
+  @Override
+  protected void serializeThreadState(ThreadInfo ti) {
+    buf.add(ti.getState().ordinal());
+    buf.add(ti.getStackDepth());
+
+    ElementInfo eiLock = ti.getLockObject();
+    if (eiLock != null) {
+      buf.add(getSerializedReferenceValue(eiLock));
+    }
+    serializeLockedObjects(ti.getLockedObjects());
+  }
+
+  /***********************************************************/
+  void serializeApplicationStatics() {
+    for (StaticElementInfo sei : ks.getStaticArea()) {
+      ClassInfo ci = sei.getClassInfo();
+      if (isApplicationClass(ci)) {
+        buf.add(ci.getUniqueId());
+        serializeClass(sei);
+      }
+    }
+  }
+
+  static boolean isApplicationClass(ClassInfo ci) {
+    String name = ci.getName();
+    for (String prefix : SYSTEM_PACKAGES) {
+      if (name.startsWith(prefix))
+        return false;
+    }
+    return true;
+  }
+
+  /***********************************************************/
+  // Each mailbox is identified by its owner, i.e. by the serialization id of
+  // the actor (or by the receiver id if the actor is not known yet), and
+  // its messages are serialized one by one and then sorted. The mailboxes
+  // are sorted as well.
+  void serializeMailboxes() {
+    if (platformClass == null || sizeField == null
+        || platformClass.getStaticElementInfo() == null)
+      return;
+    int platformRef = platformClass.getStaticElementInfo().getReferenceField(
+        "platform");
+    if (platformRef < 0)
+      return;
+    int cloudRef = heap.get(platformRef).getReferenceField("cloud");
+    int mailboxesRef = heap.get(cloudRef).getReferenceField("mailboxes");
+    int[] mailboxes = ((ArrayFields) heap.get(mailboxesRef).getFields())
+        .asReferenceArray();
+
+    List<int[]> serialized = new ArrayList<int[]>();
+    IntVector v = new IntVector();
+    for (int ref : mailboxes) {
+      if (ref < 0)
+        continue;
+      ElementInfo mb = heap.get(ref);
+      int size = mb.getIntField(sizeField);
+      if (size == 0)
+        continue;
+
+      v.clear();
+      int owner = mb.getReferenceField(ownerField);
+      if (owner >= 0 && isNumbered(heap.get(owner))) {
+        v.add(0);
+        v.add(getSerializedReferenceValue(heap.get(owner)));
+      } else {
+        v.add(1);
+        v.add(mb.getIntField(receiverIdField));
+      }
+      v.add(mb.getBooleanField(receptiveField) ? 1 : 0);
+      v.add(size);
+
+      int[] messages = ((ArrayFields) heap.get(
+          mb.getReferenceField(messagesField)).getFields()).asReferenceArray();
+      int[][] m = new int[size][];
+      for (int i = 0; i < size; i++) {
+        message.clear();
+        local.clear();
+        serializeValue(messages[i], message, local);
+        m[i] = message.toArray();
+      }
+      Arrays.sort(m, LEXICOGRAPHIC);
+      for (int[] a : m) {
+        v.add(a.length);
+        v.append(a);
+      }
+      serialized.add(v.toArray());
+    }
+
+    Collections.sort(serialized, LEXICOGRAPHIC);
+    buf.add(serialized.size());
+    for (int[] a : serialized) {
+      buf.append(a);
+    }
+  }
+
+  /***********************************************************/
+  // serializes the object graph of a message on its own, so that it does not
+  // depend on the other messages. Objects that are part of the actor states
+  // are referred to by their serialization ids.
+  void serializeValue(int objref, IntVector v, HashMap<Integer, Integer> local) {
+    if (objref < 0) {
+      v.add(-1);
+      return;
+    }
+    ElementInfo ei = heap.get(objref);
+    if (isNumbered(ei)) {
+      v.add(-2);
+      v.add(getSerializedReferenceValue(ei));
+      return;
+    }
+    Integer known = local.get(objref);
+    if (known != null) {
+      v.add(-3);
+      v.add(known);
+      return;
+    }
+    local.put(objref, local.size());
+
+    ClassInfo ci = ei.getClassInfo();
+    v.add(ci.getUniqueId());
+
+    Fields fields = ei.getFields();
+    if (fields instanceof ArrayFields) {
+      ArrayFields afields = (ArrayFields) fields;
+      v.add(afields.arrayLength());
+      if (afields.isReferenceArray()) {
+        for (int ref : afields.asReferenceArray()) {
+          serializeValue(ref, v, local);
+        }
+      } else {
+        afields.appendTo(v);
+      }
+
+    } else {
+      FinalBitSet filtered = getInstanceFilterMask(ci);
+      FinalBitSet refs = getInstanceRefMask(ci);
+      int[] values = fields.asFieldSlots();
+      for (int i = 0; i < values.length; i++) {
+        if (!filtered.get(i)) {
+          if (refs.get(i))
+            serializeValue(values[i], v, local);
+          else
+            v.add(values[i]);
+        }
+      }
+    }
+  }
+
+  /***********************************************************/
+  static final Comparator<int[]> LEXICOGRAPHIC = new Comparator<int[]>() {
+    public int compare(int[] a, int[] b) {
+      int n = Math.min(a.length, b.length);
+      for (int i = 0; i < n; i++) {
+        if (a[i] != b[i])
+          return (a[i] < b[i]) ? -1 : 1;
+      }
+      return a.length - b.length;
+    }
+  };
+
+}
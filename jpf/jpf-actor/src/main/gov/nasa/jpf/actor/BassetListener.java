@@ -18,10 +18,10 @@
 //
 package gov.nasa.jpf.actor;
 
-import java.util.Date;
-
 import gov.nasa.jpf.Config;
 import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.jvm.ChoiceGenerator;
+import gov.nasa.jpf.jvm.IntChoiceGenerator;
 import gov.nasa.jpf.search.Search;
 
 /**
@@ -29,44 +29,137 @@ import gov.nasa.jpf.search.Search;
  * 
  * First, it prints out relevant statistics when an exploration completes.
  * 
- * And second, it facilitates a timeout capability for Basset. Following the
- * processing of each delivered message, the current running time for the
- * exploration is compared to a user specified time limit (in seconds). If the
- * running time has exceeded the limit the exploration is gracefully terminated.
+ * And second, it bounds a Basset exploration. The exploration is gracefully
+ * terminated once any of these limits is exceeded:
+ * 
+ *   basset.time_limit       running time (in seconds)
+ *   basset.trace_limit      number of explored traces
+ *   basset.delivery_limit   number of delivered messages
+ *   basset.heap_limit       used memory of the host JVM (in MB)
+ * 
+ * The trace and delivery counts are checked whenever the search advances.
+ * Reading the clock and the memory usage is more expensive, so these are
+ * only sampled every basset.limit_check_interval states.
+ * 
+ * When the exploration is terminated because of a limit, the statistics
+ * printed (and published) are those of the partial exploration, followed by
+ * the frontier of the depth first search: the number of choices that were
+ * already taken at each message delivery choice point of the current path.
+ * Everything to the left of this path has been explored.
+ * 
+ * In the sampling modes (basset.dpor=20 and 21), the seed of the trace in
+ * which a property is violated is printed, together with the options that
+ * replay just this trace.
  * 
  * @author Steven Lauterburg (steven.lauterburg@gmail.com)
  * 
  */
 public class BassetListener extends ListenerAdapter {
 
-  Config config;
-  public static boolean timeout = false;
-  static Date started;
-  long timeLimit;
+  public static boolean limitExceeded = false;
+  static String exceeded; // the limit that was exceeded
+  static String frontier;
+
+  // set by the platform when a sampled trace starts
+  static int traceSeed;
+  static boolean sampled = false;
+
+  long started;
+  long timeLimit; // ns
+  long traceLimit, deliveryLimit;
+  long heapLimit; // bytes
+  int checkInterval, untilCheck;
 
   public void searchStarted(Search search) {
-    config = search.getConfig();
-    started = new Date();
-    timeLimit = config.getInt("basset.time_limit", Integer.MAX_VALUE);
-    timeLimit = 14400; // 14400 seconds = 4 hours
+    Config config = search.getConfig();
+    limitExceeded = false;
+    exceeded = null;
+    frontier = null;
+    sampled = false;
+
+    // a limit <= 0 means no limit
+    timeLimit = getLimit(config, "basset.time_limit", 1000000000L);
+    traceLimit = getLimit(config, "basset.trace_limit", 1);
+    deliveryLimit = getLimit(config, "basset.delivery_limit", 1);
+    heapLimit = getLimit(config, "basset.heap_limit", 1024 * 1024);
+    checkInterval = Math.max(1, config.getInt("basset.limit_check_interval",
+        100));
+    untilCheck = checkInterval;
+    started = System.nanoTime();
+  }
+
+  static long getLimit(Config config, String key, long unit) {
+    long limit = config.getLong(key, 0);
+    return (limit > 0) ? limit * unit : Long.MAX_VALUE;
   }
 
   public void stateAdvanced(Search search) {
-    Date current = new Date();
-    long elapsed = current.getTime() - started.getTime();
-    if (elapsed > timeLimit * 1000) {
-      timeout = true;
+    if (Statistics.statJPFTraceCount >= traceLimit) {
+      terminate(search, "trace limit exceeded - " + traceLimit + " traces.");
+    } else if (Statistics.statMessageDeliveryCount >= deliveryLimit) {
+      terminate(search, "delivery limit exceeded - " + deliveryLimit + " messages.");
+    } else if (--untilCheck == 0) {
+      untilCheck = checkInterval;
+      if (System.nanoTime() - started > timeLimit) {
+        terminate(search, "time limit exceeded - " + (timeLimit / 1000000000L)
+            + " seconds.");
+      } else {
+        Runtime rt = Runtime.getRuntime();
+        if (rt.totalMemory() - rt.freeMemory() > heapLimit)
+          terminate(search, "heap limit exceeded - " + (heapLimit / (1024 * 1024))
+              + " MB.");
+      }
     }
   }
 
+  public void propertyViolated(Search search) {
+    if (sampled) {
+      System.out.println("Basset error in the sampled trace with seed "
+          + traceSeed + ", replay with +basset.randomseed=" + traceSeed
+          + " +basset.samples=1");
+    }
+  }
+
+  void terminate(Search search, String limit) {
+    if (limitExceeded)
+      return;
+    limitExceeded = true;
+    exceeded = limit;
+    frontier = getFrontier(search);
+    search.terminate();
+  }
+
+  // the processed choices of the delivery choice points, from the top
+  static String getFrontier(Search search) {
+    StringBuilder sb = new StringBuilder();
+    ChoiceGenerator<?>[] cgs = search.getVM().getChoiceGenerators();
+    for (int i = 0; cgs != null && i < cgs.length; i++) {
+      ChoiceGenerator<?> cg = cgs[i];
+      if ((cg instanceof IntChoiceGenerator) && cg.getId() != null
+          && cg.getId().startsWith("basset-")) {
+        if (sb.length() > 0)
+          sb.append(',');
+        sb.append(cg.getProcessedNumberOfChoices());
+      }
+    }
+    return (sb.length() > 0) ? sb.toString() : "-";
+  }
+
   public void searchFinished(Search search) {
     System.out
         .println("====================================================== basset statistics");
 
-    if (timeout) {
-      System.out.println("Basset time limit exceeded - " + timeLimit
-          + " seconds.");
+    if (limitExceeded) {
+      System.out.println("Basset " + exceeded);
     }
+    printStatistics();
+    if (limitExceeded) {
+      System.out.println("@@@@@@   frontier: " + frontier);
+    }
+  }
+  /***********************************************************/
+  // also used by ParallelShell to print the merged statistics of its workers
+  static void printStatistics() {
     System.out.println("@@@@@@ end of exploration statistics:");
     System.out.println("@@@@@@   # of traces: " + Statistics.statJPFTraceCount);
     System.out.println("@@@@@@   # of traces with undelivered messages: "
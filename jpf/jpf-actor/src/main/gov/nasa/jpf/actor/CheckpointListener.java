@@ -0,0 +1,339 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.actor.common.DPORIntChoiceGeneratorPersistent;
+import gov.nasa.jpf.jvm.ChoiceGenerator;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.search.Search;
+
+/**
+ * Checkpoints a long Basset exploration, so that a later run can resume it,
+ * e.g.:
+ * 
+ *   bin/jpf +listener+=,.actor.CheckpointListener +basset.dpor=3
+ *           +basset.checkpoint.file=fib.ckpt +basset.time_limit=3600
+ *           gov.nasa.jpf.actor.Basset fibonacci.Driver 5
+ * 
+ * and the same command with +basset.checkpoint.resume=true for each
+ * following run.
+ * 
+ * A checkpoint is written every basset.checkpoint.interval seconds (checked
+ * every basset.limit_check_interval states), and when the exploration is
+ * terminated because of one of the BassetListener limits. It holds the
+ * Statistics and the choice generators of the current path of the depth
+ * first search: for each of them its type, its number of choices, the
+ * number of choices processed so far and, for the persistent set DPOR, the
+ * persistent set. Once an exploration is complete its checkpoint is
+ * deleted. A new checkpoint is written to a ".tmp" file next to the old one
+ * and then renamed over it. On platforms where a rename cannot replace a
+ * file, the old checkpoint is deleted first, and a resumed run reads the
+ * complete ".tmp" file if the checkpoint itself is missing. Either way a
+ * run that crashes or runs out of memory leaves the last complete
+ * checkpoint behind.
+ * 
+ * A resumed run replays the path from the initial state. Whenever a choice
+ * generator of the path is set, its persistent set is restored and the
+ * choices that were already explored are skipped, so the search continues
+ * exactly where the checkpointed one stopped. As with the ParallelShell,
+ * the message delivery and actor counts of the resumed run include the
+ * replayed path, while the trace counts add up to those of a single run;
+ * and only the modes in which the branches to explore at a choice point do
+ * not depend on the order of exploration are supported.
+ */
+public class CheckpointListener extends ListenerAdapter {
+
+  static final int MAGIC = 0x42534350; // "BSCP"
+  static final int VERSION = 1;
+
+  static class Entry {
+    String type;
+    int total, processed;
+    int[] persistentSet; // null if not a persistent set choice generator
+  }
+
+  File file;
+  File tmp; // the next checkpoint, while it is written
+  String subject;
+  boolean enabled;
+  long interval; // ns
+  long nextCheckpoint;
+  int checkInterval, untilCheck;
+
+  // the path that is being replayed, null once it has been
+  Entry[] replay;
+  int replayed;
+
+  public void searchStarted(Search search) {
+    Config config = search.getConfig();
+    file = new File(config.getString("basset.checkpoint.file",
+        "basset.checkpoint"));
+    tmp = new File(file.getPath() + ".tmp");
+    subject = config.getTarget() + " "
+        + Arrays.toString(config.getTargetArgs()) + " dpor="
+        + config.getInt("basset.dpor", 0);
+
+    String unsupported = ParallelShell.getUnsupportedOption(config);
+    if (ParallelWorker.isActive())
+      unsupported = "parallel workers";
+    enabled = (unsupported == null);
+    if (!enabled) {
+      System.err.println("checkpoints are not supported with " + unsupported);
+      return;
+    }
+
+    interval = Math.max(1, config.getLong("basset.checkpoint.interval", 600))
+        * 1000000000L;
+    checkInterval = Math.max(1, config.getInt("basset.limit_check_interval",
+        100));
+    untilCheck = checkInterval;
+    nextCheckpoint = System.nanoTime() + interval;
+
+    replay = null;
+    replayed = 0;
+    if (config.getBoolean("basset.checkpoint.resume")) {
+      try {
+        replay = read();
+        System.out.println("resuming from checkpoint " + file + " ("
+            + replay.length + " choice generators)");
+      } catch (IOException e) {
+        System.err.println("cannot resume from checkpoint " + file + ": "
+            + e.getMessage());
+      }
+      if (replay != null && replay.length == 0)
+        replay = null;
+    }
+  }
+
+  /***********************************************************/
+  public void choiceGeneratorSet(JVM vm) {
+    if (replay == null)
+      return;
+
+    ChoiceGenerator<?> cg = vm.getLastChoiceGenerator();
+    Entry e = replay[replayed++];
+    boolean matches = e.type.equals(cg.getClass().getName())
+        && e.total == cg.getTotalNumberOfChoices();
+    if (matches && e.persistentSet != null) {
+      matches = ((DPORIntChoiceGeneratorPersistent) cg)
+          .restorePersistentSet(e.persistentSet);
+    }
+    if (!matches) {
+      System.err.println("checkpoint does not match choice generator "
+          + (replayed - 1) + " (" + cg + "), exploring from there");
+      replay = null;
+      return;
+    }
+
+    // the search advances the choice generator once more, to the choice
+    // it was at when the checkpoint was written
+    for (int i = 1; i < e.processed; i++) {
+      cg.advance();
+    }
+    if (replayed == replay.length)
+      replay = null;
+  }
+
+  public void stateBacktracked(Search search) {
+    replay = null;
+  }
+
+  public void stateAdvanced(Search search) {
+    if (!enabled || --untilCheck > 0)
+      return;
+    untilCheck = checkInterval;
+
+    long now = System.nanoTime();
+    if (now >= nextCheckpoint && replay == null) {
+      checkpoint(search);
+      nextCheckpoint = now + interval;
+    }
+  }
+
+  public void searchFinished(Search search) {
+    if (!enabled)
+      return;
+    if (BassetListener.limitExceeded) {
+      checkpoint(search);
+    } else if (search.getErrors().isEmpty()) {
+      delete();
+    }
+  }
+
+  /***********************************************************/
+  void checkpoint(Search search) {
+    Entry[] path = getPath(search);
+    try {
+      if (path != null) {
+        write(path);
+      } else {
+        delete(); // nothing left to explore
+      }
+    } catch (IOException e) {
+      System.err.println("cannot write checkpoint " + file + ": "
+          + e.getMessage());
+    }
+  }
+
+  // the path to resume from, which is the current one unless that ends in
+  // a state without successors (e.g. the end of a trace, which is already
+  // counted, or an ignored state), in which case it is the next path of the
+  // depth first search: the last choice generator with choices left moves
+  // on to its next choice, whether or not the ones above it were exhausted
+  Entry[] getPath(Search search) {
+    ChoiceGenerator<?>[] cgs = search.getVM().getChoiceGenerators();
+    if (cgs == null)
+      cgs = new ChoiceGenerator<?>[0];
+
+    int n = cgs.length;
+    boolean explored = search.isIgnoredState() || search.isEndState();
+    if (explored) {
+      while (n > 0 && !cgs[n - 1].hasMoreChoices())
+        n--;
+      if (n == 0)
+        return null;
+    }
+
+    Entry[] path = new Entry[n];
+    for (int i = 0; i < n; i++) {
+      ChoiceGenerator<?> cg = cgs[i];
+      Entry e = new Entry();
+      e.type = cg.getClass().getName();
+      e.total = cg.getTotalNumberOfChoices();
+      e.processed = cg.getProcessedNumberOfChoices();
+      if (cg instanceof DPORIntChoiceGeneratorPersistent) {
+        e.persistentSet = ((DPORIntChoiceGeneratorPersistent) cg)
+            .getPersistentSet();
+      }
+      path[i] = e;
+    }
+    if (explored)
+      path[n - 1].processed++;
+    return path;
+  }
+
+  void delete() {
+    file.delete();
+    tmp.delete();
+  }
+
+  void write(Entry[] path) throws IOException {
+    // written next to the checkpoint, which is only replaced once the new
+    // one is complete
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(tmp)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(subject);
+
+      out.writeLong(Statistics.statActorCreateCount);
+      out.writeLong(Statistics.statActorDestroyedCount);
+      out.writeLong(Statistics.statActorTerminatedCount);
+      out.writeLong(Statistics.statJPFTraceCount);
+      out.writeLong(Statistics.statMessageSendCount);
+      out.writeLong(Statistics.statMessageDeliveryCount);
+      out.writeLong(Statistics.statMessageDeliveryFailCount);
+      out.writeLong(Statistics.statDeadlocks);
+      out.writeLong(Statistics.statAbortedTraceCount);
+
+      out.writeInt(path.length);
+      for (Entry e : path) {
+        out.writeUTF(e.type);
+        out.writeInt(e.total);
+        out.writeInt(e.processed);
+        if (e.persistentSet != null) {
+          out.writeInt(e.persistentSet.length);
+          for (int p : e.persistentSet) {
+            out.writeInt(p);
+          }
+        } else {
+          out.writeInt(-1);
+        }
+      }
+    } finally {
+      out.close();
+    }
+
+    // renameTo replaces the old checkpoint atomically where the platform
+    // supports it, elsewhere it has to be deleted first
+    if (!tmp.renameTo(file)) {
+      file.delete();
+      if (!tmp.renameTo(file))
+        throw new IOException("cannot rename " + tmp);
+    }
+  }
+
+  Entry[] read() throws IOException {
+    // a missing checkpoint with a complete new one next to it was deleted
+    // by a run that stopped before it could rename the new one
+    File f = (!file.exists() && tmp.exists()) ? tmp : file;
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(f)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        throw new IOException("not a Basset checkpoint");
+      String s = in.readUTF();
+      if (!s.equals(subject))
+        throw new IOException("checkpoint of " + s);
+
+      Statistics.statActorCreateCount = in.readLong();
+      Statistics.statActorDestroyedCount = in.readLong();
+      Statistics.statActorTerminatedCount = in.readLong();
+      Statistics.statJPFTraceCount = in.readLong();
+      Statistics.statMessageSendCount = in.readLong();
+      Statistics.statMessageDeliveryCount = in.readLong();
+      Statistics.statMessageDeliveryFailCount = in.readLong();
+      Statistics.statDeadlocks = in.readLong();
+      Statistics.statAbortedTraceCount = in.readLong();
+
+      Entry[] entries = new Entry[in.readInt()];
+      for (int i = 0; i < entries.length; i++) {
+        Entry e = new Entry();
+        e.type = in.readUTF();
+        e.total = in.readInt();
+        e.processed = in.readInt();
+        int n = in.readInt();
+        if (n >= 0) {
+          e.persistentSet = new int[n];
+          for (int k = 0; k < n; k++) {
+            e.persistentSet[k] = in.readInt();
+          }
+        }
+        entries[i] = e;
+      }
+      return entries;
+    } finally {
+      in.close();
+    }
+  }
+
+}
@@ -0,0 +1,170 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finer grained exploration metrics than the Statistics counts, meant for
+ * tuning the DPOR modes and heuristics on a given subject.
+ * 
+ * The per-actor delivery counts are always collected (see Stat). The choice
+ * generator histograms, the time per search phase and the periodic snapshots
+ * are collected by the MetricsListener, and written to files by the
+ * MetricsJSONPublisher and MetricsCSVPublisher.
+ */
+public class Metrics {
+
+  /**
+   * A histogram of small non-negative values, e.g. set sizes. Values above
+   * the bucket range are counted in the last bucket.
+   */
+  public static class Histogram {
+
+    static final int MAX_BUCKETS = 1024;
+
+    final String name;
+    long[] buckets = new long[16];
+    long count, sum, max;
+
+    Histogram(String name) {
+      this.name = name;
+    }
+
+    public void add(int value) {
+      int b = Math.min(Math.max(value, 0), MAX_BUCKETS - 1);
+      if (b >= buckets.length) {
+        buckets = Arrays.copyOf(buckets, Math.min(MAX_BUCKETS, Math.max(
+            b + 1, buckets.length * 2)));
+      }
+      buckets[b]++;
+      count++;
+      sum += value;
+      max = Math.max(max, value);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getSum() {
+      return sum;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public double getMean() {
+      return (count == 0) ? 0 : (double) sum / count;
+    }
+
+    // the count of each value up to the maximum one
+    public long[] getBuckets() {
+      int n = (count == 0) ? 0 : (int) Math.min(max + 1, buckets.length);
+      return Arrays.copyOf(buckets, n);
+    }
+
+    void reset() {
+      buckets = new long[16];
+      count = sum = max = 0;
+    }
+  }
+
+  /**
+   * The state of the exploration at some point in time.
+   */
+  public static class Snapshot {
+    public final long time; // ms since the search started
+    public final long states, newStates, backtracks, depth;
+    public final long traces, deliveries, sends;
+
+    Snapshot(long time, long states, long newStates, long backtracks,
+             long depth) {
+      this.time = time;
+      this.states = states;
+      this.newStates = newStates;
+      this.backtracks = backtracks;
+      this.depth = depth;
+      this.traces = Statistics.statJPFTraceCount;
+      this.deliveries = Statistics.statMessageDeliveryCount;
+      this.sends = Statistics.statMessageSendCount;
+    }
+  }
+
+  // size of the enabled set, i.e. the number of deliverable messages, at
+  // each message delivery choice point
+  public static final Histogram enabledSetSize = new Histogram(
+      "enabled_set_size");
+
+  // number of choices that were explored at each message delivery choice
+  // point, which for the DPOR modes is the size of the persistent set
+  public static final Histogram exploredSetSize = new Histogram(
+      "explored_set_size");
+
+  // number of enabled messages that were asleep at each choice point of the
+  // sleep set DPOR modes
+  public static final Histogram sleepSetHits = new Histogram("sleep_set_hits");
+
+  public static final Histogram[] histograms = { enabledSetSize,
+      exploredSetSize, sleepSetHits };
+
+  // time spent moving forward (executing transitions and storing states)
+  // and backtracking, in ns
+  public static long forwardTime;
+  public static long backtrackTime;
+
+  public static final List<Snapshot> snapshots = new ArrayList<Snapshot>();
+
+  static long[] deliveries = new long[16];
+
+  /***********************************************************/
+  public static void countDelivery(int actorId) {
+    if (actorId >= deliveries.length) {
+      deliveries = Arrays.copyOf(deliveries, Math.max(actorId + 1,
+          deliveries.length * 2));
+    }
+    deliveries[actorId]++;
+  }
+
+  // the number of messages delivered to each actor, indexed by actor id
+  public static long[] getDeliveries() {
+    int n = deliveries.length;
+    while (n > 0 && deliveries[n - 1] == 0)
+      n--;
+    return Arrays.copyOf(deliveries, n);
+  }
+
+  /***********************************************************/
+  public static void reset() {
+    for (Histogram h : histograms) {
+      h.reset();
+    }
+    forwardTime = backtrackTime = 0;
+    snapshots.clear();
+    deliveries = new long[16];
+  }
+
+}
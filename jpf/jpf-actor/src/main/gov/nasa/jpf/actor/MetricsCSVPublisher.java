@@ -0,0 +1,135 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.report.Publisher;
+import gov.nasa.jpf.report.Reporter;
+
+/**
+ * Writes the same numbers as the MetricsJSONPublisher as a CSV file with
+ * one "metric,key,value" row per number, which is easy to load into a
+ * spreadsheet or to concatenate over several runs. The file is
+ * report.basset_csv.file (or report.file) plus ".csv".
+ * 
+ * Enabled with
+ * 
+ *   +report.publisher+=,basset_csv
+ *   +listener+=,.actor.MetricsListener
+ */
+public class MetricsCSVPublisher extends Publisher {
+
+  public MetricsCSVPublisher(Config conf, Reporter reporter) {
+    super(conf, reporter);
+  }
+
+  public String getName() {
+    return "basset_csv";
+  }
+
+  protected void setTopics() {
+    finishedTopics = new String[] { "statistics" };
+    super.setTopics();
+  }
+
+  protected void openChannel() {
+    if (out == null) {
+      String fname = getReportFileName("report.basset_csv.file") + ".csv";
+      try {
+        out = new PrintWriter(fname);
+      } catch (FileNotFoundException fnfx) {
+        Reporter.log.warning("could not open " + fname);
+      }
+    }
+  }
+
+  protected void closeChannel() {
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+  }
+
+  /***********************************************************/
+  protected void publishStatistics() {
+    if (out == null)
+      return;
+
+    // the search statistics of JPF, not the Basset ones
+    gov.nasa.jpf.report.Statistics stat = reporter.getStatistics();
+    out.println("metric,key,value");
+    row("jpf", "elapsed_ms", reporter.getElapsedTime());
+    row("jpf", "new_states", stat.newStates);
+    row("jpf", "visited_states", stat.visitedStates);
+    row("jpf", "backtracked", stat.backtracked);
+    row("jpf", "end_states", stat.endStates);
+    row("jpf", "max_depth", stat.maxDepth);
+    row("jpf", "instructions", stat.insns);
+
+    row("basset", "traces", Statistics.statJPFTraceCount);
+    row("basset", "traces_with_undelivered_messages",
+        Statistics.statMessageDeliveryFailCount);
+    row("basset", "aborted_traces", Statistics.statAbortedTraceCount);
+    row("basset", "messages_sent", Statistics.statMessageSendCount);
+    row("basset", "messages_delivered", Statistics.statMessageDeliveryCount);
+    row("basset", "actors_created", Statistics.statActorCreateCount);
+    row("basset", "actors_destroyed", Statistics.statActorDestroyedCount);
+    row("basset", "actors_terminated", Statistics.statActorTerminatedCount);
+    row("basset", "deadlocks", Statistics.statDeadlocks);
+
+    row("phases_ms", "forward", Metrics.forwardTime / 1000000);
+    row("phases_ms", "backtrack", Metrics.backtrackTime / 1000000);
+
+    // histograms as their summary plus one row per bucket
+    for (Metrics.Histogram h : Metrics.histograms) {
+      row(h.getName(), "count", h.getCount());
+      row(h.getName(), "sum", h.getSum());
+      row(h.getName(), "max", h.getMax());
+      long[] buckets = h.getBuckets();
+      for (int i = 0; i < buckets.length; i++) {
+        row(h.getName() + ".bucket", Integer.toString(i), buckets[i]);
+      }
+    }
+
+    long[] deliveries = Metrics.getDeliveries();
+    for (int i = 0; i < deliveries.length; i++) {
+      row("deliveries_per_actor", Integer.toString(i), deliveries[i]);
+    }
+
+    // snapshots are keyed by their time (in ms)
+    for (Metrics.Snapshot s : Metrics.snapshots) {
+      String key = Long.toString(s.time);
+      row("snapshot.states", key, s.states);
+      row("snapshot.new_states", key, s.newStates);
+      row("snapshot.backtracks", key, s.backtracks);
+      row("snapshot.depth", key, s.depth);
+      row("snapshot.traces", key, s.traces);
+      row("snapshot.deliveries", key, s.deliveries);
+      row("snapshot.sends", key, s.sends);
+    }
+  }
+
+  void row(String metric, String key, long value) {
+    out.println(metric + "," + key + "," + value);
+  }
+
+}
@@ -0,0 +1,155 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.report.Publisher;
+import gov.nasa.jpf.report.Reporter;
+
+/**
+ * Writes the Basset statistics and Metrics, together with the JPF search
+ * statistics, to a JSON file when the search finishes. The file is
+ * report.basset_json.file (or report.file) plus ".json".
+ * 
+ * Enabled with
+ * 
+ *   +report.publisher+=,basset_json
+ *   +listener+=,.actor.MetricsListener
+ * 
+ * where the listener is only needed for the histograms, phase times and
+ * snapshots.
+ */
+public class MetricsJSONPublisher extends Publisher {
+
+  public MetricsJSONPublisher(Config conf, Reporter reporter) {
+    super(conf, reporter);
+  }
+
+  public String getName() {
+    return "basset_json";
+  }
+
+  protected void setTopics() {
+    finishedTopics = new String[] { "statistics" };
+    super.setTopics();
+  }
+
+  protected void openChannel() {
+    if (out == null) {
+      String fname = getReportFileName("report.basset_json.file") + ".json";
+      try {
+        out = new PrintWriter(fname);
+      } catch (FileNotFoundException fnfx) {
+        Reporter.log.warning("could not open " + fname);
+      }
+    }
+  }
+
+  protected void closeChannel() {
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+  }
+
+  /***********************************************************/
+  protected void publishStatistics() {
+    if (out == null)
+      return;
+
+    // the search statistics of JPF, not the Basset ones
+    gov.nasa.jpf.report.Statistics stat = reporter.getStatistics();
+    out.println("{");
+    out.println("  \"jpf\": {");
+    out.println("    \"elapsed_ms\": " + reporter.getElapsedTime() + ",");
+    out.println("    \"new_states\": " + stat.newStates + ",");
+    out.println("    \"visited_states\": " + stat.visitedStates + ",");
+    out.println("    \"backtracked\": " + stat.backtracked + ",");
+    out.println("    \"end_states\": " + stat.endStates + ",");
+    out.println("    \"max_depth\": " + stat.maxDepth + ",");
+    out.println("    \"instructions\": " + stat.insns);
+    out.println("  },");
+
+    out.println("  \"basset\": {");
+    out.println("    \"traces\": " + Statistics.statJPFTraceCount + ",");
+    out.println("    \"traces_with_undelivered_messages\": "
+        + Statistics.statMessageDeliveryFailCount + ",");
+    out.println("    \"aborted_traces\": "
+        + Statistics.statAbortedTraceCount + ",");
+    out.println("    \"messages_sent\": "
+        + Statistics.statMessageSendCount + ",");
+    out.println("    \"messages_delivered\": "
+        + Statistics.statMessageDeliveryCount + ",");
+    out.println("    \"actors_created\": "
+        + Statistics.statActorCreateCount + ",");
+    out.println("    \"actors_destroyed\": "
+        + Statistics.statActorDestroyedCount + ",");
+    out.println("    \"actors_terminated\": "
+        + Statistics.statActorTerminatedCount + ",");
+    out.println("    \"deadlocks\": " + Statistics.statDeadlocks);
+    out.println("  },");
+
+    out.println("  \"phases_ms\": {");
+    out.println("    \"forward\": " + (Metrics.forwardTime / 1000000) + ",");
+    out.println("    \"backtrack\": " + (Metrics.backtrackTime / 1000000));
+    out.println("  },");
+
+    out.println("  \"histograms\": {");
+    for (int i = 0; i < Metrics.histograms.length; i++) {
+      Metrics.Histogram h = Metrics.histograms[i];
+      out.print("    \"" + h.getName() + "\": { \"count\": " + h.getCount()
+          + ", \"sum\": " + h.getSum() + ", \"max\": " + h.getMax()
+          + ", \"mean\": " + h.getMean() + ", \"buckets\": ");
+      printArray(h.getBuckets());
+      out.println((i < Metrics.histograms.length - 1) ? " }," : " }");
+    }
+    out.println("  },");
+
+    out.print("  \"deliveries_per_actor\": ");
+    printArray(Metrics.getDeliveries());
+    out.println(",");
+
+    out.println("  \"snapshots\": [");
+    for (int i = 0; i < Metrics.snapshots.size(); i++) {
+      Metrics.Snapshot s = Metrics.snapshots.get(i);
+      out.print("    { \"time_ms\": " + s.time + ", \"states\": " + s.states
+          + ", \"new_states\": " + s.newStates + ", \"backtracks\": "
+          + s.backtracks + ", \"depth\": " + s.depth + ", \"traces\": "
+          + s.traces + ", \"deliveries\": " + s.deliveries + ", \"sends\": "
+          + s.sends + " }");
+      out.println((i < Metrics.snapshots.size() - 1) ? "," : "");
+    }
+    out.println("  ]");
+    out.println("}");
+  }
+
+  void printArray(long[] a) {
+    out.print('[');
+    for (int i = 0; i < a.length; i++) {
+      if (i > 0)
+        out.print(", ");
+      out.print(a[i]);
+    }
+    out.print(']');
+  }
+
+}
@@ -0,0 +1,108 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.actor.common.SleepSetChoiceGenerator;
+import gov.nasa.jpf.jvm.ChoiceGenerator;
+import gov.nasa.jpf.jvm.IntChoiceGenerator;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.search.Search;
+
+/**
+ * Collects the Metrics that need to follow the search: the choice generator
+ * histograms, the time per search phase and the periodic snapshots. Like
+ * the StateSizeListener this is not needed for regular Basset runs.
+ * 
+ * The message delivery choice points are recognized by their "basset-" id.
+ * Their sizes are recorded once they are fully explored, when the number of
+ * processed choices is the size of the persistent set.
+ * 
+ * If basset.metrics.interval (in seconds) is set, a snapshot of the
+ * exploration is taken that often, and once more when the search finishes.
+ */
+public class MetricsListener extends ListenerAdapter {
+
+  long started;
+  long last;
+  long interval, nextSnapshot;
+  long states, newStates, backtracks;
+
+  public void searchStarted(Search search) {
+    Config config = search.getConfig();
+    interval = config.getInt("basset.metrics.interval", 0) * 1000000000L;
+    started = last = System.nanoTime();
+    nextSnapshot = started + interval;
+  }
+
+  public void stateAdvanced(Search search) {
+    long now = System.nanoTime();
+    Metrics.forwardTime += now - last;
+    last = now;
+
+    states++;
+    if (search.isNewState())
+      newStates++;
+    if (interval > 0 && now >= nextSnapshot) {
+      snapshot(search, now);
+      nextSnapshot = now + interval;
+    }
+  }
+
+  public void stateBacktracked(Search search) {
+    long now = System.nanoTime();
+    Metrics.backtrackTime += now - last;
+    last = now;
+    backtracks++;
+  }
+
+  public void stateRestored(Search search) {
+    stateBacktracked(search);
+  }
+
+  public void searchFinished(Search search) {
+    long now = System.nanoTime();
+    Metrics.forwardTime += now - last;
+    last = now;
+    if (interval > 0)
+      snapshot(search, now);
+  }
+
+  void snapshot(Search search, long now) {
+    Metrics.snapshots.add(new Metrics.Snapshot((now - started) / 1000000,
+        states, newStates, backtracks, search.getDepth()));
+  }
+
+  /***********************************************************/
+  public void choiceGeneratorProcessed(JVM vm) {
+    ChoiceGenerator<?> cg = vm.getLastChoiceGenerator();
+    if (!(cg instanceof IntChoiceGenerator) || cg.getId() == null
+        || !cg.getId().startsWith("basset-"))
+      return;
+
+    Metrics.enabledSetSize.add(cg.getTotalNumberOfChoices());
+    Metrics.exploredSetSize.add(cg.getProcessedNumberOfChoices());
+    if (cg instanceof SleepSetChoiceGenerator) {
+      Metrics.sleepSetHits.add(((SleepSetChoiceGenerator) cg)
+          .getSleepSetHits());
+    }
+  }
+
+}
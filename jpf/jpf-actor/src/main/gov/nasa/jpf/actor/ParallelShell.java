@@ -0,0 +1,372 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFShell;
+
+/**
+ * A JPF shell that explores the message delivery choice tree of an actor
+ * program with several worker JVMs (see ParallelWorker) instead of a single
+ * JPF run, e.g.:
+ * 
+ *   bin/jpf +shell=.actor.ParallelShell +basset.parallel.workers=4
+ *           +basset.dpor=3 gov.nasa.jpf.actor.Basset fibonacci.Driver 5
+ * 
+ * The shell is the coordinator. It keeps a queue of unexplored prefixes of
+ * the choice tree, starting with the empty prefix, and hands them to idle
+ * workers. Workers give back the branches they leave unexplored, and the
+ * ones the persistent set DPOR adds to the choice points on their prefixes,
+ * which are queued unless they have been seen before. An item is split (a
+ * worker gives away the other branches of the first
+ * basset.parallel.split_depth choice points with more than one enabled
+ * message below its prefix) only while the queue holds fewer items than
+ * there are workers, so the exploration is partitioned further whenever
+ * workers are about to run idle. The statistics of all runs are summed up.
+ * 
+ * Errors found by a worker are reported with their trace as soon as its run
+ * is done. Unless search.multiple_errors is set, the first one also ends
+ * the exploration: the other workers are stopped and the statistics are
+ * those of the runs completed so far.
+ * 
+ * Each JPF run in a worker replays its prefix from the initial state, so the
+ * message delivery and actor counts include the replayed prefixes; the trace
+ * counts are the same as those of the sequential exploration.
+ * 
+ * Only the modes in which the branches to explore at a choice point do not
+ * depend on the order of exploration are supported: no DPOR and the
+ * persistent set DPOR (basset.dpor 0, 3 and 4) without bigstep, threadyield
+ * or the heuristics that keep their state outside of JPF (8 and 9).
+ */
+public class ParallelShell implements JPFShell {
+
+  Config config;
+  int splitDepth;
+
+  Worker[] workers;
+  int busy;
+
+  // the prefixes waiting for a worker, and all prefixes ever queued or
+  // claimed by a worker
+  LinkedList<String> pending = new LinkedList<String>();
+  HashSet<String> seen = new HashSet<String>();
+
+  LinkedBlockingQueue<String> replies = new LinkedBlockingQueue<String>();
+
+  int itemCount;
+  int errorCount;
+  boolean stopped;
+
+  public ParallelShell(Config config) {
+    this.config = config;
+  }
+
+  /***********************************************************/
+  public void start(String[] args) {
+    try {
+      if (config.getBoolean("basset.parallel.worker")) {
+        ParallelWorker.serve(config);
+        return;
+      }
+
+      String unsupported = getUnsupportedOption(config);
+      if (unsupported != null) {
+        System.err.println("parallel exploration does not support "
+            + unsupported);
+        return;
+      }
+
+      explore();
+
+    } catch (IOException e) {
+      e.printStackTrace();
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /***********************************************************/
+  // also used by the CheckpointListener, which needs the same guarantees
+  static String getUnsupportedOption(Config config) {
+    int dpor = config.getInt("basset.dpor", 0);
+    if (dpor != 0 && dpor != 3 && dpor != 4)
+      return "basset.dpor=" + dpor;
+
+    int heuristic = config.getInt("basset.dpor_heuristic", 0);
+    if (heuristic == 8 || heuristic == 9)
+      return "basset.dpor_heuristic=" + heuristic;
+
+    if (config.getBoolean("basset.bigstep"))
+      return "basset.bigstep";
+    if (config.getBoolean("basset.threadyield"))
+      return "basset.threadyield";
+
+    String storage = config.getString("vm.storage.class");
+    if (storage != null && storage.length() > 0)
+      return "vm.storage.class=" + storage;
+
+    return null;
+  }
+
+  /***********************************************************/
+  void explore() throws IOException, InterruptedException {
+    int n = Math.max(1, config.getInt("basset.parallel.workers", Runtime
+        .getRuntime().availableProcessors()));
+    splitDepth = Math.max(1, config.getInt("basset.parallel.split_depth", 1));
+    boolean verbose = config.getBoolean("basset.parallel.verbose");
+    boolean multipleErrors = config.getBoolean("search.multiple_errors");
+
+    long started = System.currentTimeMillis();
+
+    workers = new Worker[n];
+    for (int i = 0; i < n; i++) {
+      workers[i] = new Worker(i, verbose);
+    }
+
+    Statistics.resetExplorationStatistics();
+    pending.add("-");
+    seen.add("-");
+    dispatch();
+
+    while (busy > 0) {
+      String reply = replies.take();
+      int space = reply.indexOf(' ');
+      Worker worker = workers[Integer.parseInt(reply.substring(0, space))];
+      String[] fields = reply.substring(space + 1).split(" ");
+
+      if (fields[0].equals("ERROR")) {
+        worker.errors.add(reply.substring(space + 7));
+
+      } else if (fields[0].equals("WORK")) {
+        if (seen.add(fields[1]))
+          pending.add(fields[1]);
+
+      } else if (fields[0].equals("CLAIM")) {
+        seen.add(fields[1]);
+
+      } else if (fields[0].equals("DONE")) {
+        addStatistics(fields);
+        if (Integer.parseInt(fields[10]) > 0) {
+          reportErrors(worker);
+          if (!multipleErrors) {
+            worker.item = null;
+            stopped = true;
+            break;
+          }
+        }
+        worker.item = null;
+        busy--;
+
+      } else if (fields[0].equals("EOF")) {
+        throw new IOException("parallel worker " + worker.index
+            + " terminated while exploring " + worker.item);
+      }
+      dispatch();
+    }
+
+    for (Worker worker : workers) {
+      if (worker.item != null) {
+        worker.stop();
+      } else {
+        worker.quit();
+      }
+    }
+
+    System.out
+        .println("====================================================== basset statistics");
+    System.out.println("parallel workers: " + n + ", work items: "
+        + itemCount + ", time (ms): " + (System.currentTimeMillis() - started));
+    if (errorCount > 0) {
+      System.out.println("errors were found while exploring " + errorCount
+          + " work items");
+    }
+    if (stopped) {
+      System.out.println("exploration stopped at the first error"
+          + " (see search.multiple_errors)");
+    }
+    BassetListener.printStatistics();
+  }
+
+  /***********************************************************/
+  void dispatch() {
+    for (Worker worker : workers) {
+      if (pending.isEmpty())
+        return;
+      if (worker.item == null) {
+        String item = pending.removeFirst();
+
+        // only split further if the other workers are about to run out of
+        // work
+        int split = 0;
+        if (pending.size() < workers.length)
+          split = splitDepth;
+
+        worker.run(split, item);
+        itemCount++;
+        busy++;
+      }
+    }
+  }
+
+  /***********************************************************/
+  void addStatistics(String[] fields) {
+    Statistics.statJPFTraceCount += Long.parseLong(fields[1]);
+    Statistics.statMessageDeliveryFailCount += Long.parseLong(fields[2]);
+    Statistics.statAbortedTraceCount += Long.parseLong(fields[3]);
+    Statistics.statMessageDeliveryCount += Long.parseLong(fields[4]);
+    Statistics.statMessageSendCount += Long.parseLong(fields[5]);
+    Statistics.statActorCreateCount += Long.parseLong(fields[6]);
+    Statistics.statActorDestroyedCount += Long.parseLong(fields[7]);
+    Statistics.statActorTerminatedCount += Long.parseLong(fields[8]);
+    Statistics.statDeadlocks += Long.parseLong(fields[9]);
+  }
+
+  /***********************************************************/
+  void reportErrors(Worker worker) {
+    errorCount++;
+    System.out.println("====================================================== error (work item "
+        + worker.item + ", parallel worker " + worker.index + ")");
+    if (worker.errors.isEmpty()) {
+      System.out.println("no error report (see basset.parallel.verbose)");
+    }
+    for (String line : worker.errors) {
+      System.out.println(line);
+    }
+    worker.errors.clear();
+  }
+
+  /***********************************************************/
+  // a worker JVM, started with the same arguments as this one
+  class Worker {
+
+    int index;
+    Process process;
+    PrintStream commands;
+    String item;
+    List<String> errors = new ArrayList<String>();
+
+    Worker(int index, boolean verbose) throws IOException {
+      this.index = index;
+
+      List<String> command = new ArrayList<String>();
+      command.add(System.getProperty("java.home") + File.separator + "bin"
+          + File.separator + "java");
+      command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add("gov.nasa.jpf.tool.RunJPF");
+      command.add("+basset.parallel.worker=true");
+      command.addAll(Arrays.asList(config.getArgs()));
+
+      process = new ProcessBuilder(command).start();
+      commands = new PrintStream(process.getOutputStream(), true);
+
+      new Reader(index, process.getInputStream()).start();
+      new Drain(process.getErrorStream(), verbose ? System.err : null).start();
+    }
+
+    void run(int split, String prefix) {
+      item = prefix;
+      errors.clear();
+      commands.println("RUN " + split + " " + prefix);
+    }
+
+    void quit() throws InterruptedException {
+      commands.println("QUIT");
+      process.waitFor();
+    }
+
+    // the worker is in the middle of a run and doesn't read commands
+    void stop() throws InterruptedException {
+      process.destroy();
+      process.waitFor();
+    }
+  }
+
+  /***********************************************************/
+  // forwards the replies of a worker to the coordinator
+  class Reader extends Thread {
+
+    int index;
+    BufferedReader in;
+
+    Reader(int index, InputStream in) {
+      this.index = index;
+      this.in = new BufferedReader(new InputStreamReader(in));
+      setDaemon(true);
+    }
+
+    public void run() {
+      try {
+        String line;
+        while ((line = in.readLine()) != null) {
+          replies.put(index + " " + line);
+        }
+        replies.put(index + " EOF");
+      } catch (IOException e) {
+        replies.add(index + " EOF");
+      } catch (InterruptedException e) {
+        // coordinator is gone
+      }
+    }
+  }
+
+  /***********************************************************/
+  // the output of the explorations of a worker, shown only if verbose
+  static class Drain extends Thread {
+
+    InputStream in;
+    OutputStream out;
+
+    Drain(InputStream in, OutputStream out) {
+      this.in = in;
+      this.out = out;
+      setDaemon(true);
+    }
+
+    public void run() {
+      byte[] buffer = new byte[4096];
+      try {
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+          if (out != null)
+            out.write(buffer, 0, n);
+        }
+      } catch (IOException e) {
+        // worker is gone
+      }
+    }
+  }
+
+}
@@ -0,0 +1,212 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.List;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.jvm.Transition;
+
+/**
+ * The worker side of a parallel Basset exploration (see ParallelShell).
+ * 
+ * A worker is a separate JVM that reads work items from its standard input
+ * and explores each of them with a JPF run. A work item is a prefix of the
+ * message delivery choice tree, i.e. the sequence of choices to take at the
+ * first delivery choice points, together with the number of choice points
+ * (with more than one enabled message) to split below the prefix. These
+ * delivery choice points are replaced by PrefixIntChoiceGenerators: those on
+ * the prefix replay its choices, the split ones keep their first choice, and
+ * every other branch of them is sent back to the coordinator on the
+ * original standard output as a new work item. Below them the exploration is
+ * the normal sequential one.
+ * 
+ * Protocol (one command or reply per line):
+ * 
+ *   RUN <split depth> <prefix>     coordinator -> worker
+ *   QUIT                           coordinator -> worker
+ *   CLAIM <branch>                 worker -> coordinator (explored here)
+ *   WORK <branch>                  worker -> coordinator (new work item)
+ *   ERROR <text>                   worker -> coordinator (error report)
+ *   DONE <statistics> <errors>     worker -> coordinator
+ * 
+ * where prefixes and branches are comma separated choices ("-" if empty).
+ * Each line of the description, details and trace of an error found by a
+ * run, or of the stack trace of an exception that ended it, is sent as an
+ * ERROR reply before the DONE of the run. Everything else the exploration
+ * prints goes to standard error.
+ */
+public class ParallelWorker {
+
+  static int[] prefix;
+  static int splitDepth;
+
+  static PrintStream channel;
+  static HashSet<String> sent = new HashSet<String>();
+
+  /***********************************************************/
+  public static boolean isActive() {
+    return prefix != null;
+  }
+
+  public static int getSplitDepth() {
+    return splitDepth;
+  }
+
+  public static int getPrefixLength() {
+    return prefix.length;
+  }
+
+  public static int getPrefixChoice(int depth) {
+    return prefix[depth];
+  }
+
+  /***********************************************************/
+  // the branch is explored by this worker, no one else should pick it up
+  public static void claim(int[] path, int choice) {
+    send("CLAIM", path, choice);
+  }
+
+  /***********************************************************/
+  // the branch is left to be explored by some worker
+  public static void donate(int[] path, int choice) {
+    send("WORK", path, choice);
+  }
+
+  static void send(String kind, int[] path, int choice) {
+    String branch = encode(path, choice);
+    if (sent.add(branch)) {
+      channel.println(kind + " " + branch);
+      channel.flush();
+    }
+  }
+
+  /***********************************************************/
+  static void serve(Config config) throws IOException {
+    channel = System.out;
+    System.setOut(System.err);
+
+    BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+    String line;
+    while ((line = in.readLine()) != null) {
+      String[] command = line.split(" ");
+      if (command[0].equals("QUIT"))
+        break;
+
+      splitDepth = Integer.parseInt(command[1]);
+      prefix = decode(command[2]);
+      sent.clear();
+      Statistics.resetExplorationStatistics();
+
+      int errors = 1;
+      try {
+        // a new Config would come with a class loader of its own, and the run
+        // would see its own copies of the prefix and the statistics
+        JPF jpf = new JPF(config);
+        jpf.run();
+        if (jpf.getSearch() != null) {
+          List<gov.nasa.jpf.Error> found = jpf.getSearch().getErrors();
+          errors = found.size();
+          for (gov.nasa.jpf.Error e : found) {
+            sendError(e);
+          }
+        } else {
+          sendError("JPF could not be initialized");
+        }
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+        StringWriter trace = new StringWriter();
+        e.printStackTrace(new PrintWriter(trace));
+        sendError(trace.toString());
+      }
+
+      channel.println("DONE " + Statistics.statJPFTraceCount + " "
+          + Statistics.statMessageDeliveryFailCount + " "
+          + Statistics.statAbortedTraceCount + " "
+          + Statistics.statMessageDeliveryCount + " "
+          + Statistics.statMessageSendCount + " "
+          + Statistics.statActorCreateCount + " "
+          + Statistics.statActorDestroyedCount + " "
+          + Statistics.statActorTerminatedCount + " "
+          + Statistics.statDeadlocks + " " + errors);
+      channel.flush();
+    }
+    prefix = null;
+  }
+
+  /***********************************************************/
+  // the error, and the transitions (from the initial state, i.e. including
+  // the replayed prefix) that lead to it
+  static void sendError(gov.nasa.jpf.Error e) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("error #" + e.getId() + ": ");
+    sb.append(e.getDescription());
+    sb.append('\n');
+    if (e.getDetails() != null) {
+      sb.append(e.getDetails());
+      sb.append('\n');
+    }
+    int i = 0;
+    for (Transition t : e.getPath()) {
+      sb.append("transition #" + i++ + " thread: " + t.getThreadIndex());
+      sb.append('\n');
+      sb.append(t.getChoiceGenerator());
+      sb.append('\n');
+    }
+    sendError(sb.toString());
+  }
+
+  static void sendError(String text) {
+    for (String line : text.split("\r?\n")) {
+      channel.println("ERROR " + line);
+    }
+    channel.flush();
+  }
+
+  /***********************************************************/
+  static String encode(int[] path, int choice) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < path.length; i++) {
+      sb.append(path[i]);
+      sb.append(',');
+    }
+    sb.append(choice);
+    return sb.toString();
+  }
+
+  static int[] decode(String s) {
+    if (s.equals("-"))
+      return new int[0];
+    String[] parts = s.split(",");
+    int[] path = new int[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      path[i] = Integer.parseInt(parts[i]);
+    }
+    return path;
+  }
+
+}
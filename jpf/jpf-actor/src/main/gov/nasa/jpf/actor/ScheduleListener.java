@@ -0,0 +1,158 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.search.Search;
+
+/**
+ * Records the message deliveries of the current path, and writes them to
+ * basset.schedule.file (default basset.schedule) when a property is
+ * violated, e.g.:
+ * 
+ *   bin/jpf +listener+=,.actor.ScheduleListener +basset.dpor=3
+ *           gov.nasa.jpf.actor.Basset fibonacci.Driver 5
+ * 
+ * The counterexample is then reproduced without any search with
+ * 
+ *   bin/jpf +basset.schedule.replay=basset.schedule
+ *           gov.nasa.jpf.actor.Basset fibonacci.Driver 5
+ * 
+ * A schedule is a text file with one delivery per line: the message id, the
+ * receiver, the sender and the message label (the method for ActorFoundry),
+ * separated by tabs. Lines starting with '#' are comments. In replay mode
+ * each delivery is the enabled message that matches the next line, the id
+ * is only used to choose between several matching messages. While the next
+ * line has no enabled match, and once the schedule is exhausted, messages
+ * are delivered in the order in which they were sent (each such deviation
+ * is reported). So lines can simply be removed from a schedule, e.g. to
+ * minimize it with delta debugging.
+ */
+public class ScheduleListener extends ListenerAdapter {
+
+  // the listener of the current search, deliveries are reported to it
+  static ScheduleListener recorder;
+
+  File file;
+  String subject;
+
+  // the deliveries of the current path, and the length of the path at each
+  List<String> deliveries = new ArrayList<String>();
+  List<Integer> depths = new ArrayList<Integer>();
+
+  /***********************************************************/
+  public void searchStarted(Search search) {
+    Config config = search.getConfig();
+    file = new File(config.getString("basset.schedule.file", "basset.schedule"));
+    subject = config.getTarget() + " "
+        + Arrays.toString(config.getTargetArgs());
+    deliveries.clear();
+    depths.clear();
+    recorder = this;
+  }
+
+  public void searchFinished(Search search) {
+    recorder = null;
+  }
+
+  /***********************************************************/
+  static boolean isRecording() {
+    return recorder != null;
+  }
+
+  // deliveries are made within a transition, so they belong to the path of
+  // the state it started from
+  static void delivered(JVM vm, int id, String receiver, String sender,
+                        String label) {
+    recorder.deliveries.add(id + "\t" + receiver + "\t" + sender + "\t"
+        + label);
+    recorder.depths.add(vm.getPathLength());
+  }
+
+  public void stateBacktracked(Search search) {
+    // the transitions from this state are executed again
+    int depth = search.getVM().getPathLength();
+    int n = depths.size();
+    while (n > 0 && depths.get(n - 1) >= depth)
+      n--;
+    deliveries.subList(n, deliveries.size()).clear();
+    depths.subList(n, depths.size()).clear();
+  }
+
+  public void stateRestored(Search search) {
+    stateBacktracked(search);
+  }
+
+  /***********************************************************/
+  public void propertyViolated(Search search) {
+    try {
+      write();
+      System.out.println("Basset schedule of " + deliveries.size()
+          + " deliveries written to " + file + ", replay with "
+          + "+basset.schedule.replay=" + file);
+    } catch (IOException e) {
+      System.err.println("cannot write schedule " + file + ": "
+          + e.getMessage());
+    }
+  }
+
+  void write() throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(file));
+    try {
+      out.println("# basset schedule: " + subject);
+      out.println("# id\treceiver\tsender\tlabel");
+      for (String d : deliveries)
+        out.println(d);
+    } finally {
+      out.close();
+    }
+    if (out.checkError())
+      throw new IOException("write failed");
+  }
+
+  /***********************************************************/
+  // the deliveries of a schedule file, without the comments
+  static String[] read(File file) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.length() > 0 && !line.startsWith("#"))
+          lines.add(line);
+      }
+    } finally {
+      in.close();
+    }
+    return lines.toArray(new String[lines.size()]);
+  }
+
+}
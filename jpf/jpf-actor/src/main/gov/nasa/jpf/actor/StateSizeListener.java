@@ -0,0 +1,88 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor;
+
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.jvm.ElementInfo;
+import gov.nasa.jpf.jvm.Heap;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.search.Search;
+
+/**
+ * Measures how big the program states of an exploration are. This is meant
+ * for benchmarking (see the 'benchmark' script) and is not needed for
+ * regular Basset runs, since it serializes every state.
+ * 
+ * For each new state it records the length of the serialized state (in
+ * ints), the number of live heap objects and the approximate heap size (in
+ * bytes). The averages and maxima are printed when the search finishes,
+ * together with the elapsed time of the search.
+ */
+public class StateSizeListener extends ListenerAdapter {
+
+  long started;
+  long states;
+  long totalSerialized, maxSerialized;
+  long totalObjects, maxObjects;
+  long totalBytes, maxBytes;
+
+  public void searchStarted(Search search) {
+    started = System.currentTimeMillis();
+  }
+
+  public void stateAdvanced(Search search) {
+    if (!search.isNewState())
+      return;
+
+    JVM vm = search.getVM();
+    int serialized = vm.getSerializer().getStoringData().length;
+
+    Heap heap = vm.getHeap();
+    int objects = heap.size();
+    int bytes = 0;
+    for (ElementInfo ei : heap.liveObjects()) {
+      bytes += ei.getHeapSize();
+    }
+
+    states++;
+    totalSerialized += serialized;
+    maxSerialized = Math.max(maxSerialized, serialized);
+    totalObjects += objects;
+    maxObjects = Math.max(maxObjects, objects);
+    totalBytes += bytes;
+    maxBytes = Math.max(maxBytes, bytes);
+  }
+
+  public void searchFinished(Search search) {
+    long elapsed = System.currentTimeMillis() - started;
+    long n = Math.max(states, 1);
+
+    System.out
+        .println("====================================================== basset state size");
+    System.out.println("@@@@@@   # of states measured: " + states);
+    System.out.println("@@@@@@   serialized state (ints): avg="
+        + (totalSerialized / n) + " max=" + maxSerialized);
+    System.out.println("@@@@@@   live heap objects: avg=" + (totalObjects / n)
+        + " max=" + maxObjects);
+    System.out.println("@@@@@@   heap size (bytes): avg=" + (totalBytes / n)
+        + " max=" + maxBytes);
+    System.out.println("@@@@@@   search time (ms): " + elapsed);
+  }
+
+}
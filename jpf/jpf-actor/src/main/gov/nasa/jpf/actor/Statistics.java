@@ -27,20 +27,20 @@ package gov.nasa.jpf.actor;
  */
 public class Statistics {
 
-  public static int statActorCreateCount = 0;
-  public static int statActorDestroyedCount = 0;
-  public static int statActorTerminatedCount = 0;
-  public static int statJPFTraceCount = 0;
-  public static int statMessageSendCount = 0;
-  public static int statMessageDeliveryCount = 0;
-  public static int statMessageDeliveryFailCount = 0;
-  public static int statDeadlocks = 0;
-  public static int statAbortedTraceCount = 0;
+  public static long statActorCreateCount = 0;
+  public static long statActorDestroyedCount = 0;
+  public static long statActorTerminatedCount = 0;
+  public static long statJPFTraceCount = 0;
+  public static long statMessageSendCount = 0;
+  public static long statMessageDeliveryCount = 0;
+  public static long statMessageDeliveryFailCount = 0;
+  public static long statDeadlocks = 0;
+  public static long statAbortedTraceCount = 0;
 
   /**
-   * Reset the statistic counts. This is useful when performing multiple
-   * explorations as part of a single execution, e.g., running multiple test
-   * cases
+   * Reset the statistic counts (and the Metrics). This is useful when
+   * performing multiple explorations as part of a single execution, e.g.,
+   * running multiple test cases
    */
   public static void resetExplorationStatistics() {
     statActorCreateCount = 0;
@@ -52,6 +52,7 @@ public class Statistics {
     statMessageDeliveryFailCount = 0;
     statDeadlocks = 0;
     statAbortedTraceCount = 0;
+    Metrics.reset();
   }
 
 }
@@ -0,0 +1,333 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gov.nasa.jpf.actor.Statistics;
+import gov.nasa.jpf.jvm.choice.IntIntervalGenerator;
+
+/**
+ * Choice Generator that returns integer values that correspond to messages that
+ * can be delivered to actors. The particular values that are returned (as well
+ * as how many) is determined dynamically as the exploration of an actor system
+ * proceeds.
+ * 
+ * This particular choice generator implements optimal dynamic partial order
+ * reduction with source sets and wakeup trees (see Abdulla, Aronis, Jonsson &
+ * Sagonas, 2014) for message deliveries. Two deliveries are dependent if they
+ * go to the same actor.
+ * 
+ * Each choice generator keeps the wakeup tree and the sleep set of its choice
+ * point. When the platform reports a delivery, the previous delivery to the
+ * same actor is looked up on the stack of choice generators. If the message
+ * was sent concurrently with that earlier delivery, the two deliveries race,
+ * and the sequence that reverses them is inserted into the wakeup tree of the
+ * choice point of the earlier delivery, unless its sleep set shows that an
+ * equivalent sequence was explored already.
+ * 
+ * Messages and actors are identified across paths by keys that don't depend
+ * on the interleaving (see Platform.getMessageKey and CoreActorName), since
+ * message and actor ids do. Actor ids are only used to look up vector clock
+ * entries on the current path.
+ * 
+ * A branch of a wakeup tree can turn out not to be executable when its choice
+ * point is reached, e.g. because the receiver of its first delivery is
+ * waiting on a reply. Races are only reversed if the first delivery of the
+ * reversal is enabled at the choice point of the earlier delivery, and the
+ * branches that are not executable further down the tree are skipped.
+ */
+public class DPORIntChoiceGeneratorOptimal extends IntIntervalGenerator
+    implements SleepSetChoiceGenerator {
+
+  private int min, max;
+  private int next;
+
+  private long[] enabledKeys;
+  private long[] receivers;
+
+  private WakeupTree wakeupTree; // children are the deliveries to explore
+  private boolean initialized = false;
+
+  // deliveries that need not be explored from here: inherited ones that are
+  // independent of the delivery chosen above, plus explored siblings
+  private long[] sleepKeys = new long[4];
+  private long[] sleepReceivers = new long[4];
+  private int sleepCount;
+  private int sleepSetHits;
+
+  // the delivery made for the current choice, as reported by the platform
+  private long deliveredKey;
+  private long deliveredReceiverKey;
+  private int deliveredReceiver = -1; // actor id, -1 if not delivered yet
+  private int[] receiptClock;
+
+  public void reset() {
+    next = -1;
+  }
+
+  public DPORIntChoiceGeneratorOptimal(String id, int min, int max,
+                                       long[] msgKeys, long[] receivers) {
+    super(id, min, max);
+
+    this.min = min;
+    this.max = max;
+    this.enabledKeys = msgKeys.clone();
+    this.receivers = receivers.clone();
+    reset();
+  }
+
+  /***********************************************************/
+  private void initialize() {
+    DPORIntChoiceGeneratorOptimal prev = previous(this);
+    if (prev != null && prev.next >= 0) {
+      // continue with the subtree of the delivery chosen above, whose
+      // sleeping deliveries stay asleep unless they are dependent on it
+      wakeupTree = prev.wakeupTree.getChild(prev.next);
+      for (int i = 0; i < prev.sleepCount; i++) {
+        if (prev.sleepReceivers[i] != prev.deliveredReceiverKey)
+          addToSleepSet(prev.sleepKeys[i], prev.sleepReceivers[i]);
+      }
+    } else {
+      wakeupTree = new WakeupTree();
+    }
+    for (int i = 0; i < enabledKeys.length; i++) {
+      if (isAsleep(enabledKeys[i]))
+        sleepSetHits++;
+    }
+
+    // nothing to wake up that can be executed here: pick the first delivery
+    // that is not asleep
+    if (nextFeasible(0) == wakeupTree.size()) {
+      int i = firstAwake();
+      if (i >= 0) {
+        wakeupTree.addChild(enabledKeys[i], receivers[i]);
+      } else {
+        Statistics.statAbortedTraceCount++;
+      }
+    }
+    initialized = true;
+  }
+
+  public int getSleepSetHits() {
+    return sleepSetHits;
+  }
+
+  private int firstAwake() {
+    for (int i = 0; i < enabledKeys.length; i++) {
+      if (!isAsleep(enabledKeys[i]))
+        return i;
+    }
+    return -1;
+  }
+
+  private boolean isAsleep(long key) {
+    for (int i = 0; i < sleepCount; i++) {
+      if (sleepKeys[i] == key)
+        return true;
+    }
+    return false;
+  }
+
+  private void addToSleepSet(long key, long receiver) {
+    if (sleepCount == sleepKeys.length) {
+      long[] k = new long[sleepCount * 2];
+      long[] r = new long[sleepCount * 2];
+      System.arraycopy(sleepKeys, 0, k, 0, sleepCount);
+      System.arraycopy(sleepReceivers, 0, r, 0, sleepCount);
+      sleepKeys = k;
+      sleepReceivers = r;
+    }
+    sleepKeys[sleepCount] = key;
+    sleepReceivers[sleepCount] = receiver;
+    sleepCount++;
+  }
+
+  /***********************************************************/
+  public Integer getNextChoice() {
+    if (!initialized) {
+      this.initialize();
+    }
+    if (next < 0)
+      return min;
+
+    // advance() only stops at children that are enabled
+    return indexOf(wakeupTree.getChild(next).key);
+  }
+
+  private int indexOf(long key) {
+    for (int i = 0; i < enabledKeys.length; i++) {
+      if (enabledKeys[i] == key)
+        return i;
+    }
+    return -1;
+  }
+
+  // the first child of the wakeup tree at or after the given position whose
+  // delivery is enabled here, or the number of children if there is none
+  private int nextFeasible(int from) {
+    int i = from;
+    while (i < wakeupTree.size() && indexOf(wakeupTree.getChild(i).key) < 0)
+      i++;
+    return i;
+  }
+
+  public boolean hasMoreChoices() {
+    if (!initialized) {
+      this.initialize();
+    }
+
+    if (isDone) {
+      return false;
+    }
+    return nextFeasible(next + 1) < wakeupTree.size();
+  }
+
+  public void advance() {
+    if (next >= 0) {
+      // the previous choice is fully explored
+      WakeupTree explored = wakeupTree.getChild(next);
+      addToSleepSet(explored.key, explored.receiver);
+      explored.release();
+    }
+    // children that are not enabled can't be explored from here
+    int n = nextFeasible(next + 1);
+    for (int i = next + 1; i < n && i < wakeupTree.size(); i++)
+      wakeupTree.getChild(i).release();
+    next = n;
+    deliveredReceiver = -1;
+    receiptClock = null;
+  }
+
+  public int getTotalNumberOfChoices() {
+    return (Math.abs(max - min) + 1);
+  }
+
+  public int getProcessedNumberOfChoices() {
+    return next + 1;
+  }
+
+  /***********************************************************/
+  // called by the platform once the message chosen here has been delivered
+  public void recordDelivery(long msgKey, long receiverKey, int receiverId,
+                             int[] receiptClock, int[] messageClock) {
+    this.deliveredKey = msgKey;
+    this.deliveredReceiverKey = receiverKey;
+    this.deliveredReceiver = receiverId;
+    this.receiptClock = receiptClock;
+
+    // find the previous delivery to the same actor; if the message was not
+    // sent after it, the two deliveries race
+    List<DPORIntChoiceGeneratorOptimal> between = new ArrayList<DPORIntChoiceGeneratorOptimal>();
+    DPORIntChoiceGeneratorOptimal cg = previous(this);
+    while (cg != null && cg.deliveredReceiver != receiverId) {
+      between.add(cg);
+      cg = previous(cg);
+    }
+    if (cg == null)
+      return;
+
+    int own = WakeupSequence.clockEntry(cg.receiptClock, receiverId);
+    if (WakeupSequence.clockEntry(messageClock, receiverId) >= own)
+      return;
+
+    cg.addWakeupSequence(reversal(between, own, messageClock));
+  }
+
+  // notdep(e1, E).e2: the deliveries after the earlier delivery e1 that do
+  // not happen after it, followed by the delivery that raced with it
+  private WakeupSequence reversal(List<DPORIntChoiceGeneratorOptimal> between,
+                                  int own, int[] messageClock) {
+    int n = 0;
+    for (int i = between.size() - 1; i >= 0; i--) {
+      DPORIntChoiceGeneratorOptimal cg = between.get(i);
+      if (!happensAfter(cg, own))
+        n++;
+    }
+
+    long[] keys = new long[n + 1];
+    long[] recv = new long[n + 1];
+    int[] ids = new int[n + 1];
+    int[][] clocks = new int[n + 1][];
+    int k = 0;
+    for (int i = between.size() - 1; i >= 0; i--) {
+      DPORIntChoiceGeneratorOptimal cg = between.get(i);
+      if (!happensAfter(cg, own)) {
+        keys[k] = cg.deliveredKey;
+        recv[k] = cg.deliveredReceiverKey;
+        ids[k] = cg.deliveredReceiver;
+        clocks[k] = cg.receiptClock;
+        k++;
+      }
+    }
+    keys[n] = deliveredKey;
+    recv[n] = deliveredReceiverKey;
+    ids[n] = deliveredReceiver;
+    clocks[n] = messageClock;
+
+    return new WakeupSequence(keys, recv, ids, clocks);
+  }
+
+  // whether the delivery made at the given choice generator happens after
+  // the delivery to this choice generator's receiver with the given own
+  // clock entry; choice generators without a delivery are skipped
+  private boolean happensAfter(DPORIntChoiceGeneratorOptimal cg, int own) {
+    return cg.receiptClock == null
+        || WakeupSequence.clockEntry(cg.receiptClock, deliveredReceiver) >= own;
+  }
+
+  private static DPORIntChoiceGeneratorOptimal previous(DPORIntChoiceGeneratorOptimal cg) {
+    return cg.getPreviousChoiceGeneratorOfType(DPORIntChoiceGeneratorOptimal.class);
+  }
+
+  // inserts a race reversing sequence into the wakeup tree of this choice
+  // point, unless it can't start here, e.g. because the receiver of its
+  // first delivery is waiting on a reply, or a sleeping delivery shows it to
+  // be redundant
+  private void addWakeupSequence(WakeupSequence v) {
+    if (indexOf(v.getKey(0)) < 0)
+      return;
+    for (int i = 0; i < sleepCount; i++) {
+      if (v.weakInitial(sleepKeys[i], sleepReceivers[i]) >= 0)
+        return;
+    }
+    wakeupTree.insert(v, next + 1);
+  }
+
+  /***********************************************************/
+  public String toString() {
+    StringBuilder sb = new StringBuilder(getClass().getName());
+    if (id == null) {
+      sb.append('[');
+    } else {
+      sb.append("[id=\"");
+      sb.append(id);
+      sb.append("\",");
+    }
+    sb.append(min);
+    sb.append("..");
+    sb.append(max);
+    sb.append(",cur=");
+    sb.append(getNextChoice());
+    sb.append(']');
+    return sb.toString();
+  }
+
+}
@@ -100,6 +100,32 @@ public class DPORIntChoiceGeneratorPersistent extends IntIntervalGenerator { //I
     addToSet(receiverId);
   }
 
+  // the persistent set as positions into the enabled set, in the order in
+  // which they are explored (used by the CheckpointListener)
+  public int[] getPersistentSet() {
+    int[] positions = new int[persistentSet.size()];
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = persistentSet.get(i);
+    }
+    return positions;
+  }
+
+  // extends the persistent set to the given one, returns false (and leaves
+  // the set alone) if that does not start with the current persistent set
+  public boolean restorePersistentSet(int[] positions) {
+    int n = persistentSet.size();
+    if (positions.length < n)
+      return false;
+    for (int i = 0; i < n; i++) {
+      if (persistentSet.get(i) != positions[i])
+        return false;
+    }
+    for (int i = n; i < positions.length; i++) {
+      persistentSet.add(positions[i]);
+    }
+    return true;
+  }
+
   public boolean hasMoreChoices() {
     if (isDone) {
       return false;
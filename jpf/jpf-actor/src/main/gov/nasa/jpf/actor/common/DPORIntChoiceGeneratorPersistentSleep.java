@@ -18,12 +18,6 @@
 //
 package gov.nasa.jpf.actor.common;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
 //import gov.nasa.jpf.jvm.IntChoiceGenerator;
 import gov.nasa.jpf.jvm.choice.IntIntervalGenerator;
 
@@ -41,19 +35,20 @@ import gov.nasa.jpf.jvm.choice.IntIntervalGenerator;
  * @author Rajesh K. Karmani (rkumar8@illinois.edu)
  * 
  */
-public class DPORIntChoiceGeneratorPersistentSleep extends IntIntervalGenerator { //IntChoiceGenerator {
+public class DPORIntChoiceGeneratorPersistentSleep extends IntIntervalGenerator //IntChoiceGenerator
+    implements SleepSetChoiceGenerator {
 
   boolean expandOnlyOnce = false;
   boolean persistentSetExpanded = false;
   int min, max;
   int next;
 
-  int[] enabledSet;
-  int[] receivers;
+  EnabledMessages enabled;
 
-  List<Integer> persistentSet; // contains ids of msgs into enabledSet
-  Set<Integer> sleepSet; // contains ids of msgs
+  PersistentSet persistentSet; // contains ids of msgs into enabledSet
+  SleepSet sleepSet; // contains ids of msgs
   int lastChosenMessage, lastChosenActor;
+  int sleepSetHits;
   boolean initialized = false;
 
   public void reset() {
@@ -69,14 +64,12 @@ public class DPORIntChoiceGeneratorPersistentSleep extends IntIntervalGenerator
     this.min = min;
     this.max = max;
     this.expandOnlyOnce = expandOnlyOnce;
-    this.enabledSet = Arrays.copyOf(msgIds, msgIds.length);
-    this.receivers = Arrays.copyOf(receivers, receivers.length);
-    this.persistentSet = new ArrayList<Integer>();
-    this.sleepSet = new HashSet<Integer>();
+    this.enabled = new EnabledMessages(msgIds, receivers);
+    this.persistentSet = new PersistentSet(enabled);
     reset();
   }
 
-  public Set<Integer> getSleepSet() {
+  SleepSet getSleepSet() {
     return sleepSet;
   }
 
@@ -92,9 +85,11 @@ public class DPORIntChoiceGeneratorPersistentSleep extends IntIntervalGenerator
   // of the actor into persistent set
   private boolean addToSet(int actorToAdd) {
     boolean result = false;
-    for (int i = 0; i < enabledSet.length; i++) {
-      if (receivers[i] == actorToAdd && !sleepSet.contains(enabledSet[i])) {
-        persistentSet.add(enabledSet[i]);
+    int end = enabled.endOf(actorToAdd);
+    for (int k = enabled.firstOf(actorToAdd); k < end; k++) {
+      int msgId = enabled.getMessageId(enabled.byReceiverPosition(k));
+      if (!sleepSet.contains(msgId)) {
+        persistentSet.add(msgId);
         result = true;
       }
     }
@@ -102,10 +97,9 @@ public class DPORIntChoiceGeneratorPersistentSleep extends IntIntervalGenerator
   }
 
   private void removeFromSleepSet(int actorToAdd) {
-    for (int i = 0; i < enabledSet.length; i++) {
-      if (receivers[i] == actorToAdd) {
-        sleepSet.remove(enabledSet[i]);
-      }
+    int end = enabled.endOf(actorToAdd);
+    for (int k = enabled.firstOf(actorToAdd); k < end; k++) {
+      sleepSet.remove(enabled.getMessageId(enabled.byReceiverPosition(k)));
     }
   }
 
@@ -114,29 +108,46 @@ public class DPORIntChoiceGeneratorPersistentSleep extends IntIntervalGenerator
   // I am committing it for the present. Perhaps, Rajesh can shed some light on its correctness.
   //    -Steve
   private void initialize() {
-    if (this.getPreviousChoiceGeneratorOfType(this.getClass()) != null
-	&& (this.getPreviousChoiceGeneratorOfType(this.getClass()) instanceof DPORIntChoiceGeneratorPersistentSleep)) {
-      this.sleepSet.addAll(((DPORIntChoiceGeneratorPersistentSleep) (this.
-        getPreviousChoiceGeneratorOfType(this.getClass()))).getSleepSet());
-      removeFromSleepSet(((DPORIntChoiceGeneratorPersistentSleep) (this.
-        getPreviousChoiceGeneratorOfType(this.getClass()))).getLastChosenActor());
+    Object prev = this.getPreviousChoiceGeneratorOfType(this.getClass());
+    if (prev instanceof DPORIntChoiceGeneratorPersistentSleep) {
+      // start out with (a copy-on-write share of) the predecessor's sleep set
+      DPORIntChoiceGeneratorPersistentSleep prevCG =
+          (DPORIntChoiceGeneratorPersistentSleep) prev;
+      this.sleepSet = prevCG.getSleepSet().share();
+      removeFromSleepSet(prevCG.getLastChosenActor());
       // remaining: getLastchosenactor and removes all its messages
+    } else {
+      this.sleepSet = new SleepSet();
     }
+    sleepSetHits = countAsleep();
 
     // nondeterministic choice: pick the first one which is not in the sleep set
     int i = 0;
-    int actorToAdd = receivers[i];
+    int actorToAdd = enabled.getReceiver(i);
     while (!addToSet(actorToAdd)) {
-      if ((++i) == receivers.length) {
+      if ((++i) == enabled.size()) {
         System.err.println("Nothing enabled. Aborted Path!!!!!!!!!!!!");
         // Stat.incStatAbortedTraceCount();
         break;
       }
-      actorToAdd = receivers[i];
+      actorToAdd = enabled.getReceiver(i);
     }
     initialized = true;
   }
 
+  private int countAsleep() {
+    int count = 0;
+    for (int i = 0; i < enabled.size(); i++) {
+      if (sleepSet.contains(enabled.getMessageId(i)))
+        count++;
+    }
+    return count;
+  }
+
+  public int getSleepSetHits() {
+    return sleepSetHits;
+  }
+
   public Integer getNextChoice() {
     if (!initialized) {
       this.initialize();
@@ -145,16 +156,13 @@ public class DPORIntChoiceGeneratorPersistentSleep extends IntIntervalGenerator
     sleepSet.add(choice);
     lastChosenMessage = choice;
 
-    for (int i = 0; i < enabledSet.length; i++) {
-      if (enabledSet[i] == choice) {
-        if (lastChosenActor != receivers[i])
-          persistentSetExpanded = false;
-        lastChosenActor = receivers[i];
-        return i;
-      }
+    int i = enabled.indexOf(choice);
+    if (i >= 0) {
+      if (lastChosenActor != enabled.getReceiver(i))
+        persistentSetExpanded = false;
+      lastChosenActor = enabled.getReceiver(i);
     }
-
-    return -1; // returns id of a message
+    return i; // -1 if the message is not enabled here
   }
 
   public void addToPersistentSet(int messageId, int receiverId) {
@@ -21,12 +21,6 @@ package gov.nasa.jpf.actor.common;
 //import gov.nasa.jpf.jvm.IntChoiceGenerator;
 import gov.nasa.jpf.jvm.choice.IntIntervalGenerator;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
 /**
  * Choice Generator that returns integer values that correspond to messages that
  * can be delivered to actors. The particular values that are returned (as well
@@ -41,18 +35,19 @@ import java.util.Set;
  * @author Rajesh K. Karmani (rkumar8@illinois.edu)
  * 
  */
-public class DPORIntChoiceGeneratorTransistentSleep extends IntIntervalGenerator { //IntChoiceGenerator {
+public class DPORIntChoiceGeneratorTransistentSleep extends IntIntervalGenerator //IntChoiceGenerator
+    implements SleepSetChoiceGenerator {
 
   private boolean persistentSetExpanded = false;
   private int min, max;
   private int next;
 
-  private int[] enabledSet;
-  private int[] receivers;
+  private EnabledMessages enabled;
 
-  private List<Integer> persistentSet; // contains ids of msgs into enabledSet
-  private Set<Integer> sleepSet; // contains ids of msgs
+  private PersistentSet persistentSet; // contains ids of msgs into enabledSet
+  private SleepSet sleepSet; // contains ids of msgs
   private int lastChosenMessage, lastChosenActor;
+  private int sleepSetHits;
   private boolean initialized = false;
 
   public void reset() {
@@ -62,19 +57,17 @@ public class DPORIntChoiceGeneratorTransistentSleep extends IntIntervalGenerator
   public DPORIntChoiceGeneratorTransistentSleep(String id, int min, int max,
                                                 int[] msgIds, int[] receivers,
                                                 boolean expandOnlyOnce) {
-    super(null,min,max);
+    super(id,min,max);
 
     // assert msgIds.length == receivers.length;
     this.min = min;
     this.max = max;
-    this.enabledSet = Arrays.copyOf(msgIds, msgIds.length);
-    this.receivers = Arrays.copyOf(receivers, receivers.length);
-    this.persistentSet = new ArrayList<Integer>();
-    this.sleepSet = new HashSet<Integer>();
+    this.enabled = new EnabledMessages(msgIds, receivers);
+    this.persistentSet = new PersistentSet(enabled);
     reset();
   }
 
-  public Set<Integer> getSleepSet() {
+  SleepSet getSleepSet() {
     return sleepSet;
   }
 
@@ -87,36 +80,53 @@ public class DPORIntChoiceGeneratorTransistentSleep extends IntIntervalGenerator
   }
 
   private void removeFromSleepSet(int actorToAdd) {
-    for (int i = 0; i < enabledSet.length; i++) {
-      if (receivers[i] == actorToAdd) {
-        sleepSet.remove(enabledSet[i]);
-      }
+    int end = enabled.endOf(actorToAdd);
+    for (int k = enabled.firstOf(actorToAdd); k < end; k++) {
+      sleepSet.remove(enabled.getMessageId(enabled.byReceiverPosition(k)));
     }
   }
 
   private void initialize() {
-    if (this.getPreviousChoiceGeneratorOfType(this.getClass()) != null
-    		&& (this.getPreviousChoiceGeneratorOfType(this.getClass()) instanceof DPORIntChoiceGeneratorTransistentSleep)) {
-    	      this.sleepSet.addAll(((DPORIntChoiceGeneratorTransistentSleep) (this.
-    	        getPreviousChoiceGeneratorOfType(this.getClass()))).getSleepSet());
-    	      removeFromSleepSet(((DPORIntChoiceGeneratorTransistentSleep) (this.
-    	        getPreviousChoiceGeneratorOfType(this.getClass()))).getLastChosenActor());
-    	      // remaining: getLastchosenactor and removes all its messages
-    	    }
+    Object prev = this.getPreviousChoiceGeneratorOfType(this.getClass());
+    if (prev instanceof DPORIntChoiceGeneratorTransistentSleep) {
+      // start out with (a copy-on-write share of) the predecessor's sleep set
+      DPORIntChoiceGeneratorTransistentSleep prevCG =
+          (DPORIntChoiceGeneratorTransistentSleep) prev;
+      this.sleepSet = prevCG.getSleepSet().share();
+      removeFromSleepSet(prevCG.getLastChosenActor());
+      // remaining: getLastchosenactor and removes all its messages
+    } else {
+      this.sleepSet = new SleepSet();
+    }
+    sleepSetHits = countAsleep();
 
     // nondeterministic choice: pick the first one which is not in the sleep
     // set
+    int n = enabled.size();
     int i = 0;
-    while (sleepSet.contains(enabledSet[i]) && (++i) < receivers.length)
+    while (sleepSet.contains(enabled.getMessageId(i)) && (++i) < n)
       ;
-    if (i == receivers.length) {
+    if (i == n) {
       System.err.println("Nothing enabled. Aborted Path!!!!!!!!!!!!");
     } else
-      persistentSet.add(enabledSet[i]);
+      persistentSet.add(enabled.getMessageId(i));
 
     initialized = true;
   }
 
+  private int countAsleep() {
+    int count = 0;
+    for (int i = 0; i < enabled.size(); i++) {
+      if (sleepSet.contains(enabled.getMessageId(i)))
+        count++;
+    }
+    return count;
+  }
+
+  public int getSleepSetHits() {
+    return sleepSetHits;
+  }
+
   public Integer getNextChoice() {
     if (!initialized) {
       this.initialize();
@@ -125,17 +135,14 @@ public class DPORIntChoiceGeneratorTransistentSleep extends IntIntervalGenerator
     sleepSet.add(choice);
     lastChosenMessage = choice;
 
-    for (int i = 0; i < enabledSet.length; i++) {
-      if (enabledSet[i] == choice) {
-        // if (lastChosenActor != receivers[i]) persistentSetExpanded =
-        // false;
-        persistentSetExpanded = false;
-        lastChosenActor = receivers[i];
-        return i;
-      }
+    int i = enabled.indexOf(choice);
+    if (i >= 0) {
+      // if (lastChosenActor != receivers[i]) persistentSetExpanded =
+      // false;
+      persistentSetExpanded = false;
+      lastChosenActor = enabled.getReceiver(i);
     }
-
-    return -1; // returns id of a message
+    return i; // -1 if the message is not enabled here
   }
 
   public void addToTransistentSet(int messageId, int receiverId) {
@@ -150,7 +157,7 @@ public class DPORIntChoiceGeneratorTransistentSleep extends IntIntervalGenerator
     // Remove the last one if you had already expanded
     // to make place for a new actors
     if (persistentSetExpanded)
-      persistentSet.remove(persistentSet.size() - 1);
+      persistentSet.removeLast();
     persistentSet.add(messageId);
     persistentSetExpanded = true;
   }
@@ -0,0 +1,143 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.common;
+
+import gov.nasa.jpf.jvm.ClassInfo;
+import gov.nasa.jpf.jvm.JPF_java_lang_reflect_Method;
+import gov.nasa.jpf.jvm.MJIEnv;
+import gov.nasa.jpf.jvm.MethodInfo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Resolves the method that handles a message sent to an ActorFoundry actor,
+ * i.e. the first public method of the actor's class with the message name
+ * whose parameters accept the message arguments. This used to be done in
+ * the model by comparing the parameter types of all methods with that name
+ * on every delivery.
+ * 
+ * Which method matches only depends on the class of the actor, the message
+ * name and the classes of the arguments (null matches any reference
+ * parameter), so the result is cached for that key as an index into the
+ * array returned by the actor's Class.getMethods(), which is the same for
+ * all actors of a class.
+ */
+public final class DispatchCache {
+
+  public static final int NOT_FOUND = -1;
+
+  private final HashMap<Key, Integer> cache = new HashMap<Key, Integer>();
+
+  /***********************************************************/
+  private static final class Key {
+    final ClassInfo target;
+    final String name;
+    final ClassInfo[] argTypes;
+    final int hash;
+
+    Key(ClassInfo target, String name, ClassInfo[] argTypes) {
+      this.target = target;
+      this.name = name;
+      this.argTypes = argTypes;
+      this.hash = (target.hashCode() * 31 + name.hashCode()) * 31
+          + Arrays.hashCode(argTypes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key))
+        return false;
+      Key that = (Key) o;
+      return target == that.target && name.equals(that.name)
+          && Arrays.equals(argTypes, that.argTypes);
+    }
+  }
+
+  /***********************************************************/
+  // returns the index of the handler in 'methodsRef', or NOT_FOUND
+  public int findHandler(MJIEnv env, int targetRef, int methodsRef,
+                         String name, int argsRef) {
+    int nArgs = env.getArrayLength(argsRef);
+    ClassInfo[] argTypes = new ClassInfo[nArgs];
+    for (int i = 0; i < nArgs; i++) {
+      int argRef = env.getReferenceArrayElement(argsRef, i);
+      if (argRef != MJIEnv.NULL)
+        argTypes[i] = env.getClassInfo(argRef);
+    }
+
+    Key key = new Key(env.getClassInfo(targetRef), name, argTypes);
+    Integer index = cache.get(key);
+    if (index == null) {
+      index = resolve(env, methodsRef, name, argTypes);
+      cache.put(key, index);
+    }
+    return index;
+  }
+
+  /***********************************************************/
+  // same matching as the original BasicActorImpl.searchForMethod
+  private static int resolve(MJIEnv env, int methodsRef, String name,
+                             ClassInfo[] argTypes) {
+    int nMethods = env.getArrayLength(methodsRef);
+    for (int m = 0; m < nMethods; m++) {
+      int methodRef = env.getReferenceArrayElement(methodsRef, m);
+      MethodInfo mi = JPF_java_lang_reflect_Method
+          .getMethodInfo(env, methodRef);
+
+      // ignore methods of java.lang.Object
+      if (!mi.getName().equals(name)
+          || mi.getClassInfo().getName().equalsIgnoreCase("java.lang.Object"))
+        continue;
+
+      String[] paramTypes = mi.getArgumentTypeNames();
+      if (paramTypes.length == argTypes.length
+          && accepts(paramTypes, argTypes))
+        return m;
+    }
+    return NOT_FOUND;
+  }
+
+  private static boolean accepts(String[] paramTypes, ClassInfo[] argTypes) {
+    for (int i = 0; i < argTypes.length; i++) {
+      ClassInfo paramType = ClassInfo.getResolvedClassInfo(paramTypes[i]);
+      if (paramType.isPrimitive()) {
+        if (argTypes[i] == null) {
+          return false;
+        } else if (paramTypes[i].equals("int")
+            && !argTypes[i].getName().equals("java.lang.Integer")) {
+          return false;
+        } else if (paramTypes[i].equals("long")
+            && !argTypes[i].getName().equals("java.lang.Long")) {
+          return false;
+        } // add more primitives as needed
+      } else if (argTypes[i] != null
+          && !argTypes[i].isInstanceOf(paramType.getName())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,108 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.common;
+
+import java.util.Arrays;
+
+/**
+ * The messages that are enabled at a DPOR choice point, i.e. the message ids
+ * and receiver ids that Cloud passes to the choice generator, indexed so that
+ * the position of a message and the positions of all messages to one receiver
+ * can be found without scanning.
+ * 
+ * Both indexes are single sorted long arrays of (key, position) pairs, which
+ * keeps the footprint per choice generator at two words per message.
+ */
+final class EnabledMessages {
+
+  private final int[] msgIds;
+  private final int[] receivers;
+
+  // (message id << 32 | position), sorted
+  private final long[] byId;
+  // (receiver id << 32 | position), sorted; groups the positions of the
+  // messages to one receiver in ascending order
+  private final long[] byReceiver;
+
+  EnabledMessages(int[] msgIds, int[] receivers) {
+    int n = msgIds.length;
+    this.msgIds = Arrays.copyOf(msgIds, n);
+    this.receivers = Arrays.copyOf(receivers, n);
+
+    byId = new long[n];
+    byReceiver = new long[n];
+    for (int i = 0; i < n; i++) {
+      byId[i] = ((long) msgIds[i] << 32) | i;
+      byReceiver[i] = ((long) receivers[i] << 32) | i;
+    }
+    Arrays.sort(byId);
+    Arrays.sort(byReceiver);
+  }
+
+  int size() {
+    return msgIds.length;
+  }
+
+  int getMessageId(int position) {
+    return msgIds[position];
+  }
+
+  int getReceiver(int position) {
+    return receivers[position];
+  }
+
+  // returns the position of the given message, or -1 if it is not enabled
+  int indexOf(int msgId) {
+    int k = lowerBound(byId, msgId);
+    if (k < byId.length && (int) (byId[k] >>> 32) == msgId) {
+      return (int) byId[k];
+    }
+    return -1;
+  }
+
+  // the messages to a receiver are byReceiverPosition(k) for
+  // firstOf(receiver) <= k < endOf(receiver)
+  int firstOf(int receiver) {
+    return lowerBound(byReceiver, receiver);
+  }
+
+  int endOf(int receiver) {
+    return lowerBound(byReceiver, receiver + 1);
+  }
+
+  int byReceiverPosition(int k) {
+    return (int) byReceiver[k];
+  }
+
+  // index of the first entry whose key is not less than the given key
+  private static int lowerBound(long[] entries, int key) {
+    long k = (long) key << 32;
+    int lo = 0;
+    int hi = entries.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (entries[mid] < k) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+}
@@ -0,0 +1,94 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.common;
+
+/**
+ * The ids of the messages that a sleep set choice generator has to explore,
+ * in the order in which they are returned.
+ * 
+ * Membership is tracked with a bitset over the positions of the enabled
+ * messages. Messages that are not enabled at the choice point (which the
+ * transistent choice generators may be asked to add) are only found by a
+ * scan of the ids.
+ */
+final class PersistentSet {
+
+  private final EnabledMessages enabled;
+
+  private int[] ids = new int[2];
+  private int size;
+
+  // bit i is set if the message at position i of the enabled messages is in
+  // the set
+  private final long[] members;
+
+  PersistentSet(EnabledMessages enabled) {
+    this.enabled = enabled;
+    this.members = new long[(enabled.size() + 63) >>> 6];
+  }
+
+  /***********************************************************/
+  int size() {
+    return size;
+  }
+
+  int get(int k) {
+    return ids[k];
+  }
+
+  boolean contains(int msgId) {
+    int i = enabled.indexOf(msgId);
+    if (i >= 0) {
+      return (members[i >>> 6] & (1L << i)) != 0;
+    }
+    return find(msgId) >= 0;
+  }
+
+  /***********************************************************/
+  void add(int msgId) {
+    if (size == ids.length) {
+      int[] a = new int[size * 2];
+      System.arraycopy(ids, 0, a, 0, size);
+      ids = a;
+    }
+    ids[size++] = msgId;
+
+    int i = enabled.indexOf(msgId);
+    if (i >= 0) {
+      members[i >>> 6] |= 1L << i;
+    }
+  }
+
+  void removeLast() {
+    int msgId = ids[--size];
+    int i = enabled.indexOf(msgId);
+    if (i >= 0 && find(msgId) < 0) {
+      members[i >>> 6] &= ~(1L << i);
+    }
+  }
+
+  private int find(int msgId) {
+    for (int k = 0; k < size; k++) {
+      if (ids[k] == msgId) {
+        return k;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,152 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.common;
+
+import java.util.Arrays;
+
+import gov.nasa.jpf.actor.ParallelWorker;
+import gov.nasa.jpf.jvm.choice.IntIntervalGenerator;
+
+/**
+ * Choice Generator used by a parallel worker (see ParallelWorker) for the
+ * message delivery choice points that lie on the prefix of its work item.
+ * 
+ * It returns exactly one value: the choice the prefix prescribes, or, for a
+ * choice point the worker has been told to split, the first choice the
+ * replaced choice generator would have returned. All other choices of the
+ * choice point are handed back to the coordinator as new work items: the
+ * initial ones when a split choice point is created, and the ones added
+ * later by the persistent set DPOR (addToPersistentSet) whenever they are
+ * found.
+ * 
+ * A worker splits the choice points below its prefix until it has split
+ * as many of them with more than one enabled message as it has been told
+ * to (see ParallelWorker.getSplitDepth). A null receivers array stands for a
+ * choice point without DPOR, i.e. one that explores all values between min
+ * and max.
+ */
+public class PrefixIntChoiceGenerator extends IntIntervalGenerator {
+
+  int[] path;    // the choices made at the delivery choice points above
+  int splits;    // the choice points split so far, including this one
+  int choice;
+  int min, max;
+  int[] receivers;
+
+  /***********************************************************/
+  // returns null if the choice point below the given one (which is null at
+  // the first choice point) is beyond the prefix and the split choice points
+  public static PrefixIntChoiceGenerator create(String id,
+                                                PrefixIntChoiceGenerator parent,
+                                                int min, int max,
+                                                int[] receivers) {
+    int[] path = new int[0];
+    int splits = 0;
+    if (parent != null) {
+      path = Arrays.copyOf(parent.path, parent.path.length + 1);
+      path[parent.path.length] = parent.choice;
+      splits = parent.splits;
+    }
+
+    if (path.length >= ParallelWorker.getPrefixLength()
+        && splits == ParallelWorker.getSplitDepth())
+      return null;
+    return new PrefixIntChoiceGenerator(id, path, splits, min, max, receivers);
+  }
+
+  PrefixIntChoiceGenerator(String id, int[] path, int splits, int min,
+                           int max, int[] receivers) {
+    super(id, min, max);
+
+    this.path = path;
+    this.splits = splits;
+    this.min = min;
+    this.max = max;
+    this.receivers = receivers;
+
+    int depth = path.length;
+    if (depth < ParallelWorker.getPrefixLength()) {
+      choice = ParallelWorker.getPrefixChoice(depth);
+    } else {
+      // split: keep the first branch and give away the rest
+      choice = min;
+      if (min < max)
+        this.splits++;
+      ParallelWorker.claim(path, choice);
+      for (int i = min + 1; i <= max; i++) {
+        if (receivers == null || receivers[i] == receivers[min]) {
+          ParallelWorker.donate(path, i);
+        }
+      }
+    }
+    reset();
+  }
+
+  public void reset() {
+    isDone = false;
+    next = choice - 1;
+  }
+
+  public Integer getNextChoice() {
+    return new Integer(next);
+  }
+
+  public boolean hasMoreChoices() {
+    return !isDone && next < choice;
+  }
+
+  public void advance() {
+    next = choice;
+  }
+
+  public void addToPersistentSet(int messageId, int receiverId) {
+    for (int i = min; i <= max; i++) {
+      if (receivers[i] == receiverId && i != choice) {
+        ParallelWorker.donate(path, i);
+      }
+    }
+  }
+
+  public int getTotalNumberOfChoices() {
+    return 1;
+  }
+
+  public int getProcessedNumberOfChoices() {
+    return (next < choice) ? 0 : 1;
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder(getClass().getName());
+    if (id == null) {
+      sb.append('[');
+    } else {
+      sb.append("[id=\"");
+      sb.append(id);
+      sb.append("\",");
+    }
+    sb.append(min);
+    sb.append("..");
+    sb.append(max);
+    sb.append(",cur=");
+    sb.append(getNextChoice());
+    sb.append(']');
+    return sb.toString();
+  }
+
+}
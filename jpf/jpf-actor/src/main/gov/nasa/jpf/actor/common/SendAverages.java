@@ -0,0 +1,69 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.common;
+
+/**
+ * The average number of messages an actor sends while processing a message,
+ * used by the "actor send average" ordering heuristic. Changes are recorded
+ * on an UndoTrail, i.e. the averages only reflect the current path.
+ */
+public final class SendAverages {
+
+  private final UndoTrail trail;
+
+  // indexed by actor id
+  private int[] sums = new int[16];
+  private int[] counts = new int[16];
+
+  public SendAverages(UndoTrail trail) {
+    this.trail = trail;
+  }
+
+  /***********************************************************/
+  public void addCount(final int actorId, final int count) {
+    if (actorId >= sums.length) {
+      int n = Math.max(actorId + 1, sums.length * 2);
+      int[] a = new int[n];
+      System.arraycopy(sums, 0, a, 0, sums.length);
+      sums = a;
+      a = new int[n];
+      System.arraycopy(counts, 0, a, 0, counts.length);
+      counts = a;
+    }
+
+    sums[actorId] += count;
+    counts[actorId]++;
+    if (trail != null) {
+      trail.add(new UndoTrail.Entry() {
+        public void undo() {
+          sums[actorId] -= count;
+          counts[actorId]--;
+        }
+      });
+    }
+  }
+
+  // 1.0 for actors that have not processed a message yet
+  public double getAverage(int actorId) {
+    if (actorId < 0 || actorId >= counts.length || counts[actorId] == 0)
+      return 1.0;
+    return (double) sums[actorId] / (double) counts[actorId];
+  }
+
+}
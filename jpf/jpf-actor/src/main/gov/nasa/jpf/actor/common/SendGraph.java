@@ -0,0 +1,119 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.common;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The graph of which actor has sent messages to which other actor, used by
+ * the "send graph reachability" ordering heuristic.
+ *
+ * Edges are only ever added, so the transitive closure is maintained
+ * incrementally: reach[a] is the set of actors reachable from actor a, and
+ * reachedBy[a] the set of actors that can reach a. Both contain a itself
+ * once a is part of the graph. A new edge s->r makes everything in reach[r]
+ * reachable from everything in reachedBy[s], which only touches the rows of
+ * those actors. Queries are a single bit lookup.
+ *
+ * If the graph is given an UndoTrail, the bits that each new edge adds are
+ * recorded on it, so that the graph can follow the search back and forth.
+ * Nodes are never removed, an actor without edges only reaches itself.
+ */
+public final class SendGraph {
+
+  private final UndoTrail trail;
+
+  private BitSet[] reach = new BitSet[16];
+  private BitSet[] reachedBy = new BitSet[16];
+
+  public SendGraph() {
+    this(null);
+  }
+
+  public SendGraph(UndoTrail trail) {
+    this.trail = trail;
+  }
+
+  /***********************************************************/
+  private void addNode(int id) {
+    if (id >= reach.length) {
+      int n = Math.max(id + 1, reach.length * 2);
+      reach = Arrays.copyOf(reach, n);
+      reachedBy = Arrays.copyOf(reachedBy, n);
+    }
+    if (reach[id] == null) {
+      reach[id] = new BitSet();
+      reach[id].set(id);
+      reachedBy[id] = new BitSet();
+      reachedBy[id].set(id);
+    }
+  }
+
+  public boolean contains(int id) {
+    return id >= 0 && id < reach.length && reach[id] != null;
+  }
+
+  /***********************************************************/
+  public void addEdge(int sender, int receiver) {
+    addNode(sender);
+    addNode(receiver);
+    if (reach[sender].get(receiver))
+      return;
+
+    BitSet sources = reachedBy[sender];
+    BitSet targets = reach[receiver];
+    if (trail != null) {
+      // copies, the rows themselves change below
+      sources = (BitSet) sources.clone();
+      targets = (BitSet) targets.clone();
+    }
+    for (int a = sources.nextSetBit(0); a >= 0; a = sources.nextSetBit(a + 1)) {
+      addBits(reach, a, targets);
+    }
+    for (int b = targets.nextSetBit(0); b >= 0; b = targets.nextSetBit(b + 1)) {
+      addBits(reachedBy, b, sources);
+    }
+  }
+
+  private void addBits(final BitSet[] rows, final int row, BitSet bits) {
+    if (trail == null) {
+      rows[row].or(bits);
+    } else {
+      final BitSet added = (BitSet) bits.clone();
+      added.andNot(rows[row]);
+      if (!added.isEmpty()) {
+        rows[row].or(added);
+        trail.add(new UndoTrail.Entry() {
+          public void undo() {
+            rows[row].andNot(added);
+          }
+        });
+      }
+    }
+  }
+
+  /***********************************************************/
+  // an actor that is part of the graph can reach itself
+  public boolean hasPath(int sender, int receiver) {
+    return contains(sender) && contains(receiver)
+        && reach[sender].get(receiver);
+  }
+
+}
@@ -0,0 +1,108 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.common;
+
+import java.util.Arrays;
+
+/**
+ * The ids of the messages that are asleep at a choice point, kept as a sorted
+ * int array.
+ * 
+ * A choice generator starts out with the sleep set of its predecessor, and
+ * usually only changes it by a few messages. Instead of copying the set for
+ * every choice generator, share() hands out a set that refers to the same
+ * array, and whichever of the two sets is changed first makes its own copy.
+ */
+final class SleepSet {
+
+  private static final int[] NO_IDS = new int[0];
+
+  private int[] ids = NO_IDS;
+  private int size;
+
+  // true if ids might be referenced by another sleep set as well
+  private boolean shared;
+
+  SleepSet() {
+  }
+
+  private SleepSet(int[] ids, int size) {
+    this.ids = ids;
+    this.size = size;
+    this.shared = true;
+  }
+
+  /***********************************************************/
+  SleepSet share() {
+    shared = true;
+    return new SleepSet(ids, size);
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean contains(int msgId) {
+    return Arrays.binarySearch(ids, 0, size, msgId) >= 0;
+  }
+
+  /***********************************************************/
+  void add(int msgId) {
+    int k = Arrays.binarySearch(ids, 0, size, msgId);
+    if (k >= 0) {
+      return;
+    }
+    k = -k - 1;
+
+    if (shared || size == ids.length) {
+      int[] a = new int[size == ids.length ? Math.max(4, size * 2)
+          : ids.length];
+      System.arraycopy(ids, 0, a, 0, k);
+      System.arraycopy(ids, k, a, k + 1, size - k);
+      ids = a;
+      shared = false;
+    } else {
+      System.arraycopy(ids, k, ids, k + 1, size - k);
+    }
+    ids[k] = msgId;
+    size++;
+  }
+
+  void remove(int msgId) {
+    int k = Arrays.binarySearch(ids, 0, size, msgId);
+    if (k < 0) {
+      return;
+    }
+
+    if (shared) {
+      int[] a = new int[ids.length];
+      System.arraycopy(ids, 0, a, 0, k);
+      System.arraycopy(ids, k + 1, a, k, size - k - 1);
+      ids = a;
+      shared = false;
+    } else {
+      System.arraycopy(ids, k + 1, ids, k, size - k - 1);
+    }
+    size--;
+  }
+
+  public String toString() {
+    return Arrays.toString(Arrays.copyOf(ids, size));
+  }
+}
@@ -0,0 +1,83 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.search.SearchListenerAdapter;
+
+/**
+ * Makes host side (peer) data backtrackable. Changes are recorded as
+ * entries that know how to undo themselves, and the trail remembers how
+ * many entries there were when each state on the current path was reached.
+ * When the search backtracks to a state, everything recorded after it is
+ * undone, so a transition costs as much as it changed and the trail never
+ * holds more than the changes along the current path.
+ * 
+ * This relies on the depth-first backtracking of the search (one
+ * stateBacktracked per level), states that are restored out of order are
+ * not supported. Users have to check the search before they create a trail,
+ * the Util peer does for the ordering heuristics.
+ */
+public final class UndoTrail extends SearchListenerAdapter {
+
+  public interface Entry {
+    void undo();
+  }
+
+  private final List<Entry> entries = new ArrayList<Entry>();
+
+  // trail size per search depth, depths that have not been reached since
+  // the trail was created start out with nothing to keep
+  private int[] marks = new int[64];
+
+  /***********************************************************/
+  public void add(Entry e) {
+    entries.add(e);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /***********************************************************/
+  public void stateAdvanced(Search search) {
+    int depth = search.getDepth();
+    if (depth >= marks.length) {
+      int[] a = new int[Math.max(depth + 1, marks.length * 2)];
+      System.arraycopy(marks, 0, a, 0, marks.length);
+      marks = a;
+    }
+    marks[depth] = entries.size();
+  }
+
+  public void stateBacktracked(Search search) {
+    int depth = search.getDepth();
+    undoTo((depth < marks.length) ? marks[depth] : entries.size());
+  }
+
+  void undoTo(int size) {
+    for (int i = entries.size() - 1; i >= size; i--) {
+      entries.remove(i).undo();
+    }
+  }
+
+}
@@ -0,0 +1,119 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.common;
+
+/**
+ * A sequence of message deliveries that has to be explored from some choice
+ * point in order to reverse a race, i.e. notdep(e1, E).e2 in the terms of
+ * Abdulla et al., "Optimal Dynamic Partial Order Reduction" (POPL 2014).
+ * 
+ * Each delivery is given by the key of its message, the key of its receiver
+ * and a vector clock. For the deliveries taken from the current path the
+ * clock is the receipt clock, for the final, reversed delivery it is the
+ * clock of the message, since after the reversal that delivery only depends
+ * on the send. Deliveries are dependent if they have the same receiver.
+ * 
+ * The clocks are indexed by actor ids, which are only meaningful on the path
+ * the sequence was taken from, so the happens-before relation is computed
+ * when the sequence is created. While the sequence is inserted into a wakeup
+ * tree, deliveries are removed from its front one at a time; the relation
+ * between the remaining ones does not change.
+ */
+final class WakeupSequence {
+
+  private final long[] keys;
+  private final long[] receivers;
+  private final boolean[][] happensBefore;
+  private final boolean[] removed;
+  private int remaining;
+
+  WakeupSequence(long[] keys, long[] receivers, int[] receiverIds,
+                 int[][] clocks) {
+    this.keys = keys;
+    this.receivers = receivers;
+    this.removed = new boolean[keys.length];
+    this.remaining = keys.length;
+
+    // delivery i happens before the later delivery j if j's clock has seen
+    // i's own entry
+    happensBefore = new boolean[keys.length][keys.length];
+    for (int j = 0; j < keys.length; j++) {
+      for (int i = 0; i < j; i++) {
+        int r = receiverIds[i];
+        happensBefore[i][j] = clockEntry(clocks[j], r) >= clockEntry(
+            clocks[i], r);
+      }
+    }
+  }
+
+  /***********************************************************/
+  int length() {
+    return keys.length;
+  }
+
+  long getKey(int i) {
+    return keys[i];
+  }
+
+  long getReceiver(int i) {
+    return receivers[i];
+  }
+
+  boolean isEmpty() {
+    return remaining == 0;
+  }
+
+  void remove(int i) {
+    removed[i] = true;
+    remaining--;
+  }
+
+  boolean isRemoved(int i) {
+    return removed[i];
+  }
+
+  /***********************************************************/
+  // returns the position of the given delivery if it is an initial of the
+  // remaining sequence (no remaining delivery before it happens before it),
+  // length() if it is not part of the sequence but independent of all the
+  // remaining deliveries, and -1 if it is not a weak initial at all
+  int weakInitial(long key, long receiver) {
+    for (int j = 0; j < keys.length; j++) {
+      if (removed[j])
+        continue;
+      if (keys[j] == key) {
+        for (int i = 0; i < j; i++) {
+          if (!removed[i] && happensBefore[i][j])
+            return -1;
+        }
+        return j;
+      }
+    }
+
+    for (int j = 0; j < keys.length; j++) {
+      if (!removed[j] && receivers[j] == receiver)
+        return -1;
+    }
+    return keys.length;
+  }
+
+  static int clockEntry(int[] clock, int actorId) {
+    return actorId < clock.length ? clock[actorId] : 0;
+  }
+}
@@ -0,0 +1,107 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.actor.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A node of a wakeup tree (Abdulla et al., POPL 2014). The children of a node
+ * are the deliveries that still have to be explored from the corresponding
+ * choice point, in the order in which they are explored, and each child's
+ * subtree is the wakeup tree that the choice generator below it starts out
+ * with.
+ */
+final class WakeupTree {
+
+  final long key;
+  final long receiver;
+
+  private List<WakeupTree> children;
+
+  WakeupTree() {
+    this(-1, -1);
+  }
+
+  private WakeupTree(long key, long receiver) {
+    this.key = key;
+    this.receiver = receiver;
+  }
+
+  /***********************************************************/
+  int size() {
+    return children == null ? 0 : children.size();
+  }
+
+  WakeupTree getChild(int i) {
+    return children.get(i);
+  }
+
+  WakeupTree addChild(long key, long receiver) {
+    if (children == null)
+      children = new ArrayList<WakeupTree>(2);
+    WakeupTree child = new WakeupTree(key, receiver);
+    children.add(child);
+    return child;
+  }
+
+  // drops the subtree below this node once it has been explored
+  void release() {
+    children = null;
+  }
+
+  /***********************************************************/
+  // inserts the sequence below this node, unless the tree already contains
+  // a sequence that explores it up to equivalence. Children before position
+  // 'from' are explored already and are not considered.
+  void insert(WakeupSequence v, int from) {
+    WakeupTree node = this;
+    int start = from;
+
+    while (!v.isEmpty()) {
+      WakeupTree match = null;
+      for (int i = start; i < node.size(); i++) {
+        WakeupTree child = node.getChild(i);
+        int pos = v.weakInitial(child.key, child.receiver);
+        if (pos >= 0) {
+          if (pos < v.length())
+            v.remove(pos);
+          match = child;
+          break;
+        }
+      }
+
+      if (match == null) {
+        // no branch starts like v: add the rest of v as a new branch
+        for (int i = 0; i < v.length(); i++) {
+          if (!v.isRemoved(i))
+            node = node.addChild(v.getKey(i), v.getReceiver(i));
+        }
+        return;
+      }
+
+      if (match.size() == 0) {
+        // a leaf: v is covered by the branch ending here
+        return;
+      }
+      node = match;
+      start = 0;
+    }
+  }
+}
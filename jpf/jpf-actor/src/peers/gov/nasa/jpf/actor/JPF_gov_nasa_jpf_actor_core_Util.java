@@ -18,20 +18,26 @@
 //
 package gov.nasa.jpf.actor;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 
 import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.JPFConfigException;
 import gov.nasa.jpf.actor.common.DPORIntChoiceGeneratorDcute;
+import gov.nasa.jpf.actor.common.DPORIntChoiceGeneratorOptimal;
 import gov.nasa.jpf.actor.common.DPORIntChoiceGeneratorPersistent;
 import gov.nasa.jpf.actor.common.DPORIntChoiceGeneratorPersistentSleep;
 import gov.nasa.jpf.actor.common.DPORIntChoiceGeneratorTransistent;
 import gov.nasa.jpf.actor.common.DPORIntChoiceGeneratorTransistentSleep;
+import gov.nasa.jpf.actor.common.DispatchCache;
+import gov.nasa.jpf.actor.common.PrefixIntChoiceGenerator;
+import gov.nasa.jpf.actor.common.SendAverages;
+import gov.nasa.jpf.actor.common.SendGraph;
+import gov.nasa.jpf.actor.common.UndoTrail;
 import gov.nasa.jpf.actor.core.CoreActorName;
 import gov.nasa.jpf.actor.util.MJICopier;
 import gov.nasa.jpf.jvm.ChoiceGenerator;
@@ -40,11 +46,11 @@ import gov.nasa.jpf.jvm.JPF_java_lang_Thread;
 import gov.nasa.jpf.jvm.MJIEnv;
 import gov.nasa.jpf.jvm.SystemState;
 import gov.nasa.jpf.jvm.ThreadInfo;
-import gov.nasa.jpf.jvm.ThreadList;
 import gov.nasa.jpf.jvm.choice.IntIntervalGenerator;
 import gov.nasa.jpf.jvm.choice.ThreadChoiceFromSet;
-
-//import gov.nasa.jpf.jvm.abstraction.filter.ActorFilteringSerializer;
+import gov.nasa.jpf.search.DFSearch;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.search.SearchListenerAdapter;
 
 /**
  * 
@@ -54,6 +60,16 @@ import gov.nasa.jpf.jvm.choice.ThreadChoiceFromSet;
  */
 public class JPF_gov_nasa_jpf_actor_core_Util {
 
+  /*******************************************************/
+  // basset.macrostep, see yield()
+  static boolean macrostep;
+
+  // called once per JPF run, when the peer is loaded for the run
+  public static void init(Config conf) {
+    cglist.clear();
+    macrostep = conf.getBoolean("basset.macrostep");
+  }
+
   /*******************************************************/
   static boolean searchTerminated = false;
 
@@ -73,138 +89,173 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
   }
 
   /*******************************************************
-   * Support for "actor send average" ordering heuristic
+   * State of the ordering heuristics. It follows the search,
+   * i.e. it only reflects the current path, unless
+   * basset.heuristic_global_state is set, in which case it
+   * accumulates over all explored paths. Either way it
+   * belongs to a single JPF run. Following the search is
+   * only supported for the depth first search, whose
+   * backtracking the UndoTrail undoes. The state is
+   * recorded whatever the heuristic, but with other
+   * searches the heuristics that use it are rejected.
    *******************************************************/
-  static private Map<Integer, AveragePair> sendAverage = new HashMap<Integer, AveragePair>();
-
-  static class AveragePair {
-    private int sumOfCounts = 0;
-    private int numberOfCounts = 0;
-
-    void addCount(int count) {
-      sumOfCounts += count;
-      numberOfCounts++;
+  static private JPF heuristicStateOwner;
+  static private UndoTrail trail;
+  static private SendAverages sendAverages;
+  static private SendGraph graph;
+  static private List<Integer> order;
+  static private String unsupportedSearch; // null if the state is valid
+
+  static private void initHeuristicState(MJIEnv env) {
+    JPF jpf = env.getJPF();
+    if (heuristicStateOwner != jpf) {
+      heuristicStateOwner = jpf;
+      unsupportedSearch = null;
+      if (env.getConfig().getBoolean("basset.heuristic_global_state")) {
+        trail = null;
+      } else if (!(jpf.getSearch() instanceof DFSearch)) {
+        trail = null;
+        unsupportedSearch = jpf.getSearch().getClass().getName();
+      } else {
+        trail = new UndoTrail();
+        jpf.addListener(trail);
+      }
+      sendAverages = new SendAverages(trail);
+      graph = new SendGraph(trail);
+      order = new ArrayList<Integer>();
     }
+  }
 
-    double getAverage() {
-      return (double) sumOfCounts / (double) numberOfCounts;
+  static private void checkSearch() {
+    if (unsupportedSearch != null) {
+      throw new JPFConfigException("the ordering heuristics 8 and 9 can "
+          + "only follow a depth first search, not " + unsupportedSearch
+          + ", use +basset.heuristic_global_state=true");
     }
   }
 
+  /*******************************************************
+   * Support for "actor send average" ordering heuristic
+   *******************************************************/
   public static void addSendCount(MJIEnv env, int clsObjRef, int actorId,
                                   int count) {
-    if (sendAverage.containsKey(actorId)) {
-      sendAverage.get(actorId).addCount(count);
-    } else {
-      AveragePair ap = new AveragePair();
-      ap.addCount(count);
-      sendAverage.put(actorId, ap);
-    }
+    initHeuristicState(env);
+    sendAverages.addCount(actorId, count);
   }
 
   public static double getSendAverage(MJIEnv env, int clsObjRef, int actorId) {
-    if (sendAverage.containsKey(actorId)) {
-      return sendAverage.get(actorId).getAverage();
-    } else {
-      return 1.0;
-    }
+    initHeuristicState(env);
+    checkSearch();
+    return sendAverages.getAverage(actorId);
   }
 
   /*******************************************************
    * Support for ordering policy
    *******************************************************/
-  static private List<Integer> order = new ArrayList<Integer>();
-
   public static void setOrder(MJIEnv env, int clsObjRef, List<Integer> ord) {
-    order = ord;
+    initHeuristicState(env);
+    replaceOrder(ord);
   }
 
   public static List<Integer> getOrder(MJIEnv env, int clsObjRef) {
+    initHeuristicState(env);
     return order;
   }
 
   public static void changeToHighandLowOrder(MJIEnv env, int clsObjRef,
                                              int high, int low) {
-
+    initHeuristicState(env);
+    List<Integer> newOrder = new ArrayList<Integer>(order.size() + 2);
+    newOrder.add(high);
     for (Integer id : order) {
-      if (id.intValue() == high || id.intValue() == low)
-        order.remove(id);
+      if (id.intValue() != high && id.intValue() != low)
+        newOrder.add(id);
+    }
+    newOrder.add(low);
+    replaceOrder(newOrder);
+  }
+
+  // the lists are never changed in place, so restoring the old one is enough
+  static private void replaceOrder(List<Integer> newOrder) {
+    final List<Integer> oldOrder = order;
+    order = newOrder;
+    if (trail != null) {
+      trail.add(new UndoTrail.Entry() {
+        public void undo() {
+          order = oldOrder;
+        }
+      });
     }
-    order.add(0, high);
-    order.add(low);
   }
 
   /*******************************************************
    * Support for "graph reachability" ordering heuristic
    *******************************************************/
-  static private Map<Integer, Node> graph = new HashMap<Integer, Node>();
-
-  static class Node {
-    int actorId;
-    Set<Integer> sentTo;
-
-    Node(int id) {
-      this.actorId = id;
-      sentTo = new HashSet<Integer>();
-    }
-
-    void addEdgeTo(int receiver) {
-      if (!sentTo.contains(receiver))
-        sentTo.add(receiver);
-    }
-
-    boolean hasSentTo(int receiver) {
-      if (sentTo.contains(receiver))
-        return true;
-      return false;
-    }
-  }
-
   public static void addEdge(MJIEnv env, int clsObjRef, int sender, int receiver) {
-    if (!graph.containsKey(sender))
-      graph.put(sender, new Node(sender));
-    if (!graph.containsKey(receiver))
-      graph.put(receiver, new Node(receiver));
-    Node senderNode = graph.get(sender);
-    senderNode.addEdgeTo(receiver);
+    initHeuristicState(env);
+    graph.addEdge(sender, receiver);
   }
 
   public static boolean hasPathto(MJIEnv env, int clsObjRef, int sender,
                                   int receiver) {
-    if (!graph.containsKey(sender))
-      return false;
-    if (!graph.containsKey(receiver))
-      return false;
-    Node senderNode = graph.get(sender);
-    Set<Integer> reachableSet = new TreeSet<Integer>();
-    TreeSet<Integer> workList = new TreeSet<Integer>();
-    workList.add(senderNode.actorId);
-    while (!workList.isEmpty()) {
-      reachableSet.addAll(workList);
-      if (reachableSet.contains(receiver))
-        return true;
-      int id = workList.first();
-      workList.remove(id);
-      Node n = graph.get(id);
-      for (Integer receiverId : n.sentTo) {
-        if (reachableSet.add(receiverId)) {
-          workList.add(receiverId);
-        }
-      }
+    initHeuristicState(env);
+    checkSearch();
+    return graph.hasPath(sender, receiver);
+  }
+
+  /*******************************************************
+   * Support for message dispatch (ActorFoundry)
+   *******************************************************/
+  static private JPF dispatchCacheOwner;
+  static private DispatchCache dispatchCache;
+
+  public static int findHandler(MJIEnv env, int clsObjRef, int targetRef,
+                                int methodsRef, int nameRef, int argsRef) {
+    JPF jpf = env.getJPF();
+    if (dispatchCacheOwner != jpf) {
+      dispatchCacheOwner = jpf;
+      dispatchCache = new DispatchCache();
     }
-    return false;
+    return dispatchCache.findHandler(env, targetRef, methodsRef,
+        env.getStringObject(nameRef), argsRef);
   }
 
   /*******************************************************
-   * Support for thread switching
+   * Support for thread switching. The ThreadInfos of the
+   * started actor threads are cached by the ID of their
+   * actor, like in the ActorRegistry, and each actor thread
+   * stores its ID (plus one) in its threadIndex field. A
+   * thread that starts overwrites the entry of its ID, and
+   * a terminating thread removes it. IDs are handed out
+   * again on other paths, but with depth-first backtracking
+   * an ID is only reused after the states that had the
+   * previous thread of that ID are gone. States restored
+   * out of order (heuristic searches) clear the cache, and
+   * lookups of missing entries fall back to the thread list.
    *******************************************************/
+  static private JPF threadsOwner;
+  static private ThreadInfo[] actorThreads;
+
   public static void startThreadInInterruptedStatus(MJIEnv env, int rcls,
-                                                    int threadRef) {
+                                                    int threadRef, int actorId) {
     JPF_java_lang_Thread.start____V(env, threadRef);
 
     ThreadInfo newThread = env.getVM().getThreadList().locate(threadRef);
     newThread.setState(ThreadInfo.State.INTERRUPTED);
 
+    JPF jpf = env.getJPF();
+    if (threadsOwner != jpf) {
+      threadsOwner = jpf;
+      actorThreads = new ThreadInfo[16];
+      jpf.addSearchListener(new SearchListenerAdapter() {
+        public void stateRestored(Search search) {
+          Arrays.fill(actorThreads, null);
+        }
+      });
+    }
+    cacheActorThread(actorId, newThread);
+    env.setIntField(threadRef, "threadIndex", actorId + 1);
+
     // System.out.println("Start thread interrupted<"
     // + env.getStringObject(env.getReferenceField(threadRef, "name"))
     // + "> set to " + newThread.getStateName());
@@ -219,18 +270,12 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
   /***********************************************************/
   public static void yieldTo__Ljava_lang_Object_2__V(MJIEnv env, int rcls,
                                                      int threadRef) {
-    int name = env.getReferenceField(threadRef, "name");
-    String actorThreadName = env.getStringObject(name);
-
-    yieldTo(env, actorThreadName);
-  }
-
-  /***********************************************************/
-  private static void yieldTo(MJIEnv env, String threadName) {
-    ThreadInfo next = getThreadInfoForName(env, threadName);
+    ThreadInfo next = getActorThreadInfo(env, threadRef);
 
     if (next == null) {
-      throw new RuntimeException("Thread<" + threadName + "> does not exist!!");
+      int name = env.getReferenceField(threadRef, "name");
+      throw new RuntimeException("Thread<" + env.getStringObject(name)
+          + "> does not exist!!");
     }
 
     yieldTo(env, next);
@@ -242,8 +287,23 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
   }
 
   /***********************************************************/
+  // with basset.macrostep the platform and the actor that handles a message
+  // run in the same transition, i.e. there is one state per delivery. Since
+  // actors don't share state there is nothing to explore in between, and
+  // the handler runs atomically so that no other scheduling point breaks it
   private static void yield(MJIEnv env, ThreadInfo current, ThreadInfo next) {
-    if (!current.isFirstStepInsn()) {
+    if (macrostep) {
+      SystemState ss = env.getVM().getSystemState();
+      if (next == ThreadInfo.getMainThread()) {
+        ss.decAtomic();
+      } else {
+        ss.incAtomic();
+      }
+      next.setState(ThreadInfo.State.RUNNING);
+      current.setState(ThreadInfo.State.INTERRUPTED);
+      ss.switchThread(next);
+
+    } else if (!current.isFirstStepInsn()) {
       next.setState(ThreadInfo.State.RUNNING);
       current.setState(ThreadInfo.State.INTERRUPTED);
       ChoiceGenerator<?> cg = new ThreadChoiceFromSet("basset-yield",
@@ -261,22 +321,50 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
   }
 
   /***********************************************************/
-  private static ThreadInfo getThreadInfoForName(MJIEnv env, String threadName) {
+  private static ThreadInfo getActorThreadInfo(MJIEnv env, int threadRef) {
+    int index = env.getIntField(threadRef, "threadIndex");
+    if (index == 0 || threadsOwner != env.getJPF()) {
+      // not started through startThreadInInterruptedStatus
+      return null;
+    }
 
-    ThreadList threads = env.getVM().getThreadList();
-    for (ThreadInfo t : threads) {
-      if (t.getName().equals(threadName)) {
-        return t;
-      }
+    int id = index - 1;
+    ThreadInfo ti = (id < actorThreads.length) ? actorThreads[id] : null;
+    if (ti == null || ti.getThreadObjectRef() != threadRef) {
+      ti = env.getVM().getThreadList().locate(threadRef);
+      if (ti != null)
+        cacheActorThread(id, ti);
     }
+    return ti;
+  }
+
+  private static void cacheActorThread(int id, ThreadInfo ti) {
+    if (id >= actorThreads.length) {
+      ThreadInfo[] a = new ThreadInfo[Math.max(id + 1,
+          actorThreads.length * 2)];
+      System.arraycopy(actorThreads, 0, a, 0, actorThreads.length);
+      actorThreads = a;
+    }
+    actorThreads[id] = ti;
+  }
 
-    // if a thread with the specified name is not found, return null
-    return null;
+  // called by the terminating actor thread
+  private static void uncacheActorThread(MJIEnv env, ThreadInfo ti) {
+    int index = env.getIntField(ti.getThreadObjectRef(), "threadIndex");
+    if (index > 0 && index <= actorThreads.length
+        && actorThreads[index - 1] == ti)
+      actorThreads[index - 1] = null;
   }
 
   /***********************************************************/
   public static boolean getTimeout(MJIEnv env, int clsref) {
-    return BassetListener.timeout;
+    return BassetListener.limitExceeded;
+  }
+
+  /***********************************************************/
+  public static void setTraceSeed(MJIEnv env, int clsref, int seed) {
+    BassetListener.traceSeed = seed;
+    BassetListener.sampled = true;
   }
 
   /***********************************************************/
@@ -343,7 +431,10 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
     if (!ti.isFirstStepInsn()) { // first time around
       // if (min == max) return min;
 
-      cg = new IntIntervalGenerator("basset-getIntAndForce", min, max);
+      cg = getPrefixChoiceGenerator(ss, "basset-getIntAndForce", min, max,
+          null);
+      if (cg == null)
+        cg = new IntIntervalGenerator("basset-getIntAndForce", min, max);
       ss.setNextChoiceGenerator(cg);
       // ti.skipInstructionLogging();
       env.repeatInvocation();
@@ -358,6 +449,31 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
     }
   }
 
+  /***********************************************************/
+  // a parallel worker (see ParallelWorker) replaces the delivery choice
+  // points on its prefix and the ones it splits, this returns null for all
+  // others
+  static ChoiceGenerator<?> getPrefixChoiceGenerator(SystemState ss,
+                                                     String id, int min,
+                                                     int max, int[] receivers) {
+    if (!ParallelWorker.isActive())
+      return null;
+
+    // the replaced choice points come first, so only the closest delivery
+    // choice point above needs to be looked at
+    for (ChoiceGenerator<?> cg = ss.getChoiceGenerator(); cg != null; cg = cg
+        .getPreviousChoiceGenerator()) {
+      if (cg instanceof PrefixIntChoiceGenerator) {
+        return PrefixIntChoiceGenerator.create(id,
+            (PrefixIntChoiceGenerator) cg, min, max, receivers);
+      } else if ((cg instanceof IntChoiceGenerator) && cg.getId() != null
+          && cg.getId().startsWith("basset-")) {
+        return null;
+      }
+    }
+    return PrefixIntChoiceGenerator.create(id, null, min, max, receivers);
+  }
+
   /***********************************************************/
   public static int getIntDPORDcute(MJIEnv env, int clsObjRef, int min,
                                     int max, int receiverArrayRef) {
@@ -367,8 +483,7 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
     int[] receivers = env.getIntArrayObject(receiverArrayRef);
 
     if (!ti.isFirstStepInsn()) { // first time around
-      if (getBooleanProperty__Ljava_lang_String_2__Z(env, clsObjRef, env
-          .newString("basset.bigstep"))) {
+      if (env.getConfig().getBoolean("basset.bigstep")) {
         if (min == max)
           return min;
       }
@@ -400,17 +515,20 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
     int[] receivers = env.getIntArrayObject(receiverArrayRef);
 
     if (!ti.isFirstStepInsn()) { // first time around
-      if (getBooleanProperty__Ljava_lang_String_2__Z(env, clsObjRef, env
-          .newString("basset.bigstep"))) {
+      if (env.getConfig().getBoolean("basset.bigstep")) {
         if (min == max)
           return min;
       }
       if (expandOnlyOnce)
         cg = new DPORIntChoiceGeneratorTransistent("basset-DPORTransistent",
             min, max, msgIds, receivers, expandOnlyOnce);
-      else
-        cg = new DPORIntChoiceGeneratorPersistent("basset-DPORPersistent", min,
-            max, receivers, expandOnlyOnce);
+      else {
+        cg = getPrefixChoiceGenerator(ss, "basset-DPORPersistent", min, max,
+            receivers);
+        if (cg == null)
+          cg = new DPORIntChoiceGeneratorPersistent("basset-DPORPersistent",
+              min, max, receivers, expandOnlyOnce);
+      }
       ss.setNextChoiceGenerator(cg);
       // ti.skipInstructionLogging();
       env.repeatInvocation();
@@ -418,7 +536,9 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
 
     } else {
       cg = ss.getChoiceGenerator();
-      if (expandOnlyOnce) {
+      if (cg instanceof PrefixIntChoiceGenerator) {
+        return ((PrefixIntChoiceGenerator) cg).getNextChoice().intValue();
+      } else if (expandOnlyOnce) {
         assert (cg != null)
             && (cg instanceof DPORIntChoiceGeneratorTransistent) : "expected DPORIntChoiceGeneratorTransistent, got: "
             + cg;
@@ -447,8 +567,7 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
     int[] receivers = env.getIntArrayObject(receiverArrayRef);
 
     if (!ti.isFirstStepInsn()) { // first time around
-      if (getBooleanProperty__Ljava_lang_String_2__Z(env, clsObjRef, env
-          .newString("basset.bigstep"))) {
+      if (env.getConfig().getBoolean("basset.bigstep")) {
         if (min == max)
           return min;
       }
@@ -483,6 +602,44 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
     }
   }
 
+  /***********************************************************/
+  public static int getIntDPOROptimal(MJIEnv env, int clsObjRef, int min,
+                                      int max, int msgKeyArrayRef,
+                                      int receiverArrayRef) {
+    ThreadInfo ti = ThreadInfo.getCurrentThread();
+    SystemState ss = env.getVM().getSystemState();
+    ChoiceGenerator<?> cg = null;
+
+    if (!ti.isFirstStepInsn()) { // first time around
+      long[] msgKeys = env.getLongArrayObject(msgKeyArrayRef);
+      long[] receivers = env.getLongArrayObject(receiverArrayRef);
+      cg = new DPORIntChoiceGeneratorOptimal("basset-DPOROptimal", min, max,
+          msgKeys, receivers);
+      ss.setNextChoiceGenerator(cg);
+      env.repeatInvocation();
+      return 0; // not used anyways
+    } else {
+      cg = ss.getChoiceGenerator();
+      assert (cg != null) && (cg instanceof DPORIntChoiceGeneratorOptimal) : "expected DPORIntChoiceGeneratorOptimal, got: "
+          + cg;
+      return ((DPORIntChoiceGeneratorOptimal) cg).getNextChoice().intValue();
+    }
+  }
+
+  /***********************************************************/
+  public static void recordDelivery(MJIEnv env, int clsObjRef, long msgKey,
+                                    long receiverKey, int receiverId,
+                                    int receiptClockRef, int messageClockRef) {
+    SystemState ss = env.getVM().getSystemState();
+    DPORIntChoiceGeneratorOptimal cg = ss
+        .getLastChoiceGeneratorOfType(DPORIntChoiceGeneratorOptimal.class);
+    if (cg != null) {
+      cg.recordDelivery(msgKey, receiverKey, receiverId, env
+          .getIntArrayObject(receiptClockRef), env
+          .getIntArrayObject(messageClockRef));
+    }
+  }
+
   /***********************************************************/
   static ArrayList<ChoiceGenerator<?>> cglist = new ArrayList<ChoiceGenerator<?>>();
 
@@ -506,6 +663,11 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
   /***********************************************************/
   public static void addToPersistentSet(MJIEnv env, int clsObjRef, int index,
                                         int messageId, int receiverId) {
+    if (cglist.get(index) instanceof PrefixIntChoiceGenerator) {
+      ((PrefixIntChoiceGenerator) cglist.get(index)).addToPersistentSet(
+          messageId, receiverId);
+      return;
+    }
     DPORIntChoiceGeneratorPersistent cg = (DPORIntChoiceGeneratorPersistent) cglist
         .get(index);
     cg.addToPersistentSet(messageId, receiverId);
@@ -544,7 +706,12 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
     ThreadInfo current = ThreadInfo.getCurrentThread();
 
     if (current.getName().startsWith(CoreActorName.JPF_ACTOR_NAME)) {
-      if (!current.isFirstStepInsn()) {
+      uncacheActorThread(env, current);
+      if (macrostep) {
+        // the thread termination is the scheduling point back to the platform
+        env.getVM().getSystemState().decAtomic();
+        platformThread.setState(ThreadInfo.State.RUNNING);
+      } else if (!current.isFirstStepInsn()) {
         platformThread.setState(ThreadInfo.State.RUNNING);
       }
     }
@@ -552,17 +719,31 @@ public class JPF_gov_nasa_jpf_actor_core_Util {
 
   /***********************************************************/
   public static boolean isUsingActorStateSerializer(MJIEnv env, int rcls) {
-    // TODO: need to restore this once the ActorSerializer is functioning
-    // properly
-
-    return false;
-    // try {
-    // gov.nasa.jpf.jvm.StateSerializer ss = JVM.getVM().getSerializer();
-    // return (ss != null) && (ss instanceof ActorFilteringSerializer);
-    // } catch (Config.Exception _) {
-    // System.exit(1);
-    // return false;
-    // }
+    return env.getVM().getSerializer() instanceof ActorStateSerializer;
+  }
+
+  /***********************************************************/
+  public static boolean isRecordingSchedule(MJIEnv env, int rcls) {
+    return ScheduleListener.isRecording();
+  }
+
+  public static void recordScheduledDelivery(MJIEnv env, int rcls, int id,
+                                             int receiverRef, int senderRef,
+                                             int labelRef) {
+    ScheduleListener.delivered(env.getVM(), id, env
+        .getStringObject(receiverRef), env.getStringObject(senderRef), env
+        .getStringObject(labelRef));
+  }
+
+  public static int loadSchedule(MJIEnv env, int rcls, int fileRef) {
+    String file = env.getStringObject(fileRef);
+    try {
+      return env.newStringArray(ScheduleListener.read(new File(file)));
+    } catch (IOException e) {
+      env.throwException("java.lang.RuntimeException", "cannot read schedule "
+          + file + ": " + e.getMessage());
+      return MJIEnv.NULL;
+    }
   }
 
 }
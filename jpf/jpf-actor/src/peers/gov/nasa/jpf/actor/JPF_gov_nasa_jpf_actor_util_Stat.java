@@ -44,8 +44,10 @@ public class JPF_gov_nasa_jpf_actor_util_Stat {
     Statistics.statJPFTraceCount++;
   }
 
-  public static void incStatMessageDeliveryCount(MJIEnv env, int clsref) {
+  public static void incStatMessageDeliveryCount(MJIEnv env, int clsref,
+                                                 int receiverId) {
     Statistics.statMessageDeliveryCount++;
+    Metrics.countDelivery(receiverId);
   }
 
   public static void incStatMessageSendCount(MJIEnv env, int clsref) {
@@ -65,7 +67,7 @@ public class JPF_gov_nasa_jpf_actor_util_Stat {
   }
 
   /***********************************************************/
-  public static int getStatJPFTraceCount(MJIEnv env, int clsref) {
+  public static long getStatJPFTraceCount(MJIEnv env, int clsref) {
     return Statistics.statJPFTraceCount;
   }
 
@@ -19,14 +19,27 @@
 package gov.nasa.jpf.actor.util;
 
 import gov.nasa.jpf.jvm.ClassInfo;
+import gov.nasa.jpf.jvm.ElementInfo;
 import gov.nasa.jpf.jvm.FieldInfo;
+import gov.nasa.jpf.jvm.Heap;
 import gov.nasa.jpf.jvm.MJIEnv;
+import gov.nasa.jpf.util.SparseIntVector;
 
-import java.util.HashMap;
+import java.lang.reflect.Modifier;
 import java.util.HashSet;
-import java.util.Map;
 
 /**
+ * Deep copies an object graph on the JPF heap, e.g. the arguments of a
+ * message, so that actors do not share mutable state.
+ * 
+ * Objects of immutable classes are not copied, and neither is anything
+ * reachable from them: the copy refers to the original object. A class is
+ * immutable if it is listed in immutableClasses, if it is annotated with
+ * gov.nasa.jpf.actor.annotation.Immutable, or if all of its instance fields
+ * are final (i.e. it cannot have setters) and all of its reference fields are
+ * of final immutable classes. Classes that refer to themselves through their
+ * fields are treated as mutable. The verdict is computed once per class and
+ * cached by the unique id of its ClassInfo.
  * 
  * @author Bobak Hadidi (bhadidi2@illinois.edu)
  * @author Steven Lauterburg (steven.lauterburg@gmail.com)
@@ -34,283 +47,163 @@ import java.util.Map;
  */
 public class MJICopier {
 
+  public static final String IMMUTABLE_ANNOTATION = "gov.nasa.jpf.actor.annotation.Immutable";
+
   // for cloning optimization
   // these reference 'channels' are permitted because the objects are immutable
   public static HashSet<String> immutableClasses = null;
   static {
     immutableClasses = new HashSet<String>(20);
-    immutableClasses.add("ClassInfo[name=java.lang.String]");
-    immutableClasses.add("ClassInfo[name=java.lang.Integer]");
-    immutableClasses.add("ClassInfo[name=java.lang.Double]");
-    immutableClasses.add("ClassInfo[name=java.lang.Float]");
-    immutableClasses.add("ClassInfo[name=java.lang.Long]");
-    immutableClasses.add("ClassInfo[name=java.lang.Boolean]");
-    immutableClasses.add("ClassInfo[name=java.lang.Byte]");
-    immutableClasses.add("ClassInfo[name=java.lang.Short]");
-    immutableClasses.add("ClassInfo[name=java.lang.Character]");
-    immutableClasses.add("ClassInfo[name=osl.manager.ActorName]");
-  }
-
-  public static boolean isMutableClass(ClassInfo ci) {
-    return immutableClasses.contains(ci.toString());
+    immutableClasses.add("java.lang.String");
+    immutableClasses.add("java.lang.Integer");
+    immutableClasses.add("java.lang.Double");
+    immutableClasses.add("java.lang.Float");
+    immutableClasses.add("java.lang.Long");
+    immutableClasses.add("java.lang.Boolean");
+    immutableClasses.add("java.lang.Byte");
+    immutableClasses.add("java.lang.Short");
+    immutableClasses.add("java.lang.Character");
+    immutableClasses.add("osl.manager.ActorName");
   }
 
-  // this maps jpfIDs to jpfIDs
-  // the id of the originals ref -> the id of the newly created copy's ref
-  private Map<Integer, Integer> objectMap = new HashMap<Integer, Integer>();
+  static final byte UNKNOWN = 0;
+  static final byte IN_PROGRESS = 1;
+  static final byte MUTABLE = 2;
+  static final byte IMMUTABLE = 3;
 
-  /***********************************************************/
-  public int copy(MJIEnv env, int sourceObjRef) {
-    // System.out.println("beginning copy");
-    int newObjref = copyJPFObject(objectMap, env, sourceObjRef);
-    return newObjref;
-  }
+  // indexed by ClassInfo.getUniqueId(). The ClassInfo is kept as well, since
+  // the ids are handed out again by the next JPF run
+  private static ClassInfo[] analyzed = new ClassInfo[256];
+  private static byte[] verdicts = new byte[256];
 
   /***********************************************************/
-  private int copyJPFObject(Map<Integer, Integer> objectMap, MJIEnv env,
-                            int sourceObjRef) {
-
-    // System.out.println("copying new obj");
-    int newObjRef = MJIEnv.NULL;
-
-    // if the pointer is null return immediately
-    if (sourceObjRef == MJIEnv.NULL)
-      return newObjRef;
-
-    // if the object has been seen before return its ref
-    if (objectMap.containsKey(sourceObjRef)) {
-      // System.out.println("CYCLE");
-      // System.out.println(sourceObjRef + " of type: " +
-      // env.getClassInfo(sourceObjRef).getName());
-      newObjRef = objectMap.get(sourceObjRef);
-      return newObjRef;
-    } else {
-      // get the class info of the source object to be copied
-      ClassInfo ci = env.getClassInfo(sourceObjRef);
-      // if the obj is immutable, just return the src reference
-      if (isMutableClass(ci))
-        return sourceObjRef;
-
-      // the src ref is either an array or obj
-      if (ci.isArray()) {
-        // System.out.println("beginning array copy");
-        newObjRef = copyJPFArray(objectMap, env, sourceObjRef);
-        // System.out.println("adding to map: " + sourceObjRef + " --> " +
-        // newObjRef + " of type: " + env.getClassInfo(sourceObjRef));
-        objectMap.put(sourceObjRef, newObjRef);
-      } else {
-        // create new object
-        newObjRef = env.newObject(ci);
-        // System.out.println("adding to map: " + sourceObjRef + " --> " +
-        // newObjRef + " of type: " + env.getClassInfo(sourceObjRef));
-        objectMap.put(sourceObjRef, newObjRef);
-
-        copyJPFObjectFields(objectMap, env, sourceObjRef, newObjRef);
-      }
+  public static boolean isImmutableClass(ClassInfo ci) {
+    int id = ci.getUniqueId();
+    if (id >= analyzed.length) {
+      int n = Math.max(id + 1, analyzed.length * 2);
+      ClassInfo[] a = new ClassInfo[n];
+      System.arraycopy(analyzed, 0, a, 0, analyzed.length);
+      byte[] v = new byte[n];
+      System.arraycopy(verdicts, 0, v, 0, verdicts.length);
+      analyzed = a;
+      verdicts = v;
     }
 
-    return newObjRef;
+    if (analyzed[id] != ci) {
+      analyzed[id] = ci;
+      verdicts[id] = IN_PROGRESS;
+      // the analysis can grow (and replace) the arrays
+      boolean imm = analyzeClass(ci);
+      verdicts[id] = imm ? IMMUTABLE : MUTABLE;
+    }
+    return verdicts[id] == IMMUTABLE;
   }
 
-  /***********************************************************/
-  private void copyJPFObjectFields(Map<Integer, Integer> objectMap, MJIEnv env,
-                                   int sourceObjRef, int newObjRef) {
-
-    ClassInfo ci = env.getClassInfo(sourceObjRef);
-
-    // process all instance fields including those inherited
-    // from super classes. (TODO: What about static fields??)
-    // TODO: transient fields?
-    while (ci != null) {
-      FieldInfo[] fieldsInfo = ci.getDeclaredInstanceFields();
-
-      // iterate, assign each field to a copy
-      for (FieldInfo fi : fieldsInfo) {
-        // System.out.println(fi + " " + fi.getName());
-        copyJPFObjectField(objectMap, env, sourceObjRef, newObjRef, fi);
+  private static boolean analyzeClass(ClassInfo ci) {
+    if (ci.isArray())
+      return false;
+
+    for (ClassInfo c = ci; c != null; c = c.getSuperClass()) {
+      if (immutableClasses.contains(c.getName())
+          || c.getAnnotation(IMMUTABLE_ANNOTATION) != null)
+        return true; // the rest of the hierarchy is taken on trust
+      if (c.isObjectClassInfo())
+        return c != ci; // plain Objects are copied, e.g. for identity
+
+      for (FieldInfo fi : c.getDeclaredInstanceFields()) {
+        if (!fi.isFinal())
+          return false;
+        if (fi.isReference()) {
+          // the declared type has to be final, a subclass could be mutable
+          ClassInfo fci = fi.getTypeClassInfo();
+          if (fci.isArray()
+              || (!Modifier.isFinal(fci.getModifiers())
+                  && !immutableClasses.contains(fci.getName()) && fci
+                  .getAnnotation(IMMUTABLE_ANNOTATION) == null))
+            return false;
+          // (a class that is still being analyzed counts as mutable)
+          if (!isImmutableClass(fci))
+            return false;
+        }
       }
-
-      ci = ci.getSuperClass();
     }
+    return true;
   }
 
   /***********************************************************/
-  private void copyJPFObjectField(Map<Integer, Integer> objectMap, MJIEnv env,
-                                  int sourceObjRef, int newObjRef, FieldInfo fi) {
+  // this maps the ref of an original to the ref of its copy
+  private SparseIntVector objectMap = new SparseIntVector(4, MJIEnv.NULL);
 
-    ClassInfo ci = fi.getTypeClassInfo();
-    // System.out.println(ci);
+  private Heap heap;
+  private MJIEnv env;
 
-    // the field may be a primitive, array, or object
-    if (ci.isPrimitive()) {
-      // System.out.println("copying primitive field");
-      copyJPFPrimitiveField(env, sourceObjRef, newObjRef, fi);
-    } else { // it's a reference or an array
-      // System.out.println("found reference field");
-      int fieldRef = env.getReferenceField(sourceObjRef, fi.getName());
-      int copyRef = copyJPFObject(objectMap, env, fieldRef); // recurse
-      env.setReferenceField(newObjRef, fi.getName(), copyRef);
-    }
+  /***********************************************************/
+  public int copy(MJIEnv env, int sourceObjRef) {
+    this.env = env;
+    this.heap = env.getHeap();
+    return copyJPFObject(sourceObjRef);
   }
 
   /***********************************************************/
-  private void copyJPFPrimitiveField(MJIEnv env, int sourceObjRef,
-                                     int newObjRef, FieldInfo fi) {
-
-    String ftype = fi.getType();
-
-    if (ftype.equals("double")) {
-      double d = env.getDoubleField(sourceObjRef, fi.getName());
-      env.setDoubleField(newObjRef, fi.getName(), d);
-
-    } else if (ftype.equals("float")) {
-      float f = env.getFloatField(sourceObjRef, fi.getName());
-      env.setFloatField(newObjRef, fi.getName(), f);
-
-    } else if (ftype.equals("long")) {
-      long l = env.getLongField(sourceObjRef, fi.getName());
-      env.setLongField(newObjRef, fi.getName(), l);
-
-    } else if (ftype.equals("int")) {
-      int i = env.getIntField(sourceObjRef, fi.getName());
-      env.setIntField(newObjRef, fi.getName(), i);
-
-    } else if (ftype.equals("short")) {
-      short i = env.getShortField(sourceObjRef, fi.getName());
-      env.setShortField(newObjRef, fi.getName(), i);
+  private int copyJPFObject(int sourceObjRef) {
+    // if the pointer is null return immediately
+    if (sourceObjRef == MJIEnv.NULL)
+      return MJIEnv.NULL;
 
-    } else if (ftype.equals("byte")) {
-      byte i = env.getByteField(sourceObjRef, fi.getName());
-      env.setByteField(newObjRef, fi.getName(), i);
+    // if the object has been seen before return its copy
+    int newObjRef = objectMap.get(sourceObjRef);
+    if (newObjRef != MJIEnv.NULL)
+      return newObjRef;
 
-    } else if (ftype.equals("char")) {
-      char i = env.getCharField(sourceObjRef, fi.getName());
-      env.setCharField(newObjRef, fi.getName(), i);
+    ElementInfo src = heap.get(sourceObjRef);
+    ClassInfo ci = src.getClassInfo();
 
-    } else if (ftype.equals("boolean")) {
-      boolean i = env.getBooleanField(sourceObjRef, fi.getName());
-      env.setBooleanField(newObjRef, fi.getName(), i);
+    // if the obj is immutable, just return the src reference
+    if (isImmutableClass(ci))
+      return sourceObjRef;
 
+    if (ci.isArray()) {
+      newObjRef = heap.newArray(src.getArrayType(), src.arrayLength(),
+          env.getThreadInfo());
+      objectMap.set(sourceObjRef, newObjRef);
+      copyJPFArray(src, heap.get(newObjRef));
     } else {
-      throw new UnsupportedOperationException("Copy for fields of type "
-          + ftype + " has not been implemented yet");
+      newObjRef = env.newObject(ci);
+      objectMap.set(sourceObjRef, newObjRef);
+      copyJPFObjectFields(src, heap.get(newObjRef));
     }
+    return newObjRef;
   }
 
   /***********************************************************/
-  private int copyJPFArray(Map<Integer, Integer> objectMap, MJIEnv env,
-                           int srcArrRef) {
-
-    ClassInfo ci = env.getClassInfo(srcArrRef);
-    assert ci.isArray();
-    // System.out.println("copying array obj");
-
-    // get the array size
-    int arraySize = env.getArrayLength(srcArrRef);
-
-    // make the new array
-    int copyArrRef = env.NULL;
-
-    if (ci.isReferenceArray() || ci.getName().startsWith("[[")) {
-      // System.out.println("found ref array");
-      // this is an array of object references or an array of arrays
-      // get the array type in String
-      String className = ci.getName();
-      copyArrRef = env.newObjectArray(className, arraySize);
-      // copy each array element
-      for (int index = 0; index < arraySize; index++) {
-        // copy each array element
-        // System.out.println("doing copy for ref array elem..");
-        int elementRef = env.getReferenceArrayElement(srcArrRef, index);
-        int elemCopyRef = copyJPFObject(objectMap, env, elementRef);
-        // assign copy to new array index
-        env.setReferenceArrayElement(copyArrRef, index, elemCopyRef);
-      }
-    } else {
-      // System.out.println("found primitive array");
-      // this is an array of primitives
-      // find the array type and set the copyArrRef
-      String elemType = env.getArrayType(srcArrRef);
-      switch (elemType.charAt(0)) {
-      case 'D':
-        copyArrRef = env.newDoubleArray(arraySize);
-        break;
-      case 'F':
-        copyArrRef = env.newFloatArray(arraySize);
-        break;
-      case 'J':
-        copyArrRef = env.newLongArray(arraySize);
-        break;
-      case 'I':
-        copyArrRef = env.newIntArray(arraySize);
-        break;
-      case 'S':
-        copyArrRef = env.newShortArray(arraySize);
-        break;
-      case 'B':
-        copyArrRef = env.newByteArray(arraySize);
-        break;
-      case 'C':
-        copyArrRef = env.newCharArray(arraySize);
-        break;
-      case 'Z':
-        copyArrRef = env.newBooleanArray(arraySize);
-        break;
-      default:
-        throw new UnsupportedOperationException("Copy for fields of type "
-            + elemType + " has not been implemented yet");
-      }
-      for (int index = 0; index < arraySize; index++) {
-        // System.out.println("size: " + arraySize + " on iter: " + index);
-        copyJPFPrimitiveArrayElement(env, srcArrRef, copyArrRef, index);
+  private void copyJPFObjectFields(ElementInfo src, ElementInfo dst) {
+    // process all instance fields including those inherited
+    // from super classes.
+    for (ClassInfo ci = src.getClassInfo(); ci != null; ci = ci.getSuperClass()) {
+      for (FieldInfo fi : ci.getDeclaredInstanceFields()) {
+        if (fi.isReference()) {
+          int copyRef = copyJPFObject(src.getReferenceField(fi)); // recurse
+          dst.setReferenceField(fi, copyRef);
+        } else if (fi.is2SlotField()) {
+          dst.set2SlotField(fi, src.get2SlotField(fi));
+        } else {
+          dst.set1SlotField(fi, src.get1SlotField(fi));
+        }
       }
     }
-    // return the ref to the newly created array
-    return copyArrRef;
   }
 
   /***********************************************************/
-  private void copyJPFPrimitiveArrayElement(MJIEnv env, int srcArrRef,
-                                            int copyArrRef, int index) {
-
-    String ftype = env.getArrayType(srcArrRef);
-
-    // find the array type and set the copy reference to elem
-    if (ftype.equals("D")) {
-      double d = env.getDoubleArrayElement(srcArrRef, index);
-      env.setDoubleArrayElement(copyArrRef, index, d);
-
-    } else if (ftype.equals("F")) {
-      float f = env.getFloatArrayElement(srcArrRef, index);
-      env.setFloatArrayElement(copyArrRef, index, f);
-
-    } else if (ftype.equals("J")) {
-      long l = env.getLongArrayElement(srcArrRef, index);
-      env.setLongArrayElement(copyArrRef, index, l);
-
-    } else if (ftype.equals("I")) {
-      int i = env.getIntArrayElement(srcArrRef, index);
-      env.setIntArrayElement(copyArrRef, index, i);
-
-    } else if (ftype.equals("S")) {
-      short s = env.getShortArrayElement(srcArrRef, index);
-      env.setShortArrayElement(copyArrRef, index, s);
-
-    } else if (ftype.equals("B")) {
-      byte b = env.getByteArrayElement(srcArrRef, index);
-      env.setByteArrayElement(copyArrRef, index, b);
-
-    } else if (ftype.equals("C")) {
-      char c = env.getCharArrayElement(srcArrRef, index);
-      env.setCharArrayElement(copyArrRef, index, c);
-
-    } else if (ftype.equals("Z")) {
-      boolean z = env.getBooleanArrayElement(srcArrRef, index);
-      env.setBooleanArrayElement(copyArrRef, index, z);
-
+  private void copyJPFArray(ElementInfo src, ElementInfo dst) {
+    int arraySize = src.arrayLength();
+    if (src.isReferenceArray()) {
+      // this is an array of object references or an array of arrays
+      for (int index = 0; index < arraySize; index++) {
+        int elemCopyRef = copyJPFObject(src.getReferenceElement(index));
+        dst.setReferenceElement(index, elemCopyRef);
+      }
     } else {
-      throw new UnsupportedOperationException("Copy for fields of type "
-          + ftype + " has not been implemented yet");
+      dst.copyElements(env.getThreadInfo(), src, 0, 0, arraySize);
     }
   }
 
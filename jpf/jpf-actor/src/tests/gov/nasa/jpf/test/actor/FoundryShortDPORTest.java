@@ -18,8 +18,24 @@
 //
 package gov.nasa.jpf.test.actor;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
 import org.junit.Test;
 
+import gov.nasa.jpf.actor.Statistics;
+
 /**
  * This class contains a series of reasonably short running JUnit tests for the
  * ActorFoundry instantiation of Basset.
@@ -77,4 +93,245 @@ public class FoundryShortDPORTest extends TestBassetJPF {
     checkResults(40, 0, 0, 204, 11, 0, 0, 0);
   }
   
+  @Test
+  public void fib5_optimal_lca() {
+    Class<?> subjectClass = fibonacci.Driver.class;
+    String[] options = new String[] { LISTENER, "+basset.dpor=12", "+basset.dpor_heuristic=2" };
+    String[] subjectArgs = new String[] { "5" };
+
+    runBasset("foundry", options, subjectClass, subjectArgs);
+    checkResults(16, 0, 0, 92, 15, 0, 0, 0);
+  }
+  
+  @Test
+  public void fib5_optimal_fifo() {
+    Class<?> subjectClass = fibonacci.Driver.class;
+    String[] options = new String[] { LISTENER, "+basset.dpor=12", "+basset.dpor_heuristic=3" };
+    String[] subjectArgs = new String[] { "5" };
+
+    runBasset("foundry", options, subjectClass, subjectArgs);
+    checkResults(16, 0, 0, 108, 11, 0, 0, 0);
+  }
+  
+  @Test
+  public void pipesort3_optimal() {
+    Class<?> subjectClass = pipesort.Driver.class;
+    String[] options = new String[] { LISTENER, "+basset.dpor=12" };
+    String[] subjectArgs = new String[] { "3" };
+
+    runBasset("foundry", options, subjectClass, subjectArgs);
+    checkResults(12, 0, 0, 70, 21, 0, 0, 0);
+  }
+  
+  @Test
+  public void server_ping_optimal() {
+    Class<?> subjectClass = server.DriverB.class;
+    String[] options = new String[] { LISTENER, "+basset.dpor=12" };
+    String[] subjectArgs = new String[] {};
+
+    runBasset("foundry", options, subjectClass, subjectArgs);
+    checkResults(4, 1, 0, 26, 4, 4, 0, 0);
+  }
+  
+  @Test
+  public void fib5_pset_fifo_macrostep() {
+    Class<?> subjectClass = fibonacci.Driver.class;
+    String[] options = new String[] { LISTENER, "+basset.dpor=3", "+basset.dpor_heuristic=3", "+basset.macrostep=true" };
+    String[] subjectArgs = new String[] { "5" };
+
+    runBasset("foundry", options, subjectClass, subjectArgs);
+    checkResults(40, 0, 0, 204, 11, 0, 0, 0);
+  }
+  
+  @Test
+  public void fib5_pset_trace_limit() {
+    Class<?> subjectClass = fibonacci.Driver.class;
+    String[] options = new String[] { LISTENER, "+basset.dpor=3", "+basset.trace_limit=5" };
+    String[] subjectArgs = new String[] { "5" };
+
+    runBasset("foundry", options, subjectClass, subjectArgs);
+    checkResults(5, 0, 0, 37, 11, 0, 0, 0);
+  }
+  
+  @Test
+  public void fib5_pset_checkpoint_resume() {
+    Class<?> subjectClass = fibonacci.Driver.class;
+    String[] options = new String[] { LISTENER, "+listener+=,.actor.CheckpointListener",
+        "+basset.checkpoint.file=build/fib5.checkpoint", "+basset.dpor=3", "+basset.trace_limit=5" };
+    String[] subjectArgs = new String[] { "5" };
+
+    runBasset("foundry", options, subjectClass, subjectArgs);
+    checkResults(5, 0, 0, 37, 11, 0, 0, 0);
+
+    // the resumed run replays the checkpointed path, whose deliveries and
+    // actors are counted again
+    options[options.length - 1] = "+basset.checkpoint.resume=true";
+    runBasset("foundry", options, subjectClass, subjectArgs);
+    checkResults(40, 0, 0, 221, 22, 0, 0, 0);
+  }
+  
+  @Test
+  public void ignored_state_checkpoint_resume() {
+    String subjectClass = "gov.nasa.jpf.test.actor.foundrytests.test5.Driver";
+    // the heap limit is exceeded at the first check, at the 10th state,
+    // which the subject ignores while its boolean choice has a choice left
+    String[] options = new String[] { LISTENER, "+listener+=,.actor.CheckpointListener",
+        "+basset.checkpoint.file=build/test5.checkpoint", "+basset.heap_limit=1",
+        "+basset.limit_check_interval=10" };
+    String[] subjectArgs = new String[] {};
+
+    runBasset("foundry", options, subjectClass, subjectArgs);
+    checkResults(0, 0, 0, 2, 2, 0, 0, 0);
+    Assert.assertEquals(4, Statistics.statMessageSendCount);
+
+    // the resumed run continues with the other choice, the ignored one is
+    // not explored (and its message not sent) again
+    options[options.length - 2] = "+basset.checkpoint.resume=true";
+    options[options.length - 1] = "+basset.limit_check_interval=100";
+    runBasset("foundry", options, subjectClass, subjectArgs);
+    checkResults(1, 0, 0, 5, 4, 0, 0, 0);
+    Assert.assertEquals(8, Statistics.statMessageSendCount);
+  }
+  
+  @Test
+  public void fib5_pct_samples() {
+    Class<?> subjectClass = fibonacci.Driver.class;
+    String[] options = new String[] { LISTENER, "+basset.dpor=20", "+basset.samples=20" };
+    String[] subjectArgs = new String[] { "5" };
+
+    runBasset("foundry", options, subjectClass, subjectArgs);
+    checkResults(20, 0, 0, 400, 182, 0, 0, 0);
+  }
+  
+  @Test
+  public void fib5_delay_bounded_samples() {
+    Class<?> subjectClass = fibonacci.Driver.class;
+    String[] options = new String[] { LISTENER, "+basset.dpor=21", "+basset.samples=20" };
+    String[] subjectArgs = new String[] { "5" };
+
+    runBasset("foundry", options, subjectClass, subjectArgs);
+    checkResults(20, 0, 0, 400, 182, 0, 0, 0);
+  }
+  
+  // the sampled traces of test6 deliver two messages to each of three
+  // receivers, see its Receiver for the checks
+  static final String SAMPLED = "gov.nasa.jpf.test.actor.foundrytests.test6.Driver";
+  static final String SAMPLED_SCHEDULE = "build/test6.schedule";
+
+  // the deliveries of the trace that failed the check, null if none did
+  List<String> runSampled(String check, String... options) throws IOException {
+    File file = new File(SAMPLED_SCHEDULE);
+    file.delete();
+
+    String[] allOptions = new String[options.length + 3];
+    allOptions[0] = LISTENER;
+    allOptions[1] = "+listener+=,.actor.ScheduleListener";
+    allOptions[2] = "+basset.schedule.file=" + SAMPLED_SCHEDULE;
+    System.arraycopy(options, 0, allOptions, 3, options.length);
+    runBasset("foundry", allOptions, SAMPLED, new String[] { check });
+
+    if (!file.exists())
+      return null;
+    List<String> deliveries = new ArrayList<String>();
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (!line.startsWith("#"))
+          deliveries.add(line);
+      }
+    } finally {
+      in.close();
+    }
+    return deliveries;
+  }
+
+  static int messageId(String delivery) {
+    return Integer.parseInt(delivery.substring(0, delivery.indexOf('\t')));
+  }
+
+  @Test
+  public void pct_different_seeds() throws IOException {
+    List<String> schedule1 = runSampled("always", "+basset.dpor=20", "+basset.randomseed=1", "+basset.samples=1");
+    List<String> schedule2 = runSampled("always", "+basset.dpor=20", "+basset.randomseed=2", "+basset.samples=1");
+    Assert.assertNotNull(schedule1);
+    Assert.assertNotNull(schedule2);
+    Assert.assertFalse(schedule1.equals(schedule2));
+  }
+
+  @Test
+  public void pct_failing_seed_replay() throws IOException {
+    // the seed of the failing trace is printed by the BassetListener
+    PrintStream stdout = System.out;
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(output, true));
+    List<String> failing;
+    try {
+      failing = runSampled("c_first", "+basset.dpor=20", "+basset.samples=20");
+    } finally {
+      System.setOut(stdout);
+    }
+    Assert.assertNotNull(failing);
+    Matcher m = Pattern.compile("sampled trace with seed (\\d+)").matcher(output.toString());
+    Assert.assertTrue(m.find());
+
+    List<String> replayed = runSampled("c_first", "+basset.dpor=20", "+basset.randomseed=" + m.group(1),
+        "+basset.samples=1");
+    Assert.assertEquals(failing, replayed);
+    Assert.assertEquals(1, Statistics.statJPFTraceCount);
+  }
+
+  @Test
+  public void pct_depth1_highest_priority() throws IOException {
+    // without change points the receiver with the highest priority gets all
+    // its messages before any other receiver gets one
+    Assert.assertNull(runSampled("grouped", "+basset.dpor=20", "+basset.pct_depth=1", "+basset.samples=20"));
+    Assert.assertEquals(20, Statistics.statJPFTraceCount);
+
+    // while change points within the trace interleave them
+    Assert.assertNotNull(runSampled("grouped", "+basset.dpor=20", "+basset.pct_depth=3",
+        "+basset.sample_steps=6", "+basset.samples=20"));
+  }
+
+  @Test
+  public void delay_bounded_seeds() throws IOException {
+    // without delays the messages are delivered in send order, whatever the seed
+    List<String> schedule1 = runSampled("always", "+basset.dpor=21", "+basset.delay_bound=0", "+basset.randomseed=1", "+basset.samples=1");
+    List<String> schedule2 = runSampled("always", "+basset.dpor=21", "+basset.delay_bound=0", "+basset.randomseed=2", "+basset.samples=1");
+    Assert.assertNotNull(schedule1);
+    Assert.assertEquals(schedule1, schedule2);
+    for (int i = 1; i < schedule1.size(); i++) {
+      Assert.assertTrue(messageId(schedule1.get(i - 1)) < messageId(schedule1.get(i)));
+    }
+
+    // while the delays of different seeds differ
+    schedule1 = runSampled("always", "+basset.dpor=21", "+basset.delay_bound=2", "+basset.sample_steps=6", "+basset.randomseed=1", "+basset.samples=1");
+    schedule2 = runSampled("always", "+basset.dpor=21", "+basset.delay_bound=2", "+basset.sample_steps=6", "+basset.randomseed=2", "+basset.samples=1");
+    Assert.assertFalse(schedule1.equals(schedule2));
+  }
+
+  @Test
+  public void fib4_schedule_replay() throws IOException {
+    // a schedule of fib 4 that does not deliver the results in send order,
+    // the first fib messages to JPF_Actor-3 and JPF_Actor-6 are left out
+    PrintWriter out = new PrintWriter(new FileWriter("build/fib4.schedule"));
+    out.println("# basset schedule: fibonacci.Driver 4");
+    out.println("101\tJPF_Actor-1[]\tJPF_Actor-0[]\ttest");
+    out.println("102\tJPF_Actor-2[]\tJPF_Actor-1[]\tboot");
+    out.println("105\tJPF_Actor-5[]\tJPF_Actor-3[]\tfib");
+    out.println("106\tJPF_Actor-3[]\tJPF_Actor-5[]\tresult");
+    out.println("104\tJPF_Actor-4[]\tJPF_Actor-3[]\tfib");
+    out.println("108\tJPF_Actor-7[]\tJPF_Actor-4[]\tfib");
+    out.println("110\tJPF_Actor-4[]\tJPF_Actor-6[]\tresult");
+    out.println("109\tJPF_Actor-4[]\tJPF_Actor-7[]\tresult");
+    out.close();
+
+    Class<?> subjectClass = fibonacci.Driver.class;
+    String[] options = new String[] { LISTENER, "+basset.schedule.replay=build/fib4.schedule" };
+    String[] subjectArgs = new String[] { "4" };
+
+    runBasset("foundry", options, subjectClass, subjectArgs);
+    checkResults(1, 0, 0, 12, 7, 0, 0, 0);
+  }
+  
 }
@@ -0,0 +1,116 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.test.actor;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import gov.nasa.jpf.actor.common.SendGraph;
+
+/**
+ * This class contains JUnit tests for the SendGraph class, which keeps the
+ * transitive closure of the send graph for the reachability heuristic.
+ * 
+ */
+public class SendGraphTest {
+
+  /*******************************************************/
+  // reference answer by a search over the plain edge lists
+  private boolean search(List<List<Integer>> edges, int from, int to) {
+    boolean[] seen = new boolean[edges.size()];
+    List<Integer> work = new ArrayList<Integer>();
+    work.add(from);
+    seen[from] = true;
+    while (!work.isEmpty()) {
+      int id = work.remove(work.size() - 1);
+      if (id == to)
+        return true;
+      for (int next : edges.get(id)) {
+        if (!seen[next]) {
+          seen[next] = true;
+          work.add(next);
+        }
+      }
+    }
+    return false;
+  }
+
+  /************************ Tests ************************/
+
+  @Test
+  public void testUnknownActors() {
+    SendGraph g = new SendGraph();
+    assertFalse(g.hasPath(0, 0));
+    assertFalse(g.hasPath(3, 5));
+
+    g.addEdge(3, 5);
+    assertTrue(g.hasPath(3, 5));
+    assertTrue(g.hasPath(3, 3));
+    assertFalse(g.hasPath(5, 3));
+    assertFalse(g.hasPath(3, 4));
+    assertFalse(g.hasPath(100, 3));
+  }
+
+  @Test
+  public void testTransitiveEdges() {
+    SendGraph g = new SendGraph();
+    g.addEdge(2, 3);
+    g.addEdge(0, 1);
+    assertFalse(g.hasPath(0, 3));
+
+    g.addEdge(1, 2);
+    assertTrue(g.hasPath(0, 3));
+    assertTrue(g.hasPath(1, 3));
+    assertFalse(g.hasPath(3, 0));
+
+    g.addEdge(3, 0);
+    assertTrue(g.hasPath(3, 1));
+    assertTrue(g.hasPath(2, 0));
+  }
+
+  @Test
+  public void testRandomGraphs() {
+    Random random = new Random(42);
+    for (int round = 0; round < 20; round++) {
+      int n = 1 + random.nextInt(60);
+      SendGraph g = new SendGraph();
+      List<List<Integer>> edges = new ArrayList<List<Integer>>();
+      for (int i = 0; i < n; i++)
+        edges.add(new ArrayList<Integer>());
+
+      for (int e = 0; e < 2 * n; e++) {
+        int from = random.nextInt(n);
+        int to = random.nextInt(n);
+        g.addEdge(from, to);
+        edges.get(from).add(to);
+
+        int a = random.nextInt(n);
+        int b = random.nextInt(n);
+        boolean known = g.hasPath(a, a);
+        assertEquals(known && search(edges, a, b), g.hasPath(a, b));
+      }
+    }
+  }
+
+}
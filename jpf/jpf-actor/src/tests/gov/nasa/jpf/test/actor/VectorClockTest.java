@@ -0,0 +1,158 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.test.actor;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import gov.nasa.jpf.actor.core.VectorClock;
+
+/**
+ * This class contains JUnit tests for the VectorClock class. The clocks are
+ * plain Java objects, so these tests run outside of JPF.
+ * 
+ */
+public class VectorClockTest {
+
+  /*******************************************************/
+  private VectorClock clock(int... values) {
+    VectorClock vc = new VectorClock(values.length);
+    for (int i = 0; i < values.length; i++)
+      vc.setClock(i, values[i]);
+    return vc;
+  }
+
+  /************************ Tests ************************/
+
+  @Test
+  public void testMissingEntriesAreZero() {
+    VectorClock vc = new VectorClock(4);
+    assertTrue(vc.isEmpty());
+    assertEquals(0, vc.getClock(2));
+    assertEquals(0, vc.getClock(100));
+
+    vc.tick(6);
+    assertFalse(vc.isEmpty());
+    assertEquals(1, vc.getClock(6));
+    assertEquals(0, vc.getClock(5));
+  }
+
+  @Test
+  public void testHappensBefore() {
+    VectorClock a = clock(1, 0, 0);
+    VectorClock b = clock(1, 1, 0);
+    VectorClock c = clock(0, 0, 1);
+
+    assertTrue(a.happensBefore(b));
+    assertFalse(b.happensBefore(a));
+    assertTrue(a.happensBefore(a));
+
+    assertTrue(a.concurrent(c));
+    assertTrue(c.concurrent(b));
+    assertFalse(a.concurrent(b));
+  }
+
+  @Test
+  public void testDifferentLengths() {
+    VectorClock a = clock(1, 2);
+    VectorClock b = clock(1, 2, 0, 3);
+    assertTrue(a.happensBefore(b));
+    assertFalse(b.happensBefore(a));
+  }
+
+  @Test
+  public void testEmptyClockIsOrdered() {
+    VectorClock empty = new VectorClock();
+    VectorClock a = clock(3, 1);
+    assertTrue(empty.happensBefore(a));
+    assertTrue(a.happensBefore(empty));
+    assertFalse(a.concurrent(empty));
+  }
+
+  @Test
+  public void testMergeInto() {
+    VectorClock a = clock(3, 0, 1);
+    VectorClock b = clock(1, 2);
+    a.mergeInto(b);
+    assertEquals(3, b.getClock(0));
+    assertEquals(2, b.getClock(1));
+    assertEquals(1, b.getClock(2));
+
+    // the source is not modified
+    assertEquals(0, a.getClock(1));
+  }
+
+  @Test
+  public void testSnapshotIsCopyOnWrite() {
+    VectorClock sender = clock(1, 1);
+    VectorClock msg = sender.snapshot();
+
+    sender.tick(0);
+    assertEquals(2, sender.getClock(0));
+    assertEquals(1, msg.getClock(0));
+
+    VectorClock other = msg.snapshot();
+    msg.tick(1);
+    assertEquals(2, msg.getClock(1));
+    assertEquals(1, other.getClock(1));
+    assertEquals(2, sender.getClock(0));
+  }
+
+  @Test
+  public void testSparse() {
+    VectorClock vc = new VectorClock(4);
+    vc.tick(1);
+    vc.tick(1000);
+    vc.tick(300);
+    assertTrue(vc.isSparse());
+    assertEquals(1, vc.getClock(1));
+    assertEquals(1, vc.getClock(300));
+    assertEquals(1, vc.getClock(1000));
+    assertEquals(0, vc.getClock(500));
+
+    vc.tick(300);
+    assertEquals(2, vc.getClock(300));
+
+    VectorClock dense = clock(0, 1);
+    assertTrue(dense.happensBefore(vc));
+    assertFalse(vc.happensBefore(dense));
+
+    vc.mergeInto(dense);
+    assertEquals(2, dense.getClock(300));
+    assertEquals(1, dense.getClock(1000));
+    assertTrue(vc.happensBefore(dense));
+    assertTrue(dense.happensBefore(vc));
+  }
+
+  @Test
+  public void testSparseSnapshot() {
+    VectorClock vc = new VectorClock();
+    vc.tick(200);
+    assertTrue(vc.isSparse());
+
+    VectorClock copy = vc.snapshot();
+    vc.tick(100);
+    assertEquals(0, copy.getClock(100));
+    assertEquals(1, vc.getClock(100));
+    assertTrue(copy.happensBefore(vc));
+    assertFalse(vc.happensBefore(copy));
+  }
+
+}
@@ -0,0 +1,45 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.test.actor.foundrytests.test5;
+
+import osl.manager.Actor;
+import osl.manager.ActorName;
+import osl.manager.RemoteCodeException;
+import osl.manager.annotations.message;
+
+/**
+ * 
+ */
+public class Driver extends Actor {
+
+  ActorName a;
+
+  @message
+  public void setUp(String[] args) throws RemoteCodeException {
+    // create root set actor
+    a = create(Chooser.class);
+  }
+
+  @message
+  public void test(String[] args) {
+    // queue initial message
+    send(a, "run");
+  }
+
+}
@@ -0,0 +1,77 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.test.actor.foundrytests.test6;
+
+import osl.manager.Actor;
+
+/**
+ * Logs the deliveries to the receivers. Once all messages are delivered
+ * the log is checked, the check is the driver argument:
+ * 
+ *   always    fails, so that the schedule of every trace is written
+ *   grouped   fails if the deliveries to the receivers are interleaved
+ *   c_first   fails if c received the first message
+ * 
+ */
+public class Receiver extends Actor {
+
+  static final int MESSAGES = 6;
+
+  static String check;
+  static String log = "";
+
+  private final String name;
+
+  public Receiver(String name) {
+    this.name = name;
+  }
+
+  /*******************************************************/
+  public void hit() {
+    log += name;
+    if (log.length() == MESSAGES && !isValid(log))
+      fail(check + " failed for " + log);
+  }
+
+  static boolean isValid(String log) {
+    if (check.equals("grouped")) {
+      // a receiver that is left must not come back
+      for (int i = 1; i < log.length(); i++) {
+        char prev = log.charAt(i - 1);
+        if (log.charAt(i) != prev && log.indexOf(prev, i) >= 0)
+          return false;
+      }
+      return true;
+    } else if (check.equals("c_first")) {
+      return log.charAt(0) != 'c';
+    }
+    return false;
+  }
+
+  // exceptions of message handlers are caught by the actor, an exception
+  // that is not caught by any thread violates a property
+  static void fail(final String msg) {
+    new Thread() {
+      public void run() {
+        throw new AssertionError(msg);
+      }
+    }.start();
+  }
+
+}
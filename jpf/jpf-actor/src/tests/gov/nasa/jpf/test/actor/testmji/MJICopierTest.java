@@ -20,6 +20,8 @@ package gov.nasa.jpf.test.actor.testmji;
 
 import java.util.LinkedList;
 import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.actor.util.MJICopier;
+import gov.nasa.jpf.jvm.ClassInfo;
 import gov.nasa.jpf.jvm.MJIEnv;
 import static gov.nasa.jpf.test.actor.testmji.JPF_gov_nasa_jpf_test_actor_testmji_MJIUtil.linArray;
 import static org.junit.Assert.*;
@@ -172,4 +174,42 @@ public class MJICopierTest {
     assertEquals(linArray[2].indexOf(0), MJIEnv.NULL);
   }
 
+  // 18. Objects of classes with final fields only or annotated as immutable
+  // are shared, objects with final array fields are not
+  @Test
+  public void TestImmutableClasses() {
+    run(gov.nasa.jpf.test.actor.testmji.ObjImmutables.class.getName());
+    // see ObjImmutables.main
+    assertEquals(linArray[0].indexOf(0), MJIEnv.NULL);
+    assertEquals(linArray[1].indexOf(0), MJIEnv.NULL);
+    assertEquals(linArray[2].indexOf(0), MJIEnv.NULL);
+  }
+
+  // 19. The immutability analysis itself, without copying
+  @Test
+  public void TestIsImmutableClass() {
+    // sets up the class loading of a JPF run
+    new JPF(new String[] { ObjImmutables.class.getName() });
+
+    String name = ObjImmutables.class.getName();
+    assertTrue(MJICopier.isImmutableClass(ClassInfo
+        .getResolvedClassInfo(name + "$Segment")));
+    assertTrue(MJICopier.isImmutableClass(ClassInfo
+        .getResolvedClassInfo(name + "$Point")));
+    assertTrue(MJICopier.isImmutableClass(ClassInfo
+        .getResolvedClassInfo(name + "$Tag")));
+    assertFalse(MJICopier.isImmutableClass(ClassInfo
+        .getResolvedClassInfo(name + "$Box")));
+    assertFalse(MJICopier.isImmutableClass(ClassInfo
+        .getResolvedClassInfo(name)));
+    assertTrue(MJICopier.isImmutableClass(ClassInfo
+        .getResolvedClassInfo("java.lang.Integer")));
+    assertFalse(MJICopier.isImmutableClass(ClassInfo
+        .getResolvedClassInfo("java.lang.Object")));
+
+    // the verdicts are cached
+    assertTrue(MJICopier.isImmutableClass(ClassInfo
+        .getResolvedClassInfo(name + "$Segment")));
+  }
+
 }
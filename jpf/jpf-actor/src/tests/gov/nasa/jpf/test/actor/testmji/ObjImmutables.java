@@ -0,0 +1,87 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.test.actor.testmji;
+
+import gov.nasa.jpf.actor.annotation.Immutable;
+
+/**
+ * Test case for copying objects with references to objects of classes that
+ * are immutable by analysis (final fields) or by annotation
+ */
+public class ObjImmutables extends BaseTestObject {
+
+  // all fields final, all references to final immutable classes
+  static final class Point {
+    final int x;
+    final String label;
+
+    Point(int x, String label) {
+      this.x = x;
+      this.label = label;
+    }
+  }
+
+  // immutable on the user's word
+  @Immutable
+  static class Tag {
+    String name = "tag";
+  }
+
+  // final field, but the array it refers to can change
+  static final class Box {
+    final int[] values = new int[] { 1, 2 };
+  }
+
+  // only refers to immutable objects, Point is analyzed along with it
+  static final class Segment {
+    final Point from;
+    final Point to;
+
+    Segment(Point from, Point to) {
+      this.from = from;
+      this.to = to;
+    }
+  }
+
+  public Point point = new Point(42, "p");
+  public Tag tag = new Tag();
+  public Box box = new Box();
+
+  public static void main(String[] args) {
+    ObjImmutables original = new ObjImmutables();
+    ObjImmutables copy = (ObjImmutables) MJIUtil.copy(original);
+
+    if (original.point == copy.point)
+      MJIUtil.linearize(null, 0);
+    else
+      MJIUtil.linearize(new Integer(100), 0); // failure
+
+    if (original.tag == copy.tag)
+      MJIUtil.linearize(null, 1);
+    else
+      MJIUtil.linearize(new Integer(101), 1); // failure
+
+    if (original.box != copy.box && original.box.values != copy.box.values
+        && copy.box.values[1] == 2)
+      MJIUtil.linearize(null, 2);
+    else
+      MJIUtil.linearize(new Integer(102), 2); // failure
+  }
+
+}
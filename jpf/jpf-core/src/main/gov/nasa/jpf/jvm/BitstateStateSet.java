@@ -0,0 +1,237 @@
+//
+// Copyright (C) 2006 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+// 
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+// 
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.report.ConsolePublisher;
+import gov.nasa.jpf.report.Publisher;
+import gov.nasa.jpf.report.PublisherExtension;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * StateSet for "supertrace" (bitstate) hashing, i.e. we don't store states
+ * or fingerprints at all, but only set k bits in a fixed size bit array for
+ * each state, and consider a state as visited if all its bits are set.
+ * This can match states that are different, so parts of the state space
+ * might be missed, but we need only a few bits per state, which usually
+ * gets us much further than exact matching on memory bound models.
+ *
+ * The array has 2^vm.storage.bits bits (default 27, i.e. 16MB), which are
+ * allocated upfront. If vm.storage.dir is set, it is a memory mapped file in
+ * this directory instead of a Java array. The k = vm.storage.hash_functions
+ * (default 3) bit positions are derived from a seeded Jenkins hash of the
+ * serialized state by double hashing, with an odd step so that they are all
+ * different. Running the search repeatedly with
+ * different vm.storage.seed values uses different hash functions, so each
+ * run misses different states ("iterative swarm" verification).
+ *
+ * At the end of the search, we report the probability that a new state
+ * would have been matched by mistake, and the estimated number of states
+ * that were missed this way.
+ *
+ * Since we don't know the ids of states that were seen before, revisited
+ * states have the UNKNOWN_ID, which does not work with search.match_depth
+ * (rejected at construction) or listeners that keep data per state id.
+ */
+public class BitstateStateSet extends SerializingStateSet implements PublisherExtension {
+  static final int MIN_BITS = 10;
+  static final int MAX_BITS = 33; // 1GB, the limit of a mapped buffer
+
+  int lastStateId = -1;
+
+  int bits;
+  int nHashes;
+  int seed;
+
+  LongBuffer words;
+  long nBits;
+  long nBitsSet;
+
+  // the sum of the omission probabilities at the time each state was stored
+  double expectedOmissions;
+
+  File dir; // null if the bit array is not mapped
+
+  JVM vm;
+  boolean published;
+
+  public BitstateStateSet () {
+    init(27, 3, 0, null);
+  }
+
+  public BitstateStateSet (Config conf) {
+    if (conf.getBoolean("search.match_depth")) {
+      throw new JPFException("BitstateStateSet does not support search.match_depth");
+    }
+
+    String d = conf.getString("vm.storage.dir");
+    init(conf.getInt("vm.storage.bits", 27),
+         conf.getInt("vm.storage.hash_functions", 3),
+         conf.getInt("vm.storage.seed", 0),
+         (d != null && d.length() > 0) ? new File(d) : null);
+  }
+
+  BitstateStateSet (int bits, int nHashes, int seed, File dir) {
+    init(bits, nHashes, seed, dir);
+  }
+
+  void init (int bits, int nHashes, int seed, File dir) {
+    if (bits < MIN_BITS || bits > MAX_BITS) {
+      throw new JPFException("vm.storage.bits out of range [" + MIN_BITS + ".." + MAX_BITS + "]: " + bits);
+    }
+    if (nHashes < 1 || nHashes > (1 << MIN_BITS)) {
+      throw new JPFException("vm.storage.hash_functions out of range [1.." + (1 << MIN_BITS) + "]: " + nHashes);
+    }
+
+    this.bits = bits;
+    this.nHashes = nHashes;
+    this.seed = seed;
+    this.dir = dir;
+
+    nBits = 1L << bits;
+    words = allocate((int) Math.max(nBits >>> 6, 1));
+  }
+
+  public void attach (JVM jvm) {
+    super.attach(jvm);
+    vm = jvm;
+  }
+
+  public int size () {
+    return lastStateId + 1;
+  }
+
+  public int addCurrent () {
+    if (!published) {
+      // the reporter doesn't exist yet when we get attached
+      JPF jpf = vm.getJPF();
+      if (jpf != null) {
+        jpf.addPublisherExtension(ConsolePublisher.class, this);
+      }
+      published = true;
+    }
+    return super.addCurrent();
+  }
+
+  public int add (int[] val) {
+    long h = JenkinsStateSet.longLookup3Hash(val, seed);
+
+    // double hashing modulo nBits. The step is odd, i.e. coprime to nBits,
+    // so the first nBits positions (and hence our nHashes) are all different
+    int shift = 64 - bits;
+    long idx = h >>> shift;
+    long delta = (mix(h) >>> shift) | 1;
+    boolean isNew = false;
+
+    for (int i=0; i<nHashes; i++) {
+      int w = (int) (idx >>> 6);
+      long mask = 1L << idx;  // only uses the lower 6 bits
+      long word = words.get(w);
+
+      if ((word & mask) == 0) {
+        words.put(w, word | mask);
+        nBitsSet++;
+        isNew = true;
+      }
+      idx = (idx + delta) & (nBits - 1);
+    }
+
+    if (!isNew) {
+      return UNKNOWN_ID;
+    }
+
+    expectedOmissions += getOmissionProbability();
+    return ++lastStateId;
+  }
+
+  static long mix (long h) {
+    h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+    h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return h ^ (h >>> 33);
+  }
+
+  /**
+   * the probability that the next new state is considered as visited, which
+   * is the probability that all its (different) bits are already set
+   */
+  public double getOmissionProbability () {
+    double p = 1.0;
+    for (int i=0; i<nHashes; i++) {
+      p *= (double) (nBitsSet - i) / (nBits - i);
+      if (p <= 0) {
+        return 0;
+      }
+    }
+    return p;
+  }
+
+  public double getExpectedOmissions () {
+    return expectedOmissions;
+  }
+
+  // zero initialized
+  LongBuffer allocate (int nWords) {
+    if (dir == null) {
+      return LongBuffer.allocate(nWords);
+    }
+
+    try {
+      File f = File.createTempFile("jpf-bitstate", ".bits", dir);
+      RandomAccessFile raf = new RandomAccessFile(f, "rw");
+      try {
+        return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) nWords << 3)
+                  .order(ByteOrder.nativeOrder()).asLongBuffer();
+      } finally {
+        raf.close();
+        f.delete();
+      }
+    } catch (IOException x) {
+      throw new JPFException("cannot map bitstate array in " + dir, x);
+    }
+  }
+
+  //--- PublisherExtension interface
+
+  public void publishStart (Publisher publisher) {}
+  public void publishTransition (Publisher publisher) {}
+  public void publishPropertyViolation (Publisher publisher) {}
+  public void publishConstraintHit (Publisher publisher) {}
+
+  public void publishFinished (Publisher publisher) {
+    PrintWriter pw = publisher.getOut();
+    publisher.publishTopicStart("bitstate statistics");
+
+    pw.println("bit array:            2^" + bits + " bits (" + (nBits >>> 3) + " bytes), "
+               + nHashes + " hash functions, seed " + seed);
+    pw.println("stored states:        " + size());
+    pw.println("bits set:             " + nBitsSet
+               + String.format(" (%.4f%%)", 100.0 * nBitsSet / nBits));
+    pw.println("omission probability: " + String.format("%.3e", getOmissionProbability()));
+    pw.println("expected omissions:   " + String.format("%.1f", expectedOmissions));
+  }
+}
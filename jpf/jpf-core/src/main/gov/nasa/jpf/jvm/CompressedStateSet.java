@@ -0,0 +1,303 @@
+//
+// Copyright (C) 2006 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+// 
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+// 
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.report.ConsolePublisher;
+import gov.nasa.jpf.report.Publisher;
+import gov.nasa.jpf.report.PublisherExtension;
+import gov.nasa.jpf.util.IntVector;
+
+import java.io.PrintWriter;
+
+/**
+ * a lossless StateSet that stores states in compressed form, by interning
+ * recurring pieces of the serialized state vectors in a shared pool (like
+ * SPIN's COLLAPSE or tree compression). Most transitions only change a few
+ * objects, frames or threads, so consecutive states share most of their
+ * pieces, and a state only costs the pieces that are new plus a short
+ * vector of pool indices.
+ *
+ * The pieces are not fixed size blocks, since inserting a single value would
+ * shift all block boundaries behind it. We use content defined chunking
+ * instead: a rolling hash over the values decides where a chunk ends (if
+ * the low vm.storage.chunk_bits bits are 0, within MIN_CHUNK..MAX_CHUNK
+ * values), so chunk boundaries resynchronize right after a change, and
+ * recurring records (fields of an object, slots of a frame, thread data)
+ * end up in the same chunks. This does not depend on which serializer is
+ * used. The vector of chunk indices is chunked the same way until it is
+ * short enough, and this root vector is then interned in the state pool,
+ * whose indices are the state ids.
+ *
+ * Matching is exact: the chunks are determined by the vector, and the pools
+ * map each content to exactly one index. Since all levels share the chunk
+ * pool, a root could also be a short state vector or a root of a different
+ * level, which is why the stored root also has the number of collapse steps
+ * and the original vector length. The pools keep all values in a few large
+ * int arrays, to avoid per state object overhead.
+ */
+public class CompressedStateSet extends SerializingStateSet implements PublisherExtension {
+  static final int MIN_CHUNK = 4;
+  static final int MAX_CHUNK = 64;
+  static final int MAX_ROOT = 32;
+
+  /**
+   * a set of int sequences that are stored back to back in one array,
+   * indexed in the order in which they were added
+   */
+  static class Pool {
+    static final double MAX_LOAD = 0.7;
+
+    int[] data = new int[1 << 12];
+    int dataSize;
+
+    int[] start = new int[1 << 10]; // start[i+1] is the end of sequence i
+    int[] hashes = new int[1 << 10];
+    int size;
+
+    int[] table = new int[1 << 10]; // open addressed, index + 1
+    int nextRehash = (int) (MAX_LOAD * table.length);
+
+    int size () {
+      return size;
+    }
+
+    int intern (int[] a, int off, int len) {
+      int hash = hash(a, off, len);
+      int mask = table.length - 1;
+      int idx = hash & mask;
+      int delta = (hash >>> 16) | 1;
+
+      while (table[idx] != 0) {
+        int id = table[idx] - 1;
+        if (hashes[id] == hash && equals(id, a, off, len)) {
+          return id;
+        }
+        idx = (idx + delta) & mask;
+      }
+
+      //--- new sequence
+      if (size >= nextRehash) {
+        rehash();
+        mask = table.length - 1;
+        idx = hash & mask;
+        while (table[idx] != 0) {
+          idx = (idx + delta) & mask;
+        }
+      }
+
+      int id = size++;
+      if (size >= start.length) {
+        start = grow(start, size + 1);
+        hashes = grow(hashes, size + 1);
+      }
+      if (dataSize + len > data.length) {
+        data = grow(data, dataSize + len);
+      }
+      System.arraycopy(a, off, data, dataSize, len);
+      dataSize += len;
+      start[size] = dataSize;
+      hashes[id] = hash;
+      table[idx] = id + 1;
+
+      return id;
+    }
+
+    boolean equals (int id, int[] a, int off, int len) {
+      int s = start[id];
+      if (start[id + 1] - s != len) {
+        return false;
+      }
+      for (int i = 0; i < len; i++) {
+        if (data[s + i] != a[off + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    void rehash () {
+      table = new int[table.length << 1];
+      int mask = table.length - 1;
+      nextRehash = (int) (MAX_LOAD * table.length);
+
+      for (int id = 0; id < size; id++) {
+        int hash = hashes[id];
+        int idx = hash & mask;
+        int delta = (hash >>> 16) | 1;
+        while (table[idx] != 0) {
+          idx = (idx + delta) & mask;
+        }
+        table[idx] = id + 1;
+      }
+    }
+
+    long getMemory () { // in ints
+      return data.length + start.length + hashes.length + table.length;
+    }
+
+    static int hash (int[] a, int off, int len) {
+      int h = len;
+      for (int i = off, max = off + len; i < max; i++) {
+        h = h * 0x9e3779b1 + a[i];
+      }
+      return mix(h);
+    }
+
+    static int[] grow (int[] a, int minSize) {
+      int[] b = new int[Math.max(minSize, a.length << 1)];
+      System.arraycopy(a, 0, b, 0, a.length);
+      return b;
+    }
+  }
+
+  Pool chunks = new Pool();
+  Pool states = new Pool();
+
+  int chunkMask;
+
+  IntVector ids = new IntVector(256);
+  int[] level = new int[256];
+
+  long nValues;  // the uncompressed size of all stored states
+
+  JVM vm;
+  boolean published;
+
+  public CompressedStateSet () {
+    init(3);
+  }
+
+  public CompressedStateSet (Config conf) {
+    init(conf.getInt("vm.storage.chunk_bits", 3));
+  }
+
+  void init (int chunkBits) {
+    if (chunkBits < 0 || chunkBits > 5) {
+      throw new JPFException("vm.storage.chunk_bits out of range [0..5]: " + chunkBits);
+    }
+    chunkMask = (1 << chunkBits) - 1;
+  }
+
+  public void attach (JVM jvm) {
+    super.attach(jvm);
+    vm = jvm;
+  }
+
+  public int size () {
+    return states.size();
+  }
+
+  public int addCurrent () {
+    if (!published) {
+      // the reporter doesn't exist yet when we get attached
+      JPF jpf = vm.getJPF();
+      if (jpf != null) {
+        jpf.addPublisherExtension(ConsolePublisher.class, this);
+      }
+      published = true;
+    }
+    return super.addCurrent();
+  }
+
+  public int add (int[] val) {
+    int[] v = val;
+    int len = val.length;
+    int depth = 0;
+
+    while (len > MAX_ROOT) {
+      collapse(v, len);
+      len = ids.size();
+      if (len + 2 > level.length) {
+        level = new int[Math.max(len + 2, level.length << 1)];
+      }
+      v = ids.toArray(level);
+      depth++;
+    }
+
+    // the same root can stand for vectors that were collapsed a different
+    // number of times (or not at all), so it has to include how it was made
+    if (v == val) {
+      if (len + 2 > level.length) {
+        level = new int[Math.max(len + 2, level.length << 1)];
+      }
+      System.arraycopy(val, 0, level, 0, len);
+    }
+    level[len] = depth;
+    level[len + 1] = val.length;
+
+    int n = states.size();
+    int id = states.intern(level, 0, len + 2);
+    if (id == n) {
+      nValues += val.length;
+    }
+    return id;
+  }
+
+  // intern the chunks of v, and store their indices in 'ids'
+  void collapse (int[] v, int len) {
+    ids.clear();
+
+    int s = 0;
+    int h = 0;
+    for (int i = 0; i < len; i++) {
+      h = (h << 1) + mix(v[i]);
+      int n = i + 1 - s;
+      if ((n >= MIN_CHUNK && (h & chunkMask) == 0) || n == MAX_CHUNK) {
+        ids.add(chunks.intern(v, s, n));
+        s = i + 1;
+      }
+    }
+    if (s < len) {
+      ids.add(chunks.intern(v, s, len - s));
+    }
+  }
+
+  static int mix (int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    return h ^ (h >>> 16);
+  }
+
+  //--- PublisherExtension interface
+
+  public void publishStart (Publisher publisher) {}
+  public void publishTransition (Publisher publisher) {}
+  public void publishPropertyViolation (Publisher publisher) {}
+  public void publishConstraintHit (Publisher publisher) {}
+
+  public void publishFinished (Publisher publisher) {
+    PrintWriter pw = publisher.getOut();
+    publisher.publishTopicStart("compressed state statistics");
+
+    long full = nValues * 4;
+    long used = (chunks.getMemory() + states.getMemory()) * 4;
+
+    pw.println("stored states:        " + size());
+    pw.println("chunks:               " + chunks.size()
+               + " (" + chunks.dataSize + " values)");
+    pw.println("state vectors:        " + full + " bytes");
+    pw.println("pools:                " + used + " bytes"
+               + String.format(" (%.1f:1)", (double) full / Math.max(used, 1)));
+  }
+}
@@ -345,6 +345,7 @@ public abstract class ElementInfo implements Cloneable, Restorable<ElementInfo>
         b = b.clone();
         refTid = b;
         attributes |= ATTR_REFTID_CHANGED;
+        markAreaChanged();
       }
       b.add(tid);
     }
@@ -358,6 +359,7 @@ public abstract class ElementInfo implements Cloneable, Restorable<ElementInfo>
         b = b.clone();
         refTid = b;
         attributes |= ATTR_REFTID_CHANGED;
+        markAreaChanged();
       }
       b.remove(tid);
     }
@@ -2048,7 +2050,11 @@ public abstract class ElementInfo implements Cloneable, Restorable<ElementInfo>
       int a = (attributes & ~ATTR_PINDOWN_MASK);
       a |= pdCount;
       a |= ATTR_ATTRIBUTE_CHANGED;
+      boolean isFirstChange = (attributes & ATTR_ATTRIBUTE_CHANGED) == 0;
       attributes = a;
+      if (isFirstChange){
+        markAreaChanged();
+      }
 
       return (pdCount == 1);
     }
@@ -2068,7 +2074,11 @@ public abstract class ElementInfo implements Cloneable, Restorable<ElementInfo>
       int a = (attributes & ~ATTR_PINDOWN_MASK);
       a |= pdCount;
       a |= ATTR_ATTRIBUTE_CHANGED;
+      boolean isFirstChange = (attributes & ATTR_ATTRIBUTE_CHANGED) == 0;
       attributes = a;
+      if (isFirstChange){
+        markAreaChanged();
+      }
 
       return (pdCount == 0);
     } else {
@@ -2090,7 +2100,12 @@ public abstract class ElementInfo implements Cloneable, Restorable<ElementInfo>
   }
 
   public void setConstructed() {
-    attributes |= (ATTR_CONSTRUCTED | ATTR_ATTRIBUTE_CHANGED);
+    if ((attributes & ATTR_ATTRIBUTE_CHANGED) == 0){
+      attributes |= (ATTR_CONSTRUCTED | ATTR_ATTRIBUTE_CHANGED);
+      markAreaChanged();
+    } else {
+      attributes |= ATTR_CONSTRUCTED;
+    }
   }
 
   public void restoreFields(Fields f) {
@@ -59,8 +59,15 @@ public class JenkinsStateSet extends SerializingStateSet {
   }
  
   public static long longLookup3Hash(int[] val) {
+    return longLookup3Hash(val, 0);
+  }
+
+  /**
+   * different seeds give (practically) independent hash functions
+   */
+  public static long longLookup3Hash(int[] val, int seed) {
     // Jenkins' LOOKUP3 hash  (May 2006)
-    int a = 0x510fb60d;
+    int a = 0x510fb60d + seed;
     int b = 0xa4cb30d9 + (val.length);
     int c = 0x9e3779b9;
 
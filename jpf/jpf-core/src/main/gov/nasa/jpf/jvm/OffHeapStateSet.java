@@ -0,0 +1,208 @@
+//
+// Copyright (C) 2006 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+// 
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+// 
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * StateSet that keeps the Jenkins fingerprints of the states outside of the
+ * Java heap, for state spaces that don't fit into the JenkinsStateSet
+ * arrays.
+ *
+ * The fingerprints are distributed over vm.storage.segments (a power of
+ * two, default 256) open addressed hash tables, selected by the top bits of
+ * the fingerprint. Each slot holds the fingerprint and the state id, so
+ * there is no separate fingerprint array. When a table gets too full, only
+ * this segment is rehashed into a table of twice the size, so growing the
+ * set never needs more than one extra segment at a time, and never walks
+ * all states.
+ *
+ * The segments are direct buffers. If vm.storage.dir is set, they are
+ * memory mapped files in this directory instead, so that the operating
+ * system can page them out. The files are deleted right after they are
+ * mapped.
+ *
+ * Note that direct buffers are outside of the Java heap, but not unlimited:
+ * their total size is capped by -XX:MaxDirectMemorySize, which defaults to
+ * the maximum heap size (-Xmx). A state space that doesn't fit into the heap
+ * therefore needs either a larger MaxDirectMemorySize or vm.storage.dir.
+ * Mapped files don't count against this limit.
+ */
+public class OffHeapStateSet extends SerializingStateSet {
+  static final double MAX_LOAD = 0.7;
+  static final int INIT_SEGMENT_SIZE = 1024;
+
+  // fingerprint (long) and state id + 1 (int), 0 means the slot is empty
+  static final int SLOT_SIZE = 12;
+  static final int MAX_SEGMENT_SIZE = 1 << 27; // < 2GB per buffer
+
+  int lastStateId = -1;
+
+  int segmentShift;
+  ByteBuffer[] segments;
+  int[] segmentCounts;
+  int[] nextRehash;
+
+  File dir; // null if the segments are not mapped
+
+  public OffHeapStateSet () {
+    init(256, null);
+  }
+
+  public OffHeapStateSet (Config conf) {
+    String d = conf.getString("vm.storage.dir");
+    init(conf.getInt("vm.storage.segments", 256),
+         (d != null && d.length() > 0) ? new File(d) : null);
+  }
+
+  OffHeapStateSet (int nSegments, File dir) {
+    init(nSegments, dir);
+  }
+
+  void init (int nSegments, File dir) {
+    int bits = 0;
+    while ((1 << bits) < nSegments && bits < 16) {
+      bits++;
+    }
+    nSegments = 1 << bits;
+
+    this.dir = dir;
+    segmentShift = 64 - bits;
+    segments = new ByteBuffer[nSegments];
+    segmentCounts = new int[nSegments];
+    nextRehash = new int[nSegments];
+    for (int i=0; i<nSegments; i++) {
+      segments[i] = allocate(INIT_SEGMENT_SIZE);
+      nextRehash[i] = (int) (MAX_LOAD * INIT_SEGMENT_SIZE);
+    }
+  }
+
+  public int size () {
+    return lastStateId + 1;
+  }
+
+  public int add (int[] val) {
+    long hash = JenkinsStateSet.longLookup3Hash(val);
+    int s = (segmentShift == 64) ? 0 : (int) (hash >>> segmentShift);
+    ByteBuffer seg = segments[s];
+
+    // open addressed, double hashing (the probe start doesn't use the
+    // segment bits)
+    int mask = (seg.capacity() / SLOT_SIZE) - 1;
+    int idx = (int)hash & mask;
+    int delta = (int)(hash >>> 32) | 1; // must be odd!
+
+    while (true) {
+      int pos = idx * SLOT_SIZE;
+      int id = seg.getInt(pos + 8);
+      if (id == 0) {
+        break;
+      }
+      if (seg.getLong(pos) == hash) {
+        return id - 1; // in table, 1 higher
+      }
+      idx = (idx + delta) & mask;
+    }
+
+    //--- only reached if state is new
+
+    if (segmentCounts[s] >= nextRehash[s]) { // too full
+      seg = rehash(s);
+      mask = (seg.capacity() / SLOT_SIZE) - 1;
+      idx = findEmpty(seg, mask, hash);
+    }
+    lastStateId++;
+    seg.putLong(idx * SLOT_SIZE, hash);
+    seg.putInt(idx * SLOT_SIZE + 8, lastStateId + 1);
+    segmentCounts[s]++;
+
+    return lastStateId;
+  }
+
+  static int findEmpty (ByteBuffer seg, int mask, long hash) {
+    int idx = (int)hash & mask;
+    int delta = (int)(hash >>> 32) | 1;
+    while (seg.getInt(idx * SLOT_SIZE + 8) != 0) { // we know enough slots exist
+      idx = (idx + delta) & mask;
+    }
+    return idx;
+  }
+
+  ByteBuffer rehash (int s) {
+    ByteBuffer old = segments[s];
+    int oldSize = old.capacity() / SLOT_SIZE;
+    if (oldSize >= MAX_SEGMENT_SIZE) { // only one empty slot left
+      throw new JPFException("state set segment full, increase vm.storage.segments");
+    }
+
+    int newSize = oldSize << 1;
+    ByteBuffer seg = allocate(newSize);
+    int mask = newSize - 1;
+    for (int i=0; i<oldSize; i++) {
+      int pos = i * SLOT_SIZE;
+      int id = old.getInt(pos + 8);
+      if (id != 0) {
+        long h = old.getLong(pos);
+        int idx = findEmpty(seg, mask, h);
+        seg.putLong(idx * SLOT_SIZE, h);
+        seg.putInt(idx * SLOT_SIZE + 8, id);
+      }
+    }
+
+    segments[s] = seg; // the old buffer is released by the GC
+    // a segment that can't grow anymore is filled up to the last slot
+    nextRehash[s] = (newSize >= MAX_SEGMENT_SIZE) ?
+        newSize - 1 : (int) (MAX_LOAD * newSize);
+    return seg;
+  }
+
+  // zero initialized
+  ByteBuffer allocate (int slots) {
+    int bytes = slots * SLOT_SIZE;
+    if (dir == null) {
+      try {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+      } catch (OutOfMemoryError x) {
+        throw new JPFException("direct memory exhausted by state set, increase -XX:MaxDirectMemorySize or set vm.storage.dir", x);
+      }
+    }
+
+    try {
+      File f = File.createTempFile("jpf-states", ".seg", dir);
+      RandomAccessFile raf = new RandomAccessFile(f, "rw");
+      try {
+        ByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        return buf.order(ByteOrder.nativeOrder());
+      } finally {
+        raf.close();
+        f.delete();
+      }
+    } catch (IOException x) {
+      throw new JPFException("cannot map state set segment in " + dir, x);
+    }
+  }
+}
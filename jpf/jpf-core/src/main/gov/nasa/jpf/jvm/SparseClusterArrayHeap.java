@@ -535,6 +535,7 @@ public class SparseClusterArrayHeap extends SparseClusterArray<ElementInfo> impl
 
   public void markChanged(int objref) {
     attributes |= ATTR_ELEMENTS_CHANGED;
+    queueChange(objref); // if we keep an undo log
   }
 
   public void hash(HashData hd) {
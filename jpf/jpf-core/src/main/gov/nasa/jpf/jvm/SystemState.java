@@ -69,6 +69,7 @@ public class SystemState {
     int atomicLevel;
     ChoicePoint trace;
     ThreadInfo execThread;
+    ThreadInfo entryExecThread;
     int id;              // the state id
     LinkedHashMap<Object,ClosedMemento> restorers;
     
@@ -91,6 +92,7 @@ public class SystemState {
       atomicLevel = ss.entryAtomicLevel; // store the value we had when we started the transition
       id = ss.id;
       execThread = ss.execThread;
+      entryExecThread = ss.entryExecThread; // differs if the thread was switched (see switchThread())
       
       restorers = ss.restorers;
     }
@@ -105,7 +107,7 @@ public class SystemState {
       
       ss.atomicLevel = atomicLevel;
       ss.id = id;
-      ss.execThread = execThread;
+      ss.execThread = entryExecThread;
       
       if (restorers != null){
         for (ClosedMemento r : restorers.values()){
@@ -172,6 +174,8 @@ public class SystemState {
   ChoiceGenerator<?> nextCg;   // the ChoiceGenerator for the next transition
   ChoiceGenerator<?>  curCg;   // the ChoiceGenerator used in the current transition
   ThreadInfo execThread;    // currently executing thread, reset by ThreadChoiceGenerators
+  ThreadInfo switchThread;  // thread that continues the current transition, see switchThread()
+  ThreadInfo entryExecThread; // the thread the current transition started with
   
   // on-demand list of optional restorers that run if we backtrack to this state
   // this is reset before each transition
@@ -317,6 +321,21 @@ public class SystemState {
     return (atomicLevel > 0);
   }
 
+  /**
+   * continue the current transition with another thread once the current
+   * instruction is completed, i.e. without a scheduling point. This is for
+   * applications that switch between threads in a way that does not need to
+   * be explored, e.g. if they make sure that there is only one runnable
+   * thread at a time. Thread states are up to the caller, 'ti' has to be
+   * runnable at the end of the instruction.
+   *
+   * Note that the Transition is still recorded with the thread it started
+   * with, so traces attribute all steps to that thread
+   */
+  public void switchThread (ThreadInfo ti) {
+    switchThread = ti;
+  }
+
   public void setBlockedInAtomicSection() {
     isBlockedInAtomicSection = true;
   }
@@ -777,8 +796,27 @@ public class SystemState {
 
     trail = new Transition(curCg, execThread);
     entryAtomicLevel = atomicLevel; // store before we start to execute
+    entryExecThread = execThread;
+    switchThread = null;
+
+    execThread.executeTransition(this);
+
+    // direct thread switches (see switchThread()) unless we break anyways
+    while (switchThread != null) {
+      ThreadInfo tiNext = switchThread;
+      switchThread = null;
 
-    execThread.executeTransition(this);    
+      if (nextCg != null || isIgnored) {
+        break;
+      }
+      if (tiNext != execThread) {
+        vm.notifyThreadScheduled(tiNext);
+        execThread = tiNext;
+      }
+
+      assert execThread.isRunnable() : "switched to thread that is not runnable: " + execThread.getStateDescription();
+      execThread.executeTransition(this);
+    }
   }
 
   protected void setExecThread( JVM vm){
@@ -887,7 +925,7 @@ public class SystemState {
 
   // this is called on every executeInstruction from the running thread
   public boolean breakTransition () {
-    return ((nextCg != null) || isIgnored);
+    return ((nextCg != null) || isIgnored || (switchThread != null));
   }
 
   void recordExecutionStep (Instruction pc) {
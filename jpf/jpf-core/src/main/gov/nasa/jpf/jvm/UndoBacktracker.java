@@ -0,0 +1,77 @@
+//
+// Copyright (C) 2006 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+// 
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+// 
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.util.ImmutableList;
+
+/**
+ * a depth first Backtracker that uses an UndoRestorer, i.e. restores the
+ * heap by undoing the changes of the backtracked transitions instead of
+ * restoring heap snapshots.
+ *
+ * Restoring arbitrary states (e.g. for heuristic searches) still takes a
+ * full KernelState snapshot when the RestorableState is created.
+ */
+public class UndoBacktracker extends DefaultBacktracker<UndoRestorer.Frame> {
+
+  protected UndoRestorer undoRestorer;
+
+  @Override
+  public void attach (JVM jvm) {
+    ss = jvm.getSystemState();
+
+    // we don't use the configured vm.restorer.class, frames only work with
+    // our own restorer
+    undoRestorer = new UndoRestorer();
+    undoRestorer.attach(jvm);
+    restorer = undoRestorer;
+  }
+
+  class UndoRestorableState implements RestorableState {
+    final ImmutableList<UndoRestorer.Frame> savedKstack;
+    final ImmutableList<Object> savedSstack;
+
+    final UndoRestorer.Snapshot kcur;
+    final Object scur;
+
+    UndoRestorableState() {
+      savedKstack = kstack;
+      savedSstack = sstack;
+      kcur = undoRestorer.getSnapshot();
+      scur = ss.getRestoreData();
+    }
+
+    void restore() {
+      kstack = savedKstack;
+      sstack = savedSstack;
+      undoRestorer.restoreSnapshot(kcur);
+      ss.restoreTo(scur);
+    }
+  }
+
+  @Override
+  public void restoreState (RestorableState state) {
+    ((UndoRestorableState) state).restore();
+  }
+
+  @Override
+  public RestorableState getRestorableState() {
+    return new UndoRestorableState();
+  }
+}
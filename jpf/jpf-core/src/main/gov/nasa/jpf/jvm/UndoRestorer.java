@@ -0,0 +1,273 @@
+//
+// Copyright (C) 2006 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+// 
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+// 
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.util.IntTable;
+import gov.nasa.jpf.util.IntVector;
+import gov.nasa.jpf.util.SparseClusterArray;
+
+import java.util.ArrayList;
+
+/**
+ * a StateRestorer that doesn't snapshot the heap for each stored state, but
+ * keeps an undo log of the heap changes of each transition, so that storing
+ * and backtracking cost is proportional to the number of objects that were
+ * modified, created or released, not to the size of the heap.
+ *
+ * We use the change queue of the SparseClusterArrayHeap, which records all
+ * element replacements (allocation, gc) and the first modification of each
+ * ElementInfo after it was stored. Since Fields, Monitors and refTid sets are
+ * copy-on-first-write, the ElementInfo memento we cached when the object
+ * was last stored is an exact image of its state before the change, so the
+ * log entries are just (ref, memento) pairs. Reverting them in reverse order
+ * brings the heap back to the last stored state.
+ *
+ * The StaticArea and ThreadList are small compared to the heap and their
+ * mementos already reuse cached element/thread mementos, so we still store
+ * them for each state.
+ *
+ * Frames can only be restored in depth first order, i.e. the one that was
+ * pushed last. General restores (getRestorableState()) need full snapshots,
+ * which is why this has to be used through the UndoBacktracker
+ */
+public class UndoRestorer implements StateRestorer<UndoRestorer.Frame> {
+
+  // one heap change, with the memento of the object at 'ref' before the
+  // change (null if there was none)
+  static class Change {
+    final int ref;
+    final Memento<ElementInfo> memento;
+    final Change next; // older changes
+
+    Change (int ref, Memento<ElementInfo> memento, Change next){
+      this.ref = ref;
+      this.memento = memento;
+      this.next = next;
+    }
+  }
+
+  /**
+   * what we need to restore a stored state S: the state of the heap
+   * attributes, statics and threads in S, plus the heap changes from the
+   * previously stored state to S (which become pending again once we are
+   * back in S, i.e. we need them to backtrack further)
+   */
+  public static class Frame {
+    Change changes;
+
+    Memento<ThreadList> threadsMemento;
+    Memento<StaticArea> staticsMemento;
+
+    // the objects the threads hold locks on or are blocked on, which are not
+    // necessarily restored from mementos
+    int[] lockRefs;
+
+    int heapAttributes;
+    IntVector pinDownList;
+    IntTable<String> internStrings;
+  }
+
+  /**
+   * everything we need to restore an arbitrary state
+   */
+  public static class Snapshot {
+    Memento<KernelState> ksMemento;
+    Change pending;
+  }
+
+  protected KernelState ks;
+  protected SparseClusterArrayHeap heap;
+
+  // the changes since the last stored state that are no longer in the heap
+  // change queue, newest first
+  protected Change pending;
+
+  protected boolean isLogging;
+
+  private ArrayList<SparseClusterArray.Entry<ElementInfo>> queue =
+    new ArrayList<SparseClusterArray.Entry<ElementInfo>>();
+
+  public void attach (JVM jvm) {
+    ks = jvm.getKernelState();
+
+    Heap h = ks.getHeap();
+    if (!(h instanceof SparseClusterArrayHeap)) {
+      throw new JPFException("UndoRestorer requires vm.heap.class = gov.nasa.jpf.jvm.SparseClusterArrayHeap");
+    }
+    heap = (SparseClusterArrayHeap) h;
+  }
+
+  // everything that happened before we start logging is stored in the
+  // cached mementos of the live objects
+  protected void startLogging () {
+    for (ElementInfo ei : heap) {
+      SparseClusterArrayHeap.ei2mei.transform(ei);
+    }
+
+    heap.resetChanges();
+    heap.trackChanges();
+    pending = null;
+    isLogging = true;
+  }
+
+  // move the heap change queue into our pending list. Since the objects in
+  // the queue still have the cached mementos of their last stored state
+  // (these are only updated here, when storing and when restoring), this
+  // has to be done before any of those
+  protected void resolveChanges () {
+    SparseClusterArray.Entry<ElementInfo> e = heap.getChanges();
+    if (e != null) {
+      queue.clear();
+      for (; e != null; e = e.getNext()) {
+        queue.add(e);
+      }
+
+      // both are newest first
+      Change c = pending;
+      for (int i = queue.size()-1; i >= 0; i--) {
+        e = queue.get(i);
+        ElementInfo ei = e.getValue();
+        c = new Change(e.getIndex(), (ei != null) ? ei.cachedMemento : null, c);
+      }
+      pending = c;
+
+      queue.clear();
+      heap.resetChanges();
+    }
+  }
+
+  public Frame getRestorableData () {
+    if (!isLogging) {
+      startLogging();
+    }
+    resolveChanges();
+
+    Frame frame = new Frame();
+    frame.changes = pending;
+
+    // update the cached mementos of the changed objects, which also resets
+    // their change status (i.e. the next write clones)
+    for (Change c = pending; c != null; c = c.next) {
+      ElementInfo ei = heap.get(c.ref);
+      if (ei != null) {
+        SparseClusterArrayHeap.ei2mei.transform(ei);
+      }
+    }
+    pending = null;
+
+    frame.threadsMemento = ks.getThreadList().getMemento();
+    frame.staticsMemento = ks.getStaticArea().getMemento();
+    frame.lockRefs = getLockRefs();
+
+    frame.heapAttributes = heap.attributes & SparseClusterArrayHeap.ATTR_STORE_MASK;
+    frame.pinDownList = heap.pinDownList;
+    frame.internStrings = heap.internStrings;
+    heap.markUnchanged(); // pinDownList and internStrings are copy-on-first-write
+
+    return frame;
+  }
+
+  public void restore (Frame frame) {
+    // threads need to be restored before the heap
+    frame.threadsMemento.restore(ks.getThreadList());
+    frame.staticsMemento.restore(ks.getStaticArea());
+
+    resolveChanges();
+    revert(pending);
+    pending = frame.changes;
+
+    heap.attributes = frame.heapAttributes;
+    heap.pinDownList = frame.pinDownList;
+    heap.internStrings = frame.internStrings;
+
+    restoreLockingInfo(frame.lockRefs);
+  }
+
+  protected int[] getLockRefs () {
+    IntVector refs = new IntVector();
+
+    for (ThreadInfo ti : ks.getThreadList()) {
+      for (ElementInfo ei : ti.getLockedObjects()) {
+        refs.add(ei.getObjectRef());
+      }
+    }
+
+    // each object only once, updateLockingInfo() doesn't check for duplicates
+    for (ThreadInfo ti : ks.getThreadList()) {
+      int lockRef = ti.getLockRef();
+      if (lockRef != -1 && !refs.contains(lockRef)) {
+        refs.add(lockRef);
+      }
+    }
+
+    return refs.toArray();
+  }
+
+  // the lock sets of the threads are volatile and rebuilt from the object
+  // monitors, but unlike a full restore we only revert the changed objects,
+  // which might have added some of them already
+  protected void restoreLockingInfo (int[] lockRefs) {
+    for (ThreadInfo ti : ks.getThreadList()) {
+      ti.resetVolatiles();
+    }
+
+    for (int i = 0; i < lockRefs.length; i++) {
+      ElementInfo ei = heap.get(lockRefs[i]);
+      if (ei != null) {
+        ei.updateLockingInfo();
+      }
+    }
+  }
+
+  // newest first, so that the last one we set for each ref is the oldest
+  protected void revert (Change changes) {
+    boolean liveBitValue = heap.liveBitValue;
+
+    heap.stopTrackingChanges(); // this is not a change we want to undo
+    for (Change c = changes; c != null; c = c.next) {
+      ElementInfo ei = null;
+      if (c.memento != null) {
+        ei = SparseClusterArrayHeap.mei2ei.transform(c.memento);
+        ei.setAlive(liveBitValue);
+      }
+      heap.replace(c.ref, ei);
+    }
+    heap.trackChanges();
+  }
+
+  //--- the general (non depth first) restore support
+
+  public Snapshot getSnapshot () {
+    resolveChanges();
+
+    Snapshot snap = new Snapshot();
+    snap.ksMemento = ks.getMemento();
+    snap.pending = pending;
+
+    return snap;
+  }
+
+  public void restoreSnapshot (Snapshot snap) {
+    snap.ksMemento.restore(ks);
+
+    heap.resetChanges(); // the snapshot restore doesn't count
+    pending = snap.pending;
+  }
+}
@@ -68,7 +68,7 @@ public class FilteringSerializer extends AbstractSerializer implements ElementIn
 
   protected transient IntVector buf = new IntVector(4096);
 
-  Heap heap;
+  protected Heap heap;
 
 
   @Override
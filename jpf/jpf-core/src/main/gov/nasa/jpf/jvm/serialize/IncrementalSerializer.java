@@ -0,0 +1,363 @@
+//
+// Copyright (C) 2006 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm.serialize;
+
+import gov.nasa.jpf.jvm.ArrayFields;
+import gov.nasa.jpf.jvm.ClassInfo;
+import gov.nasa.jpf.jvm.ElementInfo;
+import gov.nasa.jpf.jvm.Fields;
+import gov.nasa.jpf.jvm.StackFrame;
+import gov.nasa.jpf.jvm.StaticArea;
+import gov.nasa.jpf.jvm.StaticElementInfo;
+import gov.nasa.jpf.jvm.ThreadInfo;
+import gov.nasa.jpf.jvm.ThreadList;
+import gov.nasa.jpf.jvm.bytecode.Instruction;
+import gov.nasa.jpf.util.FinalBitSet;
+import gov.nasa.jpf.util.IntVector;
+import gov.nasa.jpf.util.ObjVector;
+import gov.nasa.jpf.util.SparseClusterArray;
+
+import java.util.List;
+
+/**
+ * a FilteringSerializer that doesn't linearize the whole state, but combines
+ * cached hashes of its parts, so that the (expensive) hashing of field values
+ * and stack slots is only done for what the last transitions changed.
+ *
+ * This relies on the copy-on-write policy for stored state: once a state is
+ * stored, its Fields and StackFrame objects don't change anymore, a modified
+ * object gets a new Fields clone and a modified frame is a new StackFrame
+ * clone. The identity of these objects therefore tells us if the hash we
+ * computed before is still valid, including after backtracking, where the
+ * restored objects are the stored ones. Objects that are modified in the
+ * current transition (i.e. not yet stored) are hashed but not cached.
+ *
+ * Like the FilteringSerializer, we only include objects that are reachable
+ * through non-filtered fields, so we still have to walk the references
+ * of the live state. For unchanged objects this only visits their cached
+ * non-filtered reference values. The hashes of the reached objects and the
+ * classes include their reference value and are added up, frame hashes are
+ * chained from the bottom of the stack, so that an unchanged stack prefix
+ * is not hashed again. The storing data is just the resulting hash values.
+ *
+ * References are raw values, i.e. this does not provide heap symmetry (use
+ * the CFSerializer if that is required).
+ */
+public class IncrementalSerializer extends FilteringSerializer {
+
+  static final long M = 0x9e3779b97f4a7c15L;
+
+  static final int[] NO_REFS = new int[0];
+
+  // heap objects and classes, indexed by (sparse) reference value. We keep
+  // the Fields we hashed, which are immutable if they are still the current
+  // ones
+  static class Entry {
+    Fields fields;
+    int status;
+    long hash;
+    int[] refs;  // the non-filtered reference values
+    int visited; // the serialization run that reached this object
+  }
+  final SparseClusterArray<Entry> heapCache = new SparseClusterArray<Entry>();
+  final SparseClusterArray<Entry> staticCache = new SparseClusterArray<Entry>();
+
+  int run;
+  final IntVector queue = new IntVector(1024);
+  long heapSum;
+  int heapCount;
+
+  // stack frames, indexed by thread id and depth
+  static class FrameCache {
+    ObjVector<StackFrame> frames = new ObjVector<StackFrame>();
+    long[] hashes = new long[64];
+  }
+  final ObjVector<FrameCache> frameCaches = new ObjVector<FrameCache>();
+  final ObjVector<StackFrame> pending = new ObjVector<StackFrame>();
+
+  final IntVector values = new IntVector(256);
+
+  //--- the hash function
+
+  static long mix (long h) {
+    h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+    h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+    return h ^ (h >>> 31);
+  }
+
+  static long add (long h, int v) {
+    return h * M + v;
+  }
+
+  //--- heap
+
+  // the roots and all non-filtered references end up here
+  @Override
+  public void processReference (int objref) {
+    if (objref >= 0) {
+      queue.add(objref);
+    }
+  }
+
+  protected void processQueue () {
+    for (int i = 0; i < queue.size(); i++) {
+      int ref = queue.get(i);
+      Entry e = heapCache.get(ref);
+      if (e == null) {
+        e = new Entry();
+        heapCache.set(ref, e);
+      } else if (e.visited == run) {
+        continue;
+      }
+      e.visited = run;
+
+      ElementInfo ei = heap.get(ref);
+      Fields fields = ei.getFields();
+      if (e.fields != fields) {
+        hashObject(e, ref, ei.getClassInfo(), fields);
+        // otherwise fields might still be modified
+        e.fields = ei.hasChanged() ? null : fields;
+      }
+
+      heapSum += e.hash;
+      heapCount++;
+      int[] refs = e.refs;
+      for (int j = 0; j < refs.length; j++) {
+        processReference(refs[j]);
+      }
+    }
+  }
+
+  protected void hashObject (Entry e, int ref, ClassInfo ci, Fields fields) {
+    long h = add(ref, ci.getUniqueId());
+
+    if (fields instanceof ArrayFields) { // not filtered
+      ArrayFields afields = (ArrayFields) fields;
+      h = add(h, afields.arrayLength());
+      if (afields.isReferenceArray()) {
+        int[] a = afields.asReferenceArray();
+        for (int i = 0; i < a.length; i++) {
+          h = add(h, a[i]);
+        }
+        e.refs = a.clone();
+      } else {
+        values.clear();
+        afields.appendTo(values);
+        int len = values.size();
+        for (int i = 0; i < len; i++) {
+          h = add(h, values.get(i));
+        }
+        e.refs = NO_REFS;
+      }
+
+    } else {
+      FinalBitSet filtered = getInstanceFilterMask(ci);
+      FinalBitSet refMask = getInstanceRefMask(ci);
+      int[] slots = fields.asFieldSlots();
+      values.clear();
+      for (int i = 0; i < slots.length; i++) {
+        if (!filtered.get(i)) {
+          h = add(h, slots[i]);
+          if (refMask.get(i)) {
+            values.add(slots[i]);
+          }
+        }
+      }
+      e.refs = values.toArray();
+    }
+
+    e.hash = mix(h);
+  }
+
+  //--- statics
+
+  protected long hashStatics () {
+    StaticArea statics = ks.getStaticArea();
+    long sum = 0;
+
+    for (StaticElementInfo sei : statics) {
+      int ref = sei.getObjectRef();
+      Fields fields = sei.getFields();
+      int status = sei.getStatus();
+      Entry e = staticCache.get(ref);
+      if (e == null) {
+        e = new Entry();
+        staticCache.set(ref, e);
+      }
+
+      if (e.fields != fields || e.status != status) {
+        hashClass(e, ref, sei.getClassInfo(), fields, status);
+        e.fields = sei.hasChanged() ? null : fields;
+        e.status = status;
+      }
+
+      sum += e.hash;
+      int[] refs = e.refs;
+      for (int j = 0; j < refs.length; j++) {
+        processReference(refs[j]);
+      }
+    }
+
+    return add(sum, statics.getLength());
+  }
+
+  protected void hashClass (Entry e, int ref, ClassInfo ci, Fields fields, int status) {
+    long h = add(add(ref, ci.getUniqueId()), status);
+
+    FinalBitSet filtered = getStaticFilterMask(ci);
+    FinalBitSet refMask = getStaticRefMask(ci);
+    int max = ci.getStaticDataSize();
+    values.clear();
+    for (int i = 0; i < max; i++) {
+      if (!filtered.get(i)) {
+        int v = fields.getIntValue(i);
+        h = add(h, v);
+        if (refMask.get(i)) {
+          values.add(v);
+        }
+      }
+    }
+
+    e.refs = values.toArray();
+    e.hash = mix(h);
+  }
+
+  //--- threads
+
+  protected long hashThreads () {
+    ThreadList tl = ks.getThreadList();
+    long h = 0;
+
+    for (ThreadInfo ti : tl) {
+      if (ti.isAlive()) {
+        processReference(ti.getThreadObjectRef());
+
+        h = add(h, ti.getId());
+        h = add(h, ti.getState().ordinal());
+        h = add(h, ti.getStackDepth());
+
+        ElementInfo eiLock = ti.getLockObject();
+        if (eiLock != null) {
+          h = add(h, eiLock.getObjectRef());
+        }
+        h = addLockedObjects(h, ti.getLockedObjects());
+
+        h = mix(h ^ hashStack(ti));
+      }
+    }
+
+    return h;
+  }
+
+  // order independent, see FilteringSerializer.serializeLockedObjects()
+  protected long addLockedObjects (long h, List<ElementInfo> lockedObjects) {
+    int n = lockedObjects.size();
+    long sum = 0;
+    for (int i = 0; i < n; i++) {
+      sum += mix(lockedObjects.get(i).getObjectRef());
+    }
+    return add(h + sum, n);
+  }
+
+  // the hash of a frame includes the hash of the frames below, so we only
+  // have to hash down to the first frame we have seen before at this depth.
+  // The references of all frames are roots though
+  protected long hashStack (ThreadInfo ti) {
+    int tid = ti.getId();
+    FrameCache fc = frameCaches.get(tid);
+    if (fc == null) {
+      fc = new FrameCache();
+      frameCaches.set(tid, fc);
+    }
+
+    int depth = ti.getStackDepth() - 1;
+    StackFrame frame = ti.getTopFrame();
+
+    pending.clear();
+    while (frame != null && (depth < 0 || fc.frames.get(depth) != frame)) {
+      pending.add(frame);
+      frame.visitReferenceSlots(this);
+      frame = frame.getPrevious();
+      depth--;
+    }
+
+    long h = (frame != null) ? fc.hashes[depth] : 0;
+    for (StackFrame f = frame; f != null; f = f.getPrevious()) {
+      f.visitReferenceSlots(this);
+    }
+
+    for (int i = pending.size() - 1; i >= 0; i--) {
+      StackFrame f = pending.get(i);
+      depth++;
+      h = mix(add(h, 0x5f) ^ hashFrame(f));
+      if (depth >= 0 && !f.hasChanged()) { // otherwise it's still modified
+        if (depth >= fc.hashes.length) {
+          long[] a = new long[Math.max(depth + 1, fc.hashes.length * 2)];
+          System.arraycopy(fc.hashes, 0, a, 0, fc.hashes.length);
+          fc.hashes = a;
+        }
+        fc.frames.set(depth, f);
+        fc.hashes[depth] = h;
+      }
+    }
+
+    return h;
+  }
+
+  protected long hashFrame (StackFrame frame) {
+    long h = frame.getMethodInfo().getGlobalId();
+
+    Instruction pc = frame.getPC();
+    h = add(h, (pc != null) ? pc.getInstructionIndex() : -1);
+
+    int len = frame.getTopPos() + 1;
+    h = add(h, len);
+
+    int[] slots = frame.getSlots();
+    for (int i = 0; i < len; i++) {
+      h = add(h, slots[i]);
+    }
+
+    return mix(h);
+  }
+
+  //--- our main purpose in life
+
+  @Override
+  protected int[] computeStoringData() {
+    heap = ks.getHeap();
+    run++;
+    queue.clear();
+    heapSum = 0;
+    heapCount = 0;
+
+    // this also collects the roots
+    long hThreads = hashThreads();
+    long hStatics = hashStatics();
+
+    processQueue();
+    long hHeap = add(heapSum, heapCount);
+
+    return new int[] {
+      (int) (hHeap >>> 32), (int) hHeap,
+      (int) (hStatics >>> 32), (int) hStatics,
+      (int) (hThreads >>> 32), (int) hThreads
+    };
+  }
+}
@@ -102,6 +102,18 @@ public class SparseClusterArray <E> implements Iterable<E> {
       this.index = index;
       this.value = value;
     }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public E getValue() {
+      return value;
+    }
+
+    public Entry<E> getNext() {
+      return next;
+    }
   }
 
   //------------------------------------ internal types
@@ -445,7 +457,22 @@ public class SparseClusterArray <E> implements Iterable<E> {
   }
 
 
+  /**
+   * set the element at index 'i' unless there already is one. Use
+   * replace() to overwrite elements
+   */
   public void set (int i, E e) {
+    set(i, e, false);
+  }
+
+  /**
+   * set the element at index 'i', replacing the one that is already there
+   */
+  public void replace (int i, E e) {
+    set(i, e, true);
+  }
+
+  protected void set (int i, E e, boolean replace) {
     Node l1;
     ChunkNode l2;
     Chunk l3 = lastChunk;
@@ -512,6 +539,8 @@ public class SparseClusterArray <E> implements Iterable<E> {
         l3.elements[j] = e;
         bm[u] |= (1L<<v);
         nSet++;
+      } else if (replace) {
+        l3.elements[j] = e;
       }
 
     } else {
@@ -733,9 +762,22 @@ public class SparseClusterArray <E> implements Iterable<E> {
     changes = null;
   }
 
+  /**
+   * record the current element at 'index' in the change queue. This is for
+   * modifications of the element object itself, which don't go through
+   * set() or replace()
+   */
+  public void queueChange (int index) {
+    if (trackChanges) {
+      Entry<E> entry = new Entry<E>(index, get(index));
+      entry.next = changes;
+      changes = entry;
+    }
+  }
+
   public void revertChanges (Entry<E> changes) {
     for (Entry<E> e = changes; e != null; e = e.next) {
-      set(e.index, (E)e.value);
+      replace(e.index, (E)e.value);
     }
   }
 
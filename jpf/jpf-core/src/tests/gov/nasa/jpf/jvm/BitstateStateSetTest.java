@@ -0,0 +1,106 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * unit test for BitstateStateSet
+ */
+public class BitstateStateSetTest extends TestJPF {
+
+  static int[] vector (int seed) {
+    int[] v = new int[8];
+    for (int i=0; i<v.length; i++) {
+      v[i] = seed * 31 + i * 7;
+    }
+    return v;
+  }
+
+  static long countBits (BitstateStateSet set) {
+    long n = 0;
+    for (int i=0; i<set.words.capacity(); i++) {
+      n += Long.bitCount(set.words.get(i));
+    }
+    return n;
+  }
+
+  @Test
+  public void testDistinctPositions() {
+    // small arrays and many hash functions make repeated positions likely
+    for (int k : new int[] { 2, 3, 16, 64 }) {
+      for (int i=0; i<500; i++) {
+        BitstateStateSet set = new BitstateStateSet(BitstateStateSet.MIN_BITS, k, i, null);
+        assert set.add(vector(i)) == 0;
+        assert set.nBitsSet == k : "k=" + k + ", seed=" + i + ": " + set.nBitsSet + " bits set";
+        assert countBits(set) == k;
+      }
+    }
+  }
+
+  @Test
+  public void testAddLookup() {
+    BitstateStateSet set = new BitstateStateSet(24, 3, 0, null);
+
+    for (int i=0; i<1000; i++) {
+      assert set.add(vector(i)) == i;
+    }
+    for (int i=0; i<1000; i++) {
+      assert set.add(vector(i)) == StateSet.UNKNOWN_ID;
+    }
+    assert set.size() == 1000;
+    assert set.nBitsSet == countBits(set);
+  }
+
+  @Test
+  public void testOmissionProbability() {
+    BitstateStateSet set = new BitstateStateSet(BitstateStateSet.MIN_BITS, 4, 0, null);
+    assert set.getOmissionProbability() == 0;
+
+    double expected = 0;
+    for (int i=0; i<2000; i++) {
+      if (set.add(vector(i)) != StateSet.UNKNOWN_ID) {
+        expected += set.getOmissionProbability();
+      }
+    }
+    assert set.nBitsSet == countBits(set);
+    assert Math.abs(set.getExpectedOmissions() - expected) < 1e-9;
+
+    double p = set.getOmissionProbability();
+    assert p > 0 && p <= 1;
+    if (set.nBitsSet == set.nBits) {
+      assert p == 1;
+    }
+  }
+
+  @Test
+  public void testMatchDepthRejected() {
+    Config conf = new Config(new String[] { "+search.match_depth=true" });
+    try {
+      new BitstateStateSet(conf);
+      assert false : "search.match_depth not rejected";
+    } catch (JPFException x) {
+      System.out.println("caught " + x);
+    }
+  }
+}
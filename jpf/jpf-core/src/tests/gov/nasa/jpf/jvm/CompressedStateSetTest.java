@@ -0,0 +1,105 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * unit test for CompressedStateSet
+ */
+public class CompressedStateSetTest extends TestJPF {
+
+  static int[] vector (int len, int seed) {
+    int[] v = new int[len];
+    for (int i=0; i<len; i++) {
+      v[i] = seed * 31 + i * 7;
+    }
+    return v;
+  }
+
+  @Test
+  public void testAddLookup() {
+    CompressedStateSet set = new CompressedStateSet();
+
+    for (int len : new int[] { 0, 1, 20, 32, 33, 100, 5000 }) {
+      int[] a = vector(len, 1);
+      int[] b = vector(len, 2);
+
+      int n = set.size();
+      int ida = set.add(a);
+      assert ida == n;
+      assert set.add(a.clone()) == ida;
+
+      if (len > 0) {
+        int idb = set.add(b);
+        assert idb == n + 1;
+        assert set.add(a) == ida;
+        assert set.add(b) == idb;
+      }
+    }
+  }
+
+  @Test
+  public void testModifiedValue() {
+    CompressedStateSet set = new CompressedStateSet();
+    int[] a = vector(3000, 1);
+    int ida = set.add(a);
+
+    for (int i=0; i<a.length; i+=97) {
+      int[] b = a.clone();
+      b[i]++;
+      int n = set.size();
+      assert set.add(b) == n;
+    }
+    assert set.add(a) == ida;
+  }
+
+  @Test
+  public void testShortVectorEqualsRoot() {
+    CompressedStateSet set = new CompressedStateSet();
+
+    int[] a = vector(200, 1); // collapsed once
+    int ida = set.add(a);
+    int[] root = set.ids.toArray();
+    assert root.length <= CompressedStateSet.MAX_ROOT;
+
+    // a short state vector that is the same int sequence as the root of 'a'
+    int n = set.size();
+    assert set.add(root) == n;
+    assert set.add(a) == ida;
+  }
+
+  @Test
+  public void testRootsOfDifferentLevels() {
+    CompressedStateSet set = new CompressedStateSet();
+
+    int[] a = vector(20000, 1);
+    set.collapse(a, a.length);
+    int[] level1 = set.ids.toArray();
+    assert level1.length > CompressedStateSet.MAX_ROOT;
+
+    // 'level1' collapses into the same root as 'a', with one step less
+    int ida = set.add(a);
+    int n = set.size();
+    assert set.add(level1) == n;
+    assert set.add(a) == ida;
+  }
+}
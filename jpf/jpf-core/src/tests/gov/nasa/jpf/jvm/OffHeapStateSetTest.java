@@ -0,0 +1,98 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.io.File;
+
+import org.junit.Test;
+
+/**
+ * unit test for OffHeapStateSet
+ */
+public class OffHeapStateSetTest extends TestJPF {
+
+  static final int N = 20000;
+
+  static int[] vector (int seed) {
+    int[] v = new int[8];
+    for (int i=0; i<v.length; i++) {
+      v[i] = seed * 31 + i * 7;
+    }
+    return v;
+  }
+
+  // adds enough states to grow each segment several times
+  static void addLookup (OffHeapStateSet set) {
+    for (int i=0; i<N; i++) {
+      assert set.add(vector(i)) == i;
+    }
+    assert set.size() == N;
+
+    for (int i=0; i<N; i++) {
+      assert set.add(vector(i)) == i;
+    }
+    assert set.size() == N;
+
+    int n = 0;
+    for (int s=0; s<set.segments.length; s++) {
+      assert set.segments[s].capacity() / OffHeapStateSet.SLOT_SIZE > OffHeapStateSet.INIT_SEGMENT_SIZE;
+      n += set.segmentCounts[s];
+    }
+    assert n == N;
+  }
+
+  @Test
+  public void testSegments() {
+    OffHeapStateSet set = new OffHeapStateSet(4, null);
+    assert set.segments.length == 4;
+    addLookup(set);
+  }
+
+  @Test
+  public void testSegmentsRoundedUp() {
+    OffHeapStateSet set = new OffHeapStateSet(3, null);
+    assert set.segments.length == 4;
+    addLookup(set);
+  }
+
+  @Test
+  public void testSingleSegment() {
+    OffHeapStateSet set = new OffHeapStateSet(1, null);
+    assert set.segments.length == 1;
+    addLookup(set);
+  }
+
+  @Test
+  public void testMappedSegments() throws Exception {
+    File dir = File.createTempFile("jpf-states", "");
+    dir.delete();
+    dir.mkdir();
+
+    try {
+      OffHeapStateSet set = new OffHeapStateSet(4, dir);
+      addLookup(set);
+      assert dir.list().length == 0 : "segment files not deleted";
+
+    } finally {
+      dir.delete();
+    }
+  }
+}
@@ -0,0 +1,171 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.util.HashData;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * unit test for UndoBacktracker, which has to restore the same heap, statics
+ * and threads as the DefaultBacktracker
+ */
+public class UndoBacktrackerTest extends TestJPF {
+
+  static final String DEFAULT = "gov.nasa.jpf.jvm.DefaultBacktracker";
+  static final String UNDO = "gov.nasa.jpf.jvm.UndoBacktracker";
+
+  // the restored states of a run, per backtracker
+  static HashMap<String,List<String>> runs = new HashMap<String,List<String>>();
+
+  public static class StateRecorder extends ListenerAdapter {
+    List<String> states = new ArrayList<String>();
+
+    public StateRecorder (Config conf) {
+      runs.put(conf.getString("vm.backtracker.class"), states);
+    }
+
+    public void stateBacktracked (Search search) {
+      states.add(search.getStateId() + ": " + dump(search.getVM()));
+    }
+  }
+
+  static String dump (JVM vm) {
+    KernelState ks = vm.getKernelState();
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("heap:");
+    for (ElementInfo ei : ks.heap.liveObjects()) {
+      sb.append(' ');
+      sb.append(ei.getObjectRef());
+      sb.append('=');
+      sb.append(ei.hashCode());
+    }
+
+    HashData hd = new HashData();
+    ks.statics.hash(hd);
+    sb.append(" statics:");
+    sb.append(hd.getValue());
+
+    // not ThreadList.hash(), which includes identity hashes of the frames
+    sb.append(" threads:");
+    for (ThreadInfo ti : ks.threads) {
+      sb.append(" [");
+      sb.append(ti.getId());
+      sb.append(' ');
+      sb.append(ti.getState());
+      sb.append(" lockRef=");
+      sb.append(ti.getLockRef());
+      sb.append(" locked=");
+      sb.append(Arrays.toString(ti.getLockedObjectReferences()));
+
+      for (StackFrame f : ti) {
+        sb.append(' ');
+        sb.append(f.getMethodInfo().getFullName());
+        if (f.getPC() != null) {
+          sb.append('@');
+          sb.append(f.getPC().getInstructionIndex());
+        }
+        for (int i = 0; i <= f.getTopPos(); i++) {
+          sb.append(i == 0 ? '(' : ',');
+          sb.append(f.getSlot(i));
+          if (f.isReferenceSlot(i)) {
+            sb.append('r');
+          }
+        }
+        sb.append(')');
+      }
+      sb.append(']');
+    }
+
+    return sb.toString();
+  }
+
+  //--- the explored program
+
+  static class Node {
+    int value;
+    Node next;
+
+    Node (int value, Node next) {
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  static Node list;
+  static int count;
+
+  static synchronized void push (int value) {
+    list = new Node(value, list);
+  }
+
+  static synchronized void pop () {
+    if (list != null) {
+      list = list.next; // garbage, its ref is reused on other paths
+    }
+  }
+
+  void explore () {
+    Thread t = new Thread() {
+      public void run() {
+        push(10);
+        pop();
+      }
+    };
+    t.start();
+
+    int n = Verify.getInt(1, 2);
+    for (int i = 0; i < n; i++) {
+      push(i);
+    }
+    pop();
+    push(Verify.getBoolean() ? 20 : 21);
+    count++;
+  }
+
+  @Test
+  public void testRestoredStates () {
+    String recorder = "+listener=gov.nasa.jpf.jvm.UndoBacktrackerTest$StateRecorder";
+
+    if (verifyNoPropertyViolation(recorder, "+vm.backtracker.class=" + DEFAULT)
+        || verifyNoPropertyViolation(recorder, "+vm.backtracker.class=" + UNDO)) {
+      explore();
+
+    } else {
+      List<String> expected = runs.get(DEFAULT);
+      List<String> states = runs.get(UNDO);
+
+      assert expected.size() > 10 : "too few backtracks: " + expected.size();
+      assert states.size() == expected.size() : states.size() + " backtracks, expected " + expected.size();
+      for (int i=0; i<expected.size(); i++) {
+        assert states.get(i).equals(expected.get(i)) : "backtrack " + i + " restored\n  " + states.get(i) + "\nexpected\n  " + expected.get(i);
+      }
+    }
+  }
+}
@@ -0,0 +1,163 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm.serialize;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.annotation.FilterField;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.Verify;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * unit test for IncrementalSerializer, which has to make the same state
+ * matching decisions as the FilteringSerializer
+ */
+public class IncrementalSerializerTest extends TestJPF {
+
+  static List<String> mismatches = new ArrayList<String>();
+  static int nChecks;
+  static int nMatches;
+
+  /**
+   * runs both serializers on each advanced and backtracked state, and checks
+   * if they consider the same previous states to be equal
+   */
+  public static class SerializerComparator extends ListenerAdapter {
+    FilteringSerializer filtering = new FilteringSerializer();
+    IncrementalSerializer incremental = new IncrementalSerializer();
+    boolean attached;
+
+    // serialized state -> index of the first check that produced it
+    HashMap<String,Integer> filteringStates = new HashMap<String,Integer>();
+    HashMap<String,Integer> incrementalStates = new HashMap<String,Integer>();
+
+    public SerializerComparator (Config conf) {
+      mismatches.clear();
+      nChecks = 0;
+      nMatches = 0;
+    }
+
+    Integer lookup (HashMap<String,Integer> states, int[] data) {
+      String key = Arrays.toString(data);
+      Integer idx = states.get(key);
+      if (idx == null) {
+        states.put(key, nChecks);
+      }
+      return idx;
+    }
+
+    void compare (Search search, String event) {
+      JVM vm = search.getVM();
+      if (!attached) {
+        filtering.attach(vm);
+        incremental.attach(vm);
+        attached = true;
+      }
+
+      Integer f = lookup(filteringStates, filtering.computeStoringData());
+      Integer i = lookup(incrementalStates, incremental.computeStoringData());
+
+      if ((f == null) ? (i != null) : !f.equals(i)) {
+        mismatches.add(event + " of state " + search.getStateId() + " (check " + nChecks
+                       + "): FilteringSerializer matched " + f + ", IncrementalSerializer matched " + i);
+      }
+      if (f != null) {
+        nMatches++;
+      }
+      nChecks++;
+    }
+
+    public void stateAdvanced (Search search) {
+      compare(search, "advance");
+    }
+
+    public void stateBacktracked (Search search) {
+      compare(search, "backtrack");
+    }
+  }
+
+  //--- the explored program
+
+  static class Node {
+    int value;
+    Node next;
+    @FilterField int visits; // doesn't make states different
+
+    Node (int value, Node next) {
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  static Node list;
+
+  static synchronized void add (int value) {
+    list = new Node(value, list);
+    if (list.next != null) {
+      list.next.visits++;
+      if (list.next.value == value) {
+        list.next = list.next.next; // garbage, its ref is reused later
+      }
+    }
+  }
+
+  // re-entered at the same stack depth with different locals
+  static void step (int k) {
+    int[] tmp = new int[k + 1]; // garbage once we return
+    tmp[k] = k;
+    add(tmp[k] % 2);
+    list.visits += k;
+  }
+
+  void explore () {
+    Thread t = new Thread() {
+      public void run() {
+        add(1);
+        add(0);
+      }
+    };
+    t.start();
+
+    for (int i = 0; i < 2; i++) {
+      step(Verify.getInt(0, 2));
+    }
+  }
+
+  @Test
+  public void testMatchingDecisions () {
+    if (verifyNoPropertyViolation("+listener=gov.nasa.jpf.jvm.serialize.IncrementalSerializerTest$SerializerComparator")) {
+      explore();
+
+    } else {
+      assert mismatches.isEmpty() : mismatches.size() + " different decisions, first: " + mismatches.get(0);
+      assert nChecks > 50 : "too few states: " + nChecks;
+      assert nMatches > 10 : "too few matched states: " + nMatches;
+      System.out.println("checked " + nChecks + " states, " + nMatches + " matched");
+    }
+  }
+}
@@ -273,6 +273,50 @@ public class SparseClusterArrayTest extends TestJPF {
     assert arr.get(6276) == 6276;
   }
 
+  @Test
+  public void testReplace() {
+    SparseClusterArray<Integer> arr = new SparseClusterArray<Integer>();
+
+    arr.set(42, new Integer(42));
+    arr.set(42, new Integer(-1)); // set() keeps the element
+    assert arr.get(42) == 42;
+
+    arr.replace(42, new Integer(-1));
+    arr.replace(4096, new Integer(4096));
+    assert arr.cardinality() == 2;
+    assert arr.get(42) == -1;
+    assert arr.get(4096) == 4096;
+
+    arr.replace(42, null);
+    assert arr.cardinality() == 1;
+    assert arr.get(42) == null;
+  }
+
+  @Test
+  public void testQueueChange() {
+    SparseClusterArray<Integer> arr = new SparseClusterArray<Integer>();
+
+    arr.set(42, new Integer(42));
+    arr.queueChange(42); // not tracked
+    assert arr.getChanges() == null;
+
+    arr.trackChanges();
+
+    arr.queueChange(42);
+    arr.replace(42, new Integer(-1));
+    assert arr.get(42) == -1;
+
+    Entry<Integer> changes = arr.getChanges();
+    assert changes.getIndex() == 42 && changes.getValue() == 42;
+    assert changes.getNext().getIndex() == 42 && changes.getNext().getValue() == 42;
+
+    arr.stopTrackingChanges();
+    arr.revertChanges(changes);
+
+    assert arr.cardinality() == 1;
+    assert arr.get(42) == 42;
+  }
+
   @Test
   public void testIterator() {
     SparseClusterArray<Integer> arr = new SparseClusterArray<Integer>();